@@ -0,0 +1,102 @@
+package com.example.banking.benchmarks;
+
+import com.example.banking.AccountInfo;
+import com.example.banking.AccountService;
+import com.example.banking.DepositRequest;
+import com.example.banking.TransferRequest;
+import com.example.banking.WithdrawRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+//Money paths and the dashboard read through the real Spring service, against seeded H2
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class AccountServiceBenchmark {
+
+    @Param("1000")
+    public int users;
+
+    @Param("1")
+    public int accountsPerUser;
+
+    @Param("20")
+    public int transactionsPerAccount;
+
+    private ConfigurableApplicationContext context;
+    private AccountService accountService;
+    private List<Long> userIds;
+    private int accountCount;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        context = BankingContext.start("accountservice");
+        BankingContext.seed(context, users, accountsPerUser, transactionsPerAccount);
+        accountService = context.getBean(AccountService.class);
+        userIds = BankingContext.userIds(context);
+        accountCount = users * accountsPerUser;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        context.close();
+    }
+
+    @Benchmark
+    public AccountInfo deposit(){
+        DepositRequest request = new DepositRequest();
+        request.setAccountNo(randomAccountNo());
+        request.setAmount(100L);
+        return accountService.Deposit(request);
+    }
+
+    @Benchmark
+    public AccountInfo withdraw(){
+        WithdrawRequest request = new WithdrawRequest();
+        request.setAccountNo(randomAccountNo());
+        request.setAmount(1L);
+        return accountService.Withdraw(request);
+    }
+
+    @Benchmark
+    public String moneyTransfer(){
+        long from = randomAccountNo();
+        long to = randomAccountNo();
+        if(to == from){
+            to = from + 1 < BankingContext.FIRST_ACCOUNT_NO + accountCount ? from + 1 : BankingContext.FIRST_ACCOUNT_NO;
+        }
+        TransferRequest request = new TransferRequest();
+        request.setFromAccountNo(from);
+        request.setToAccountNo(to);
+        request.setAmount(1L);
+        return accountService.MoneyTransfer(request);
+    }
+
+    @Benchmark
+    public List<AccountInfo> getAccountsForUser(){
+        return accountService.getAccountsForUser(userIds.get(ThreadLocalRandom.current().nextInt(userIds.size())));
+    }
+
+    private long randomAccountNo(){
+        return BankingContext.FIRST_ACCOUNT_NO + ThreadLocalRandom.current().nextInt(accountCount);
+    }
+}
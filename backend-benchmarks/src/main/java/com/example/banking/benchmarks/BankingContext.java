@@ -0,0 +1,109 @@
+package com.example.banking.benchmarks;
+
+import com.example.banking.BankingApplication;
+import com.example.banking.IdBlockAllocator;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+//Boots the real application against an in-memory H2 database and seeds it
+//Command-line style arguments are used because they take precedence over application.properties
+final class BankingContext {
+
+    static final long FIRST_ACCOUNT_NO = 1_000_000_000L;
+    static final long OPENING_BALANCE = 1_000_000_000_000L;
+
+    //Any valid BCrypt hash, benchmarks never log in
+    private static final String PASSWORD_HASH = "$2a$04$7KIHjcVvmVoXQW7RVXk3YOWwSvVhsBMxE1BjHMbE6BTdW8uaVqhle";
+    private static final int BATCH_SIZE = 1000;
+
+    private BankingContext(){
+    }
+
+    static ConfigurableApplicationContext start(String databaseName, String... extraArgs){
+        List<String> args = new ArrayList<>(List.of(
+                "--spring.datasource.url=jdbc:h2:mem:" + databaseName + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.jpa.hibernate.ddl-auto=create",
+                "--spring.jpa.show-sql=false",
+                "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                "--server.port=0",
+                "--management.server.port=0",
+                "--server.address=127.0.0.1",
+                "--logging.file.name=",
+                "--logging.level.root=WARN",
+                "--logging.level.com.example.banking=WARN",
+                "--banking.statement.fetch-size=100"));
+        args.addAll(List.of(extraArgs));
+        return SpringApplication.run(BankingApplication.class, args.toArray(String[]::new));
+    }
+
+    //users x accountsPerUser accounts, each with transactionsPerAccount history rows
+    //Rows go in with explicit ids like a bulk load, then the id sequences are moved past them
+    static void seed(ConfigurableApplicationContext context, int users, int accountsPerUser, int transactionsPerAccount){
+        JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+
+        List<Object[]> userRows = new ArrayList<>();
+        for(int u = 0; u < users; u++){
+            userRows.add(new Object[]{u + 1L, "User " + u, "user" + u + "@bench.local", PASSWORD_HASH,
+                    String.format("9%09d", u), "Bench Street " + u, "USER"});
+        }
+        jdbc.batchUpdate("insert into users (user_id, name, email, password, mobile_no, address, role) values (?, ?, ?, ?, ?, ?, ?)",
+                userRows, BATCH_SIZE, (ps, row) -> {
+                    for(int i = 0; i < row.length; i++){
+                        ps.setObject(i + 1, row[i]);
+                    }
+                });
+
+        List<Long> userIds = jdbc.queryForList("select user_id from users order by user_id", Long.class);
+        List<Object[]> accountRows = new ArrayList<>();
+        long accountNo = FIRST_ACCOUNT_NO;
+        long accountId = 1;
+        for(Long userId : userIds){
+            for(int a = 0; a < accountsPerUser; a++){
+                accountRows.add(new Object[]{accountId++, userId, accountNo++, OPENING_BALANCE, a % 2 == 0 ? "SAVINGS" : "CURRENT"});
+            }
+        }
+        jdbc.batchUpdate("insert into bank_account (account_id, user_id, account_no, balance, account_type) values (?, ?, ?, ?, ?)",
+                accountRows, BATCH_SIZE, (ps, row) -> {
+                    for(int i = 0; i < row.length; i++){
+                        ps.setObject(i + 1, row[i]);
+                    }
+                });
+
+        LocalDateTime start = LocalDateTime.now().minusDays(365);
+        List<Object[]> historyRows = new ArrayList<>(BATCH_SIZE);
+        long transactionId = 1;
+        for(Object[] account : accountRows){
+            for(int t = 0; t < transactionsPerAccount; t++){
+                historyRows.add(new Object[]{transactionId++, account[2], "DEPOSIT", 100L, "DEPOSITED100",
+                        Timestamp.valueOf(start.plusMinutes(t))});
+                if(historyRows.size() == BATCH_SIZE){
+                    insertHistory(jdbc, historyRows);
+                    historyRows.clear();
+                }
+            }
+        }
+        insertHistory(jdbc, historyRows);
+        context.getBean(IdBlockAllocator.class).migrate();
+    }
+
+    static List<Long> userIds(ConfigurableApplicationContext context){
+        return context.getBean(JdbcTemplate.class).queryForList("select user_id from users order by user_id", Long.class);
+    }
+
+    private static void insertHistory(JdbcTemplate jdbc, List<Object[]> rows){
+        if(rows.isEmpty()){
+            return;
+        }
+        jdbc.batchUpdate("insert into transaction_history (transactionid, account_no, transaction_type, amount, description, time_stamp) values (?, ?, ?, ?, ?, ?)",
+                rows);
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.banking.benchmarks;
+
+import com.example.banking.AccountService;
+import com.example.banking.BankingMetrics;
+import com.example.banking.DepositRequest;
+import com.example.banking.OptimisticRetry;
+import com.example.banking.TransferRequest;
+import com.example.banking.WithdrawRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+//ATOMIC vs PESSIMISTIC vs OPTIMISTIC vs SEQUENCED under a mixed deposit/withdraw/transfer load from several threads
+//hotPercent of the operations land on a handful of hot accounts, the rest spread over all accounts
+//Conflict and exhaustion counts of the optimistic runs are printed at the end of each trial
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(8)
+@Fork(1)
+public class ConcurrencyModeBenchmark {
+
+    private static final int HOT_ACCOUNTS = 8;
+
+    @Param({"ATOMIC", "PESSIMISTIC", "OPTIMISTIC", "SEQUENCED"})
+    public String mode;
+
+    @Param({"0", "20"})
+    public int hotPercent;
+
+    @Param("1000")
+    public int users;
+
+    private ConfigurableApplicationContext context;
+    private AccountService accountService;
+    private OptimisticRetry optimisticRetry;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        //Fresh engine directory per trial, a journal from an earlier trial belongs to another database
+        Path engineDir = Files.createTempDirectory("engine");
+        context = BankingContext.start("concurrency" + mode + hotPercent, "--banking.concurrency.mode=" + mode,
+                "--banking.engine.dir=" + engineDir);
+        BankingContext.seed(context, users, 1, 5);
+        accountService = context.getBean(AccountService.class);
+        optimisticRetry = context.getBean(OptimisticRetry.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        Map<String, Object> stats = optimisticRetry.stats();
+        System.out.println("# " + mode + " hot=" + hotPercent + "% " + stats);
+        context.close();
+    }
+
+    //Roughly the production mix: half transfers, the rest split between deposits and withdrawals
+    @Benchmark
+    public Object mixed(){
+        int roll = ThreadLocalRandom.current().nextInt(100);
+        if(roll < 50){
+            long from = accountNo();
+            long to = accountNo();
+            if(to == from){
+                to = from == BankingContext.FIRST_ACCOUNT_NO ? from + 1 : from - 1;
+            }
+            TransferRequest request = new TransferRequest();
+            request.setFromAccountNo(from);
+            request.setToAccountNo(to);
+            request.setAmount(1L);
+            return optimisticRetry.run(BankingMetrics.ADMIN_TRANSFER, () -> accountService.MoneyTransfer(request));
+        }
+        if(roll < 75){
+            DepositRequest request = new DepositRequest();
+            request.setAccountNo(accountNo());
+            request.setAmount(100L);
+            return optimisticRetry.run(BankingMetrics.DEPOSIT, () -> accountService.Deposit(request));
+        }
+        WithdrawRequest request = new WithdrawRequest();
+        request.setAccountNo(accountNo());
+        request.setAmount(1L);
+        return optimisticRetry.run(BankingMetrics.WITHDRAW, () -> accountService.Withdraw(request));
+    }
+
+    private long accountNo(){
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int range = random.nextInt(100) < hotPercent ? HOT_ACCOUNTS : users;
+        return BankingContext.FIRST_ACCOUNT_NO + random.nextInt(range);
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.banking.benchmarks;
+
+import com.example.banking.AccountService;
+import com.example.banking.BalanceSlotService;
+import com.example.banking.TransferRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+//Many payers transferring into one merchant account at once
+//slots=0 is the unsharded baseline where every credit queues on the merchant row
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(16)
+@Fork(1)
+public class HotAccountBenchmark {
+
+    private static final long MERCHANT = BankingContext.FIRST_ACCOUNT_NO;
+
+    @Param({"0", "4", "16"})
+    public int slots;
+
+    @Param("1000")
+    public int users;
+
+    private ConfigurableApplicationContext context;
+    private AccountService accountService;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        context = BankingContext.start("hotaccount" + slots);
+        BankingContext.seed(context, users, 1, 5);
+        context.getBean(BalanceSlotService.class).reshard(MERCHANT, slots);
+        accountService = context.getBean(AccountService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        context.close();
+    }
+
+    @Benchmark
+    public String payMerchant(){
+        TransferRequest request = new TransferRequest();
+        request.setFromAccountNo(MERCHANT + 1 + ThreadLocalRandom.current().nextInt(users - 1));
+        request.setToAccountNo(MERCHANT);
+        request.setAmount(1L);
+        return accountService.MoneyTransfer(request);
+    }
+}
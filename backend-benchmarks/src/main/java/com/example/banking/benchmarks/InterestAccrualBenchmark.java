@@ -0,0 +1,65 @@
+package com.example.banking.benchmarks;
+
+import com.example.banking.InterestAccrualService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.YearMonth;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+//One full interest accrual over every seeded savings account, per worker count
+//Each invocation credits a new period, a repeated period would find all its chunks checkpointed
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class InterestAccrualBenchmark {
+
+    @Param({"1", "4"})
+    public int threads;
+
+    @Param("1000")
+    public int chunkSize;
+
+    @Param("100000")
+    public int users;
+
+    private ConfigurableApplicationContext context;
+    private InterestAccrualService interestAccrualService;
+    private YearMonth period = YearMonth.of(2000, 1);
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        context = BankingContext.start("interest" + threads + "x" + chunkSize,
+                "--banking.interest.threads=" + threads, "--banking.interest.chunk-size=" + chunkSize);
+        BankingContext.seed(context, users, 1, 1);
+        interestAccrualService = context.getBean(InterestAccrualService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        System.out.println("# threads=" + threads + " " + interestAccrualService.stats().get("lastRun"));
+        context.close();
+    }
+
+    @Benchmark
+    public Map<String, Object> accrue(){
+        period = period.plusMonths(1);
+        return interestAccrualService.accrue(period);
+    }
+}
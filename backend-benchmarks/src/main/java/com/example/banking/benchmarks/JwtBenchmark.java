@@ -0,0 +1,51 @@
+package com.example.banking.benchmarks;
+
+import com.example.banking.BankUser;
+import com.example.banking.JwtPrincipal;
+import com.example.banking.JwtUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+//Token creation and validation, no Spring context needed
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtBenchmark {
+
+    private JwtUtil jwtUtil;
+    private BankUser bankUser;
+    private String token;
+
+    @Setup
+    public void setUp(){
+        jwtUtil = new JwtUtil();
+        bankUser = new BankUser();
+        bankUser.setUserId(42L);
+        bankUser.setEmail("user42@bench.local");
+        bankUser.setRole("USER");
+        token = jwtUtil.generateToken(bankUser);
+    }
+
+    @Benchmark
+    public String generateToken(){
+        return jwtUtil.generateToken(bankUser);
+    }
+
+    @Benchmark
+    public JwtPrincipal parseToken(){
+        return jwtUtil.parse(token);
+    }
+}
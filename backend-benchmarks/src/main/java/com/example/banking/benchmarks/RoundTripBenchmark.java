@@ -0,0 +1,83 @@
+package com.example.banking.benchmarks;
+
+import com.example.banking.AccountService;
+import com.example.banking.DbRoundTrips;
+import com.example.banking.TransferRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+//Database round trips of one transfer, with Hibernate insert batching off (batch_size=1) and on
+//A transfer saves two history rows; with pooled ids and batching they go out as one JDBC batch
+//The average number of round trips per transfer is printed at the end of each trial
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RoundTripBenchmark {
+
+    @Param({"1", "50"})
+    public int batchSize;
+
+    @Param("1000")
+    public int users;
+
+    private ConfigurableApplicationContext context;
+    private AccountService accountService;
+    private final LongAdder transfers = new LongAdder();
+    private final LongAdder roundTrips = new LongAdder();
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        context = BankingContext.start("roundtrips" + batchSize,
+                "--spring.jpa.properties.hibernate.jdbc.batch_size=" + batchSize);
+        BankingContext.seed(context, users, 1, 5);
+        accountService = context.getBean(AccountService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        long count = transfers.sum();
+        System.out.printf("# batch_size=%d round trips per transfer: %.2f%n", batchSize,
+                count == 0 ? 0.0 : roundTrips.sum() / (double) count);
+        context.close();
+    }
+
+    @Benchmark
+    public String transfer(){
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long from = BankingContext.FIRST_ACCOUNT_NO + random.nextInt(users);
+        long to = BankingContext.FIRST_ACCOUNT_NO + random.nextInt(users);
+        if(to == from){
+            to = from == BankingContext.FIRST_ACCOUNT_NO ? from + 1 : from - 1;
+        }
+        TransferRequest request = new TransferRequest();
+        request.setFromAccountNo(from);
+        request.setToAccountNo(to);
+        request.setAmount(1L);
+        DbRoundTrips.begin();
+        try {
+            return accountService.MoneyTransfer(request);
+        } finally {
+            roundTrips.add(DbRoundTrips.end());
+            transfers.increment();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+#!/usr/bin/env bash
+# Throughput of GET /api/accounts and POST /api/accounts/transfer against a running backend.
+# Run it once with the default profile and once with --spring.profiles.active=virtual, then compare.
+# Needs curl and hey (https://github.com/rakyll/hey).
+#
+# Usage: EMAIL=user@example.com PASSWORD=secret TO_ACCOUNT=1234567890 ./compare-thread-modes.sh [label]
+set -euo pipefail
+
+BASE_URL="${BASE_URL:-http://localhost:8080}"
+CONCURRENCY="${CONCURRENCY:-200}"
+DURATION="${DURATION:-30s}"
+LABEL="${1:-run}"
+: "${EMAIL:?EMAIL is required}"
+: "${PASSWORD:?PASSWORD is required}"
+: "${TO_ACCOUNT:?TO_ACCOUNT is required}"
+
+TOKEN=$(curl -sf -H 'Content-Type: application/json' \
+  -d "{\"email\":\"${EMAIL}\",\"password\":\"${PASSWORD}\"}" \
+  "${BASE_URL}/api/users/login" | sed -E 's/.*"token":"([^"]+)".*/\1/')
+
+run() {
+  local name="$1"; shift
+  local rps p99
+  local out
+  out=$(hey -z "${DURATION}" -c "${CONCURRENCY}" -H "Authorization: Bearer ${TOKEN}" "$@")
+  rps=$(echo "${out}" | awk '/Requests\/sec/ {print $2}')
+  p99=$(echo "${out}" | awk '/ 99% in/ {print $3}')
+  printf '%-10s %-28s %12s req/s   p99 %ss\n' "${LABEL}" "${name}" "${rps}" "${p99}"
+}
+
+run "GET /api/accounts" "${BASE_URL}/api/accounts"
+run "POST /api/accounts/transfer" -m POST -T application/json \
+  -d "{\"toAccountNo\":${TO_ACCOUNT},\"amount\":1}" "${BASE_URL}/api/accounts/transfer"
@@ -0,0 +1,39 @@
+package com.example.banking;
+
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//One sub-balance of a sharded hot account, credits land on a random slot so they do not queue on the account row
+//The unique key doubles as the index for the per-account sum and the slot update
+@Entity
+@Table(name = "account_balance_slots",
+        uniqueConstraints = @UniqueConstraint(name = "uk_slot_account_slot", columnNames = {"accountNo", "slot"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AccountBalanceSlot {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long slotId;
+
+    @Column(nullable = false)
+    private Long accountNo;
+
+    //0 .. slots-1
+    @Column(nullable = false)
+    private Integer slot;
+
+    @Column(nullable = false)
+    private Long balance;
+
+}
@@ -5,7 +5,7 @@ import jakarta.validation.Valid;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -15,38 +15,48 @@ import java.util.List;
 public class AccountController {
 
     private final AccountService accountService;
-    private final UserRepository userRepository;
-    public AccountController(AccountService accountService, UserRepository userRepository){
+    private final BankingMetrics bankingMetrics;
+    private final IdempotencyService idempotencyService;
+    private final OptimisticRetry optimisticRetry;
+    public AccountController(AccountService accountService, BankingMetrics bankingMetrics, IdempotencyService idempotencyService,
+                             OptimisticRetry optimisticRetry){
         this.accountService=accountService;
-        this.userRepository=userRepository;
+        this.bankingMetrics=bankingMetrics;
+        this.idempotencyService=idempotencyService;
+        this.optimisticRetry=optimisticRetry;
     }
 
     //Withdraw
     @PostMapping("/withdraw")
-    public ResponseEntity<AccountInfo> withdraw(@Valid @RequestBody WithdrawRequest request){
-        AccountInfo updated = accountService.Withdraw(request);
-        return ResponseEntity.status(HttpStatus.OK).body(updated);
+    public ResponseEntity<AccountInfo> withdraw(@Valid @RequestBody WithdrawRequest request,
+                                                @AuthenticationPrincipal JwtPrincipal principal,
+                                                @RequestHeader(value = IdempotencyService.KEY_HEADER, required = false) String idempotencyKey){
+        IdempotencyService.Result<AccountInfo> updated = bankingMetrics.record(BankingMetrics.WITHDRAW,
+                () -> optimisticRetry.run(BankingMetrics.WITHDRAW,
+                        () -> idempotencyService.execute(BankingMetrics.WITHDRAW, principal.userId(), idempotencyKey, request,
+                                AccountInfo.class, () -> accountService.Withdraw(request))));
+        return IdempotencyService.respond(HttpStatus.OK, updated);
 
     }
 
     //Money Transfer for User
     @PreAuthorize("hasRole('USER')")
     @PostMapping("/transfer")
-    public ResponseEntity<String> MoneyTransfer(@Valid @RequestBody UserMoneyTransferRequest request){
-        String message = accountService.userMoneyTransfer(request);
-        return ResponseEntity.status(HttpStatus.CREATED).body(message);
+    public ResponseEntity<String> MoneyTransfer(@Valid @RequestBody UserMoneyTransferRequest request,
+                                                @AuthenticationPrincipal JwtPrincipal principal,
+                                                @RequestHeader(value = IdempotencyService.KEY_HEADER, required = false) String idempotencyKey){
+        IdempotencyService.Result<String> message = bankingMetrics.record(BankingMetrics.USER_TRANSFER,
+                () -> optimisticRetry.run(BankingMetrics.USER_TRANSFER,
+                        () -> idempotencyService.execute(BankingMetrics.USER_TRANSFER, principal.userId(), idempotencyKey, request,
+                                String.class, () -> accountService.userMoneyTransfer(request))));
+        return IdempotencyService.respond(HttpStatus.CREATED, message);
 
     }
 
     //GET /api/accounts → return all accounts + recent transactions for logged-in user
     @GetMapping
-    public ResponseEntity<List<AccountInfo>> getUserAccounts() {
-        String email = SecurityContextHolder.getContext().getAuthentication().getName();
-
-        BankUser user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
-        List<AccountInfo> accounts = accountService.getAccountsForUser(user.getUserId());
+    public ResponseEntity<List<AccountInfo>> getUserAccounts(@AuthenticationPrincipal JwtPrincipal principal) {
+        List<AccountInfo> accounts = accountService.getAccountsForUser(principal.userId());
         return ResponseEntity.ok(accounts);
     }
 
@@ -0,0 +1,171 @@
+package com.example.banking;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+//Striped in-JVM locks keyed by account number
+//Accounts hashing to different stripes never block each other, so one hot account only slows itself down
+//Balance correctness across nodes comes from the conditional updates in AccountRepository,
+//these locks keep same-account requests queued in the JVM instead of on MySQL row locks
+//Money requests take their stripes through callLocked before their transaction opens, so a request queued behind a
+//busy account holds no pooled connection; lockForTransaction is for the rare admin paths already inside one
+@Component
+public class AccountLockManager implements MeterBinder {
+
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    //Counters exposed through the admin stats endpoint
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder contended = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    public AccountLockManager(@Value("${banking.locks.stripes:1024}") int stripeCount){
+        if(stripeCount <= 0){
+            throw new IllegalArgumentException("Lock stripe count must be Greater than 0");
+        }
+        //Rounding up to a power of two so the stripe index is a simple mask
+        int size = Integer.highestOneBit(stripeCount - 1) << 1;
+        if(size <= 0) size = 1;
+        this.stripes = new ReentrantLock[size];
+        for(int i = 0; i < size; i++){
+            stripes[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+    }
+
+    //Holds the stripes of the given accounts while work runs; work opens and commits its own transaction, so the
+    //stripes are released only after the commit and the next holder reads the committed balance
+    //Inside a transaction already open the stripes are kept until that transaction completes instead
+    public <T> T callLocked(Supplier<T> work, Long... accountNos){
+        if(TransactionSynchronizationManager.isSynchronizationActive()){
+            lockForTransaction(accountNos);
+            return work.get();
+        }
+        int[] indexes = stripeIndexes(accountNos);
+        acquireAll(indexes);
+        try {
+            return work.get();
+        } finally {
+            release(indexes, indexes.length);
+        }
+    }
+
+    //Locks the stripes of the given accounts until the current transaction completes
+    //The caller's connection is held while it waits, money requests use callLocked instead
+    public void lockForTransaction(Long... accountNos){
+        int[] indexes = stripeIndexes(accountNos);
+        acquireAll(indexes);
+
+        if(TransactionSynchronizationManager.isSynchronizationActive()){
+            //Released only after commit/rollback so the next holder reads the committed balance
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    release(indexes, indexes.length);
+                }
+            });
+        } else {
+            release(indexes, indexes.length);
+            throw new IllegalStateException("Account locks must be taken inside a transaction");
+        }
+    }
+
+    public Map<String, Object> stats(){
+        Map<String, Object> body = new LinkedHashMap<>();
+        long total = acquisitions.sum();
+        long waited = contended.sum();
+        long waitedNanos = waitNanos.sum();
+        body.put("stripes", stripes.length);
+        body.put("acquisitions", total);
+        body.put("contendedAcquisitions", waited);
+        body.put("contentionRatio", total == 0 ? 0.0 : (double) waited / total);
+        body.put("totalWaitMillis", waitedNanos / 1_000_000.0);
+        body.put("avgWaitMillis", waited == 0 ? 0.0 : waitedNanos / 1_000_000.0 / waited);
+        body.put("maxWaitMillis", maxWaitNanos.get() / 1_000_000.0);
+        body.put("currentlyLocked", Arrays.stream(stripes).filter(ReentrantLock::isLocked).count());
+        return body;
+    }
+
+    //Same counters in Micrometer, picked up automatically because this bean is a MeterBinder
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("banking.locks.acquisitions", acquisitions, LongAdder::sum)
+                .description("Account stripe lock acquisitions")
+                .register(registry);
+        FunctionCounter.builder("banking.locks.contended", contended, LongAdder::sum)
+                .description("Acquisitions that had to wait for another holder")
+                .register(registry);
+        FunctionCounter.builder("banking.locks.wait", waitNanos, adder -> adder.sum() / (double) TimeUnit.SECONDS.toNanos(1))
+                .description("Total time spent waiting for account stripes")
+                .baseUnit("seconds")
+                .register(registry);
+        Gauge.builder("banking.locks.held", stripes, held -> Arrays.stream(held).filter(ReentrantLock::isLocked).count())
+                .description("Stripes currently locked")
+                .register(registry);
+    }
+
+    //Stripes are always taken in ascending index order, so two transfers in opposite directions cannot deadlock
+    private void acquireAll(int[] indexes){
+        for(int i = 0; i < indexes.length; i++){
+            try {
+                acquire(stripes[indexes[i]]);
+            } catch (RuntimeException ex){
+                release(indexes, i);
+                throw ex;
+            }
+        }
+    }
+
+    private void acquire(ReentrantLock lock){
+        acquisitions.increment();
+
+        //Fast path, a single CAS when nobody holds the stripe
+        if(lock.tryLock()){
+            return;
+        }
+
+        contended.increment();
+        long start = System.nanoTime();
+        lock.lock();
+        long waited = System.nanoTime() - start;
+        waitNanos.add(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+    }
+
+    private void release(int[] indexes, int count){
+        for(int i = count - 1; i >= 0; i--){
+            stripes[indexes[i]].unlock();
+        }
+    }
+
+    //Distinct stripe indexes in ascending order, accounts sharing a stripe lock it only once
+    private int[] stripeIndexes(Long... accountNos){
+        return Arrays.stream(accountNos)
+                .mapToInt(this::stripeFor)
+                .distinct()
+                .sorted()
+                .toArray();
+    }
+
+    private int stripeFor(Long accountNo){
+        long h = accountNo * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
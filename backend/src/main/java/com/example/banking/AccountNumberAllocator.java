@@ -0,0 +1,125 @@
+package com.example.banking;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+//Hands out 10-digit account numbers without ever checking whether one is taken
+//Each node reserves a block of sequence values from account_number_sequence in its own short transaction,
+//then numbers the block locally; the values go through a keyed permutation so the numbers still look random
+//Values are unique across nodes and the permutation is a bijection, so the account numbers are unique too
+//The key must never change once accounts exist, a different key maps new values onto existing numbers
+@Component
+public class AccountNumberAllocator implements MeterBinder {
+
+    public static final long FIRST_ACCOUNT_NO = 1_000_000_000L;
+    public static final long ACCOUNT_NO_SPACE = 9_000_000_000L;
+    private static final String SEQUENCE = "account_no";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate blockTransaction;
+    private final AccountNumberPermutation permutation;
+    private final int blockSize;
+
+    //Current block [next, blockEnd), guarded by this
+    private long next;
+    private long blockEnd;
+
+    private final LongAdder allocated = new LongAdder();
+    private final LongAdder blocksReserved = new LongAdder();
+    private final LongAdder collisions = new LongAdder();
+    private static final Logger logger = LoggerFactory.getLogger(AccountNumberAllocator.class);
+
+    public AccountNumberAllocator(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                  @Value("${banking.account-numbers.key:betabank-account-numbers}") String key,
+                                  @Value("${banking.account-numbers.block-size:100}") int blockSize){
+        if(key.isBlank()){
+            throw new IllegalArgumentException("banking.account-numbers.key must not be blank");
+        }
+        if(blockSize < 1){
+            throw new IllegalArgumentException("banking.account-numbers.block-size must be at least 1");
+        }
+        this.jdbcTemplate=jdbcTemplate;
+        //Own transaction, so the sequence row lock is released before the caller's work and never rolled back with it
+        this.blockTransaction = new TransactionTemplate(transactionManager);
+        this.blockTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.permutation = new AccountNumberPermutation(key.getBytes(StandardCharsets.UTF_8), ACCOUNT_NO_SPACE);
+        this.blockSize=blockSize;
+    }
+
+    public synchronized Long next(){
+        if(next == blockEnd){
+            reserveBlock();
+        }
+        long value = next++;
+        allocated.increment();
+        return FIRST_ACCOUNT_NO + permutation.permute(value);
+    }
+
+    //Only a number drawn randomly before the allocator existed can clash with an allocated one
+    public void recordCollision(Long accountNo){
+        collisions.increment();
+        logger.warn("Allocated Account No {} was already taken by an older account, allocating another", accountNo);
+    }
+
+    public Map<String, Object> stats(){
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("blockSize", blockSize);
+        stats.put("allocated", allocated.sum());
+        stats.put("blocksReserved", blocksReserved.sum());
+        stats.put("collisions", collisions.sum());
+        synchronized (this){
+            stats.put("remainingInBlock", blockEnd - next);
+        }
+        return stats;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("banking.account-numbers.allocated", allocated, LongAdder::sum)
+                .register(registry);
+        FunctionCounter.builder("banking.account-numbers.blocks", blocksReserved, LongAdder::sum)
+                .register(registry);
+        FunctionCounter.builder("banking.account-numbers.collisions", collisions, LongAdder::sum)
+                .register(registry);
+    }
+
+    private void reserveBlock(){
+        Long start = blockTransaction.execute(status -> {
+            Long current = lockedNextValue();
+            if(current == null){
+                //First reservation ever; concurrent nodes race on the insert and the losers just read the row
+                jdbcTemplate.update("insert ignore into account_number_sequence (name, next_value) values (?, 0)", SEQUENCE);
+                current = lockedNextValue();
+            }
+            jdbcTemplate.update("update account_number_sequence set next_value = next_value + ? where name = ?",
+                    blockSize, SEQUENCE);
+            return current;
+        });
+        if(start == null || start >= ACCOUNT_NO_SPACE){
+            throw new IllegalStateException("Account number space is exhausted");
+        }
+        next = start;
+        blockEnd = Math.min(start + blockSize, ACCOUNT_NO_SPACE);
+        blocksReserved.increment();
+        logger.info("Reserved account number block [{}, {})", next, blockEnd);
+    }
+
+    private Long lockedNextValue(){
+        return jdbcTemplate.query("select next_value from account_number_sequence where name = ? for update",
+                rs -> rs.next() ? rs.getLong(1) : null, SEQUENCE);
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.banking;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+
+//Keyed bijection of [0, domain) onto itself: a balanced Feistel network with HMAC-SHA256 rounds,
+//cycle-walked so values that land outside the domain are permuted again until they fall inside
+//Distinct inputs always give distinct outputs, so sequential values come out looking random but never repeat
+//Not thread-safe, the Mac and the buffer are reused between calls
+public class AccountNumberPermutation {
+
+    private static final int ROUNDS = 8;
+
+    private final long domain;
+    private final int halfBits;
+    private final long halfMask;
+    private final Mac mac;
+    private final ByteBuffer block = ByteBuffer.allocate(Integer.BYTES + Long.BYTES);
+
+    public AccountNumberPermutation(byte[] key, long domain){
+        if(domain < 2){
+            throw new IllegalArgumentException("Permutation domain must hold at least two values");
+        }
+        if(key.length == 0){
+            throw new IllegalArgumentException("Permutation key must not be empty");
+        }
+        this.domain = domain;
+        //Smallest even bit width covering the domain, at most 4x its size so cycle walking stays short
+        int bits = 64 - Long.numberOfLeadingZeros(domain - 1);
+        this.halfBits = (bits + 1) / 2;
+        this.halfMask = (1L << halfBits) - 1;
+        try {
+            this.mac = Mac.getInstance("HmacSHA256");
+            this.mac.init(new SecretKeySpec(key, "HmacSHA256"));
+        } catch (GeneralSecurityException ex){
+            throw new IllegalStateException("HmacSHA256 is not available", ex);
+        }
+    }
+
+    public long permute(long value){
+        if(value < 0 || value >= domain){
+            throw new IllegalArgumentException("Value " + value + " is outside the permutation domain");
+        }
+        long result = value;
+        do {
+            result = encrypt(result);
+        } while(result >= domain);
+        return result;
+    }
+
+    private long encrypt(long value){
+        long left = value >>> halfBits;
+        long right = value & halfMask;
+        for(int round = 0; round < ROUNDS; round++){
+            long next = left ^ roundFunction(round, right);
+            left = right;
+            right = next;
+        }
+        return (left << halfBits) | right;
+    }
+
+    private long roundFunction(int round, long half){
+        block.clear();
+        block.putInt(round).putLong(half);
+        byte[] digest = mac.doFinal(block.array());
+        return ByteBuffer.wrap(digest).getLong() & halfMask;
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.banking;
+
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//Shared counter behind account number allocation, each node reserves a block of values from it at a time
+//Holds the next unreserved value rather than a block index, so nodes with different block sizes never overlap
+@Entity
+@Table(name = "account_number_sequence")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AccountNumberSequence {
+
+    @Id
+    private String name;
+
+    //First value of the next block, before the permutation
+    private Long nextValue;
+
+}
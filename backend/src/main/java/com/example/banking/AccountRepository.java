@@ -1,8 +1,16 @@
 package com.example.banking;
 
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,6 +23,60 @@ public interface AccountRepository extends JpaRepository<BankAccount,Long> {
     //Check if Account Number Exists
     boolean existsByAccountNo(Long accountNo);
 
+    //Check if the Account belongs to the User
+    boolean existsByAccountNoAndBankUserUserId(Long accountNo, Long userId);
+
     //Optional <T> its a container that may or may not hold a non-null value either BankAccount or just empty not null
     Optional<BankAccount> findByAccountNo(Long accountNo);
+
+    //One page of accounts with their owner, optionally of one account type and matching a search
+    //The search is an owner name or email pattern, or an exact account number
+    //Sharded accounts add their slots, a correlated sum that only finds rows for the few hot accounts
+    @Query(value = "select new com.example.banking.AdminAccountSummary(a.accountNo, a.accountType,"
+            + " a.balance + coalesce((select sum(s.balance) from AccountBalanceSlot s where s.accountNo = a.accountNo), 0L),"
+            + " u.userId, u.name, u.email)"
+            + " from BankAccount a join a.bankUser u"
+            + " where (:accountType is null or a.accountType = :accountType)"
+            + " and (:search is null or lower(u.name) like :search or lower(u.email) like :search or a.accountNo = :accountNo)",
+            countQuery = "select count(a) from BankAccount a join a.bankUser u"
+                    + " where (:accountType is null or a.accountType = :accountType)"
+                    + " and (:search is null or lower(u.name) like :search or lower(u.email) like :search or a.accountNo = :accountNo)")
+    Page<AdminAccountSummary> findSummaries(@Param("accountType") String accountType, @Param("search") String search,
+                                            @Param("accountNo") Long accountNo, Pageable pageable);
+
+    //Get All accounts by user id, without loading the user first
+    List<BankAccount> findByBankUserUserId(Long userId);
+
+    //Account numbers of a user without loading the entities
+    @Query("select a.accountNo from BankAccount a where a.bankUser.userId = :userId order by a.accountId")
+    List<Long> findAccountNosByUserId(@Param("userId") Long userId);
+
+    //Sharded accounts with their slot counts, [accountNo, balanceSlots]
+    @Query("select a.accountNo, a.balanceSlots from BankAccount a where a.balanceSlots > 0")
+    List<Object[]> findShardedAccounts();
+
+    //Slot count of one account, empty when the account does not exist
+    @Query("select a.balanceSlots from BankAccount a where a.accountNo = :accountNo")
+    Optional<Integer> findBalanceSlotsByAccountNo(@Param("accountNo") Long accountNo);
+
+    //Reads the latest committed row and holds its row lock until the transaction ends
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select a from BankAccount a where a.accountNo = :accountNo")
+    Optional<BankAccount> findByAccountNoForUpdate(@Param("accountNo") Long accountNo);
+
+    //Locks a set of accounts with one IN query, ordered so every caller takes the row locks in the same order
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select a from BankAccount a where a.accountNo in :accountNos order by a.accountNo")
+    List<BankAccount> findAllByAccountNoInForUpdate(@Param("accountNos") Collection<Long> accountNos);
+
+    //Atomic debit, the row only changes when the balance covers the amount
+    //Returns the affected row count, 0 means the account is missing or the funds are insufficient
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update BankAccount a set a.balance = a.balance - :amount, a.version = a.version + 1 where a.accountNo = :accountNo and a.balance >= :amount")
+    int debit(@Param("accountNo") Long accountNo, @Param("amount") Long amount);
+
+    //Atomic credit, returns 0 when the account does not exist
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update BankAccount a set a.balance = a.balance + :amount, a.version = a.version + 1 where a.accountNo = :accountNo")
+    int credit(@Param("accountNo") Long accountNo, @Param("amount") Long amount);
 }
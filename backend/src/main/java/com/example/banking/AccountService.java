@@ -1,11 +1,19 @@
 package com.example.banking;
 
 import jakarta.transaction.Transactional;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
@@ -16,111 +24,137 @@ import org.slf4j.LoggerFactory;
 public class AccountService {
     private final AccountRepository accountRepository;
     private final TransactionHistoryRepository transactionHistoryRepository;
-    private final UserRepository userRepository;
+    private final AccountLockManager accountLockManager;
+    private final RecentTransactionsCache recentTransactionsCache;
+    private final BankStatsService bankStatsService;
+    private final LedgerService ledgerService;
+    private final TransactionHistoryRecorder transactionHistoryRecorder;
+    private final ConcurrencyMode concurrencyMode;
+    private final BalanceSlotService balanceSlotService;
+    private final SequencedLedgerEngine sequencedLedgerEngine;
+    //Explicit rather than @Transactional, the SEQUENCED path must not check out a connection per request
+    private final TransactionTemplate transactionTemplate;
     private static final Logger logger = LoggerFactory.getLogger(AccountService.class);
 
-    public AccountService(AccountRepository accountRepository, TransactionHistoryRepository transactionHistoryRepository, UserRepository userRepository){
+    public AccountService(AccountRepository accountRepository, TransactionHistoryRepository transactionHistoryRepository,
+                          AccountLockManager accountLockManager, RecentTransactionsCache recentTransactionsCache,
+                          BankStatsService bankStatsService, LedgerService ledgerService,
+                          TransactionHistoryRecorder transactionHistoryRecorder,
+                          @Value("${banking.concurrency.mode:ATOMIC}") ConcurrencyMode concurrencyMode,
+                          BalanceSlotService balanceSlotService, SequencedLedgerEngine sequencedLedgerEngine,
+                          PlatformTransactionManager transactionManager){
         this.accountRepository=accountRepository;
         this.transactionHistoryRepository=transactionHistoryRepository;
-        this.userRepository=userRepository;
+        this.accountLockManager=accountLockManager;
+        this.recentTransactionsCache=recentTransactionsCache;
+        this.bankStatsService=bankStatsService;
+        this.ledgerService=ledgerService;
+        this.transactionHistoryRecorder=transactionHistoryRecorder;
+        this.concurrencyMode=concurrencyMode;
+        this.balanceSlotService=balanceSlotService;
+        this.sequencedLedgerEngine=sequencedLedgerEngine;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
     //Deposit for Admin Usage
-    @Transactional
     public AccountInfo Deposit(DepositRequest request){
 
         //Deposit Log
         logger.info("Deposit Request by the admin for Account No : {}" ,request.getAccountNo());
 
-        //Finding if Account Exists and getting it
-        BankAccount bankAccount = accountRepository.findByAccountNo(request.getAccountNo())
-                .orElseThrow(()-> new RuntimeException("Account Not Found"));
         if(request.getAmount() <= 0){
             throw new IllegalArgumentException("Amount must be Greater than 0");
         }
 
-        //Mapping fields and saving account
-        bankAccount.setBalance(bankAccount.getBalance() + request.getAmount());
-        accountRepository.save(bankAccount);
-
-        //Saving in Transaction History
-        transactionHistoryRepository.save(new TransactionHistory(
-                null, bankAccount.getAccountNo(), "DEPOSIT",request.getAmount(),
-                "DEPOSITED"+request.getAmount(), LocalDateTime.now()
-        ));
-        logger.info("Deposit Successfully Done By the admin on Account : {}" ,request.getAccountNo());
+        if(concurrencyMode == ConcurrencyMode.SEQUENCED){
+            return sequencedDeposit(request);
+        }
+        //A sharded account takes the credit on one of its slots, its stripe is left free
+        if(balanceSlotService.isSharded(request.getAccountNo())){
+            return transactionTemplate.execute(status -> databaseDeposit(request));
+        }
+        return withAccountLocks(() -> transactionTemplate.execute(status -> databaseDeposit(request)), request.getAccountNo());
+    }
 
-        var transactions = transactionHistoryRepository
-                .findTop5ByAccountNoOrderByTimeStampDesc(bankAccount.getAccountNo())
-                .stream()
-                .map(tx -> new TransactionInfo(
-                        tx.getTransactionType(),
-                        tx.getAmount(),
-                        tx.getDescription(),
-                        tx.getTimeStamp()
-                ))
-                .toList();
+    private AccountInfo databaseDeposit(DepositRequest request){
+
+        //JFR event around the ledger change, near free unless a recording is running
+        LedgerMutationEvent event = LedgerMutationEvent.start(BankingMetrics.DEPOSIT, null, request.getAccountNo(), request.getAmount());
+        TransactionHistory saved;
+        try {
+            //Crediting in the database, no read before the update
+            creditOrThrow(request.getAccountNo(), request.getAmount(), "Account Not Found");
+            ledgerService.post(LedgerService.deposit(request.getAccountNo(), request.getAmount()));
+
+            //Saving in Transaction History
+            saved = transactionHistoryRecorder.record(new TransactionHistory(
+                    null, request.getAccountNo(), "DEPOSIT",request.getAmount(),
+                    "DEPOSITED"+request.getAmount(), LocalDateTime.now()
+            ));
+        } catch (RuntimeException ex){
+            event.failed(ex);
+            throw ex;
+        } finally {
+            event.finish();
+        }
 
+        logger.info("Deposit Successfully Done By the admin on Account : {}" ,request.getAccountNo());
 
-        return new AccountInfo(bankAccount.getAccountNo(),
-                bankAccount.getBalance(),
-                bankAccount.getAccountType(),
-                transactions);
+        AccountInfo info = accountInfo(request.getAccountNo(), saved);
+        bankStatsService.recordDeposit(request.getAmount(), info.getBalance());
+        return info;
     }
 
 
     //Withdraw
-    @Transactional
     public AccountInfo Withdraw(WithdrawRequest request){
 
         //Withdraw Log
         logger.info("Withdraw Request from Account No {} for Amount {}  " ,request.getAccountNo(),request.getAmount());
 
-        //Finding if Account Exists and getting it
-        BankAccount bankAccount = accountRepository.findByAccountNo(request.getAccountNo())
-                .orElseThrow(()-> new RuntimeException("User Account not Found"));
-
         if(request.getAmount() <=0){
             throw new IllegalArgumentException("Amount must be Greater than 0");
         }
-        if(bankAccount.getBalance() < request.getAmount()){
-            throw new InsufficientBalanceException("Insufficient Balance for Withdraw");
-        }
 
-        bankAccount.setBalance(bankAccount.getBalance() - request.getAmount());
-        accountRepository.save(bankAccount);
+        if(concurrencyMode == ConcurrencyMode.SEQUENCED){
+            return sequencedWithdraw(request);
+        }
+        return withAccountLocks(() -> transactionTemplate.execute(status -> databaseWithdraw(request)), request.getAccountNo());
+    }
 
-        //Saving in Transaction History
-        transactionHistoryRepository.save(new TransactionHistory(
-                null, bankAccount.getAccountNo(), "WITHDRAW",request.getAmount(),
-                "WITHDREW"+request.getAmount(), LocalDateTime.now()
-        ));
+    private AccountInfo databaseWithdraw(WithdrawRequest request){
+
+        LedgerMutationEvent event = LedgerMutationEvent.start(BankingMetrics.WITHDRAW, request.getAccountNo(), null, request.getAmount());
+        TransactionHistory saved;
+        try {
+            //Conditional debit, the balance check happens inside the UPDATE
+            debitOrThrow(request.getAccountNo(), request.getAmount(),
+                    "User Account not Found", "Insufficient Balance for Withdraw");
+            ledgerService.post(LedgerService.withdraw(request.getAccountNo(), request.getAmount()));
+
+            //Saving in Transaction History
+            saved = transactionHistoryRecorder.record(new TransactionHistory(
+                    null, request.getAccountNo(), "WITHDRAW",request.getAmount(),
+                    "WITHDREW"+request.getAmount(), LocalDateTime.now()
+            ));
+        } catch (RuntimeException ex){
+            event.failed(ex);
+            throw ex;
+        } finally {
+            event.finish();
+        }
 
         //Withdraw Log
         logger.info("Successful Withdraw of Amount {} from Account No {}" ,request.getAmount(),request.getAccountNo());
-        //Fetch recent transactions (optional: limit to top 5)
-        var transactions = transactionHistoryRepository
-                .findTop5ByAccountNoOrderByTimeStampDesc(bankAccount.getAccountNo())
-                .stream()
-                .map(tx -> new TransactionInfo(
-                        tx.getTransactionType(),
-                        tx.getAmount(),
-                        tx.getDescription(),
-                        tx.getTimeStamp()
-                ))
-                .toList();
 
-        return new AccountInfo(bankAccount.getAccountNo(),
-                bankAccount.getBalance(),
-                bankAccount.getAccountType(),
-                transactions
-        );
+        AccountInfo info = accountInfo(request.getAccountNo(), saved);
+        bankStatsService.recordWithdraw(request.getAmount(), info.getBalance());
+        return info;
 
     }
 
 
     //Transfer Money For Admin Usage
-    @Transactional
     public String MoneyTransfer(TransferRequest request){
 
 
@@ -134,30 +168,18 @@ public class AccountService {
             throw new InvalidTransactionException("Cannot Transfer to the same Account");
         }
 
-        //Finding if Source Account Exists and getting it
-        BankAccount toAccount = accountRepository.findByAccountNo(request.getToAccountNo())
-                .orElseThrow(()-> new AccountNotFoundException("Account not found with Account Number :" + request.getToAccountNo()));
-
-        //Finding if Destination Account Exists and getting it
-        BankAccount fromAccount = accountRepository.findByAccountNo(request.getFromAccountNo())
-                .orElseThrow(()->  new AccountNotFoundException("Account not found with Account Number :" + request.getFromAccountNo()));
-
-        fromAccount.setBalance(fromAccount.getBalance() - request.getAmount());
-        toAccount.setBalance(toAccount.getBalance() + request.getAmount());
-
-        accountRepository.save(fromAccount);
-        accountRepository.save(toAccount);
-
-
-        transactionHistoryRepository.save(new TransactionHistory(
-                null, fromAccount.getAccountNo(), " TRANSFER ",request.getAmount(),
-                " TRANSFERRED TO "+request.getToAccountNo(), LocalDateTime.now()
-        ));
-
-        transactionHistoryRepository.save(new TransactionHistory(
-                null, toAccount.getAccountNo(), " TRANSFER ",request.getAmount(),
-                " RECEIVED FROM "+request.getFromAccountNo(), LocalDateTime.now()
-        ));
+        if(concurrencyMode == ConcurrencyMode.SEQUENCED){
+            sequencedTransfer(BankingMetrics.ADMIN_TRANSFER, request.getFromAccountNo(), request.getToAccountNo(), request.getAmount(),
+                    "Account not found with Account Number :" + request.getFromAccountNo(),
+                    "Account not found with Account Number :" + request.getToAccountNo(),
+                    "Insufficient Balance for Transfer");
+        } else {
+            withTransferLocks(request.getFromAccountNo(), request.getToAccountNo(),
+                    () -> transactionTemplate.execute(status -> {
+                        databaseMoneyTransfer(request);
+                        return null;
+                    }));
+        }
 
         logger.info(" Successful Admin Money Transfer from Account No{} to Account No {}" ,request.getFromAccountNo(),request.getToAccountNo());
 
@@ -165,75 +187,331 @@ public class AccountService {
 
     }
 
+    private void databaseMoneyTransfer(TransferRequest request){
+
+        LedgerMutationEvent event = LedgerMutationEvent.start(BankingMetrics.ADMIN_TRANSFER,
+                request.getFromAccountNo(), request.getToAccountNo(), request.getAmount());
+        try {
+            transfer(request.getFromAccountNo(), request.getToAccountNo(), request.getAmount(),
+                    "Account not found with Account Number :" + request.getFromAccountNo(),
+                    "Account not found with Account Number :" + request.getToAccountNo(),
+                    "Insufficient Balance for Transfer");
+            ledgerService.post(LedgerService.transfer(request.getFromAccountNo(), request.getToAccountNo(), request.getAmount()));
+
+            transactionHistoryRecorder.recordAll(List.of(
+                    new TransactionHistory(null, request.getFromAccountNo(), " TRANSFER ",request.getAmount(),
+                            " TRANSFERRED TO "+request.getToAccountNo(), LocalDateTime.now()),
+                    new TransactionHistory(null, request.getToAccountNo(), " TRANSFER ",request.getAmount(),
+                            " RECEIVED FROM "+request.getFromAccountNo(), LocalDateTime.now())
+            ));
+        } catch (RuntimeException ex){
+            event.failed(ex);
+            throw ex;
+        } finally {
+            event.finish();
+        }
+    }
+
     //Transfer Money for User usage
-    @Transactional
     public String userMoneyTransfer(UserMoneyTransferRequest request){
 
-        String email = SecurityContextHolder.getContext().getAuthentication().getName();
-        BankUser user = userRepository.findByEmail(email)
-                .orElseThrow(()->new AccountNotFoundException("User Account Not Found"));
+        JwtPrincipal principal = (JwtPrincipal) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
 
         //One Account Per User
-        BankAccount sourceAccount = accountRepository.findByBankUser(user)
+        Long sourceAccountNo = accountRepository.findAccountNosByUserId(principal.userId())
                 .stream().findFirst().orElseThrow(()-> new AccountNotFoundException("User Account Not Found"));
 
-        BankAccount toAccount = accountRepository.findByAccountNo(request.getToAccountNo())
-                .orElseThrow(()-> new AccountNotFoundException("Target User Account Not found"));
-
         //Money transfer Log for User
-        logger.info("Money Transfer Request from Account No{} to Account No {}" ,sourceAccount.getAccountNo(),request.getToAccountNo());
+        logger.info("Money Transfer Request from Account No{} to Account No {}" ,sourceAccountNo,request.getToAccountNo());
 
-        if(sourceAccount.getBalance() < request.getAmount()){
-            throw new InsufficientBalanceException("Insufficient Balance");
-        }
         if(request.getAmount() <= 0) {
             throw new IllegalArgumentException("Transfer amount must be greater than zero");
         }
 
-        sourceAccount.setBalance(sourceAccount.getBalance() - request.getAmount());
-        toAccount.setBalance(toAccount.getBalance() + request.getAmount());
-
-        accountRepository.save(sourceAccount);
-        accountRepository.save(toAccount);
+        if(concurrencyMode == ConcurrencyMode.SEQUENCED){
+            sequencedTransfer(BankingMetrics.USER_TRANSFER, sourceAccountNo, request.getToAccountNo(), request.getAmount(),
+                    "User Account Not Found", "Target User Account Not found", "Insufficient Balance");
+        } else {
+            withTransferLocks(sourceAccountNo, request.getToAccountNo(),
+                    () -> transactionTemplate.execute(status -> {
+                        databaseUserMoneyTransfer(sourceAccountNo, request);
+                        return null;
+                    }));
+        }
 
         //Money transfer Log for User
-        logger.info("Successful Money Transfer from Account No{} to Account No {}" ,sourceAccount.getAccountNo(),request.getToAccountNo());
+        logger.info("Successful Money Transfer from Account No{} to Account No {}" ,sourceAccountNo,request.getToAccountNo());
 
-        return "Successfully Transferred " + request.getAmount() +" From "+sourceAccount.getAccountNo()+" To " + request.getToAccountNo();
+        return "Successfully Transferred " + request.getAmount() +" From "+sourceAccountNo+" To " + request.getToAccountNo();
 
     }
 
-    public List<AccountInfo> getAccountsForUser(Long userId) {
-        BankUser user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+    private void databaseUserMoneyTransfer(Long sourceAccountNo, UserMoneyTransferRequest request){
+
+        LedgerMutationEvent event = LedgerMutationEvent.start(BankingMetrics.USER_TRANSFER,
+                sourceAccountNo, request.getToAccountNo(), request.getAmount());
+        try {
+            transfer(sourceAccountNo, request.getToAccountNo(), request.getAmount(),
+                    "User Account Not Found", "Target User Account Not found", "Insufficient Balance");
+            ledgerService.post(LedgerService.transfer(sourceAccountNo, request.getToAccountNo(), request.getAmount()));
+
+            //Same history rows as an admin transfer, so both sides see it in their statements
+            transactionHistoryRecorder.recordAll(List.of(
+                    new TransactionHistory(null, sourceAccountNo, " TRANSFER ",request.getAmount(),
+                            " TRANSFERRED TO "+request.getToAccountNo(), LocalDateTime.now()),
+                    new TransactionHistory(null, request.getToAccountNo(), " TRANSFER ",request.getAmount(),
+                            " RECEIVED FROM "+sourceAccountNo, LocalDateTime.now())
+            ));
+        } catch (RuntimeException ex){
+            event.failed(ex);
+            throw ex;
+        } finally {
+            event.finish();
+        }
+    }
+
+    //SEQUENCED: the engine checks and applies the deposit in memory and journals it, MySQL catches up from the journal
+    private AccountInfo sequencedDeposit(DepositRequest request){
+        LedgerMutationEvent event = LedgerMutationEvent.start(BankingMetrics.DEPOSIT, null, request.getAccountNo(), request.getAmount());
+        SequencedLedgerEngine.Outcome outcome;
+        try {
+            outcome = sequencedLedgerEngine.deposit(request.getAccountNo(), request.getAmount());
+            requireApplied(outcome, "Account Not Found", "Account Not Found", null);
+        } catch (RuntimeException ex){
+            event.failed(ex);
+            throw ex;
+        } finally {
+            event.finish();
+        }
+
+        logger.info("Deposit Successfully Done By the admin on Account : {}" ,request.getAccountNo());
+
+        AccountInfo info = sequencedAccountInfo(request.getAccountNo(), outcome);
+        bankStatsService.recordDeposit(request.getAmount(), info.getBalance());
+        return info;
+    }
 
-        List<BankAccount> accounts = accountRepository.findByBankUser(user);
+    private AccountInfo sequencedWithdraw(WithdrawRequest request){
+        LedgerMutationEvent event = LedgerMutationEvent.start(BankingMetrics.WITHDRAW, request.getAccountNo(), null, request.getAmount());
+        SequencedLedgerEngine.Outcome outcome;
+        try {
+            outcome = sequencedLedgerEngine.withdraw(request.getAccountNo(), request.getAmount());
+            requireApplied(outcome, "User Account not Found", "User Account not Found", "Insufficient Balance for Withdraw");
+        } catch (RuntimeException ex){
+            event.failed(ex);
+            throw ex;
+        } finally {
+            event.finish();
+        }
+
+        logger.info("Successful Withdraw of Amount {} from Account No {}" ,request.getAmount(),request.getAccountNo());
 
-        return accounts.stream().map(account -> {
-            // Fetch last 5 transactions for each account
-            List<TransactionInfo> txns = transactionHistoryRepository
-                    .findTop5ByAccountNoOrderByTimeStampDesc(account.getAccountNo())
-                    .stream()
-                    .map(tx -> new TransactionInfo(
-                            tx.getTransactionType(),
-                            tx.getAmount(),
-                            tx.getDescription(),
-                            tx.getTimeStamp()
-                    ))
-                    .collect(Collectors.toList());
+        AccountInfo info = sequencedAccountInfo(request.getAccountNo(), outcome);
+        bankStatsService.recordWithdraw(request.getAmount(), info.getBalance());
+        return info;
+    }
 
-            return new AccountInfo(
-                    account.getAccountNo(),
-                    account.getBalance(),
-                    account.getAccountType(),
-                    txns
-            );
-        }).collect(Collectors.toList());
+    private void sequencedTransfer(String operation, Long fromAccountNo, Long toAccountNo, Long amount,
+                                   String fromNotFoundMessage, String toNotFoundMessage, String insufficientMessage){
+        LedgerMutationEvent event = LedgerMutationEvent.start(operation, fromAccountNo, toAccountNo, amount);
+        try {
+            SequencedLedgerEngine.Outcome outcome = sequencedLedgerEngine.transfer(fromAccountNo, toAccountNo, amount);
+            requireApplied(outcome, fromNotFoundMessage, toNotFoundMessage, insufficientMessage);
+            //The projection inserts the rows later, the cache shows them meanwhile
+            SequencedLedgerEngine.historyRows(outcome.command()).forEach(recentTransactionsCache::appendAfterCommit);
+        } catch (RuntimeException ex){
+            event.failed(ex);
+            throw ex;
+        } finally {
+            event.finish();
+        }
     }
 
+    private static void requireApplied(SequencedLedgerEngine.Outcome outcome, String fromNotFoundMessage,
+                                       String toNotFoundMessage, String insufficientMessage){
+        switch (outcome.status()){
+            case FROM_NOT_FOUND -> throw new AccountNotFoundException(fromNotFoundMessage);
+            case TO_NOT_FOUND -> throw new AccountNotFoundException(toNotFoundMessage);
+            case INSUFFICIENT -> throw new InsufficientBalanceException(insufficientMessage);
+            default -> {
+            }
+        }
+    }
+
+    //Balance from the engine; the history row is not in MySQL yet, the cache shows it until the projection has inserted it
+    private AccountInfo sequencedAccountInfo(Long accountNo, SequencedLedgerEngine.Outcome outcome){
+        List<TransactionHistory> rows = SequencedLedgerEngine.historyRows(outcome.command());
+        AccountInfo info = new AccountInfo(accountNo, outcome.balance(), outcome.accountType(),
+                recentTransactions(accountNo, rows.get(0)));
+        rows.forEach(recentTransactionsCache::appendAfterCommit);
+        return info;
+    }
+
+    //Moves money between two accounts with one conditional UPDATE per side
+    //Rows are touched in account number order so concurrent transfers on other nodes take MySQL row locks in the same order
+    private void transfer(Long fromAccountNo, Long toAccountNo, Long amount,
+                          String fromNotFoundMessage, String toNotFoundMessage, String insufficientMessage){
+        if(fromAccountNo < toAccountNo){
+            debitOrThrow(fromAccountNo, amount, fromNotFoundMessage, insufficientMessage);
+            creditOrThrow(toAccountNo, amount, toNotFoundMessage);
+        } else {
+            creditOrThrow(toAccountNo, amount, toNotFoundMessage);
+            debitOrThrow(fromAccountNo, amount, fromNotFoundMessage, insufficientMessage);
+        }
+    }
 
+    //Stripes are taken before work opens its transaction, a request waiting on a busy account holds no connection
+    //OPTIMISTIC runs lock-free, conflicts are caught by the version check and retried by OptimisticRetry
+    private <T> T withAccountLocks(Supplier<T> work, Long... accountNos){
+        if(concurrencyMode == ConcurrencyMode.OPTIMISTIC){
+            return work.get();
+        }
+        return accountLockManager.callLocked(work, accountNos);
+    }
 
+    //Sharding only spreads the credits, the target of a transfer into a sharded account is not locked
+    //Both stripes are taken in a fixed order inside the lock manager
+    private <T> T withTransferLocks(Long fromAccountNo, Long toAccountNo, Supplier<T> work){
+        if(balanceSlotService.isSharded(toAccountNo)){
+            return withAccountLocks(work, fromAccountNo);
+        }
+        return withAccountLocks(work, fromAccountNo, toAccountNo);
+    }
 
+    private void debitOrThrow(Long accountNo, Long amount, String notFoundMessage, String insufficientMessage){
+        if(concurrencyMode != ConcurrencyMode.ATOMIC){
+            BankAccount account = loadForChange(accountNo, notFoundMessage);
+            //Sharded accounts keep part of their balance in slots, they take the SQL path below
+            if(account.getBalanceSlots() == 0){
+                if(account.getBalance() < amount){
+                    throw new InsufficientBalanceException(insufficientMessage);
+                }
+                account.setBalance(account.getBalance() - amount);
+                //Flushing here so a version conflict surfaces before the postings are written
+                accountRepository.flush();
+                return;
+            }
+        }
+        if(accountRepository.debit(accountNo, amount) == 0){
+            //Only the failure path pays for a second query, to tell a missing account from a short balance
+            int slots = accountRepository.findBalanceSlotsByAccountNo(accountNo)
+                    .orElseThrow(() -> new AccountNotFoundException(notFoundMessage));
+            //A sharded account may still cover it once its slots are swept into the row
+            if(slots > 0 && balanceSlotService.sweepAndDebit(accountNo, amount)){
+                return;
+            }
+            throw new InsufficientBalanceException(insufficientMessage);
+        }
+    }
 
+    private void creditOrThrow(Long accountNo, Long amount, String notFoundMessage){
+        if(balanceSlotService.credit(accountNo, amount)){
+            return;
+        }
+        if(concurrencyMode != ConcurrencyMode.ATOMIC){
+            BankAccount account = loadForChange(accountNo, notFoundMessage);
+            account.setBalance(account.getBalance() + amount);
+            accountRepository.flush();
+            return;
+        }
+        if(accountRepository.credit(accountNo, amount) == 0){
+            throw new AccountNotFoundException(notFoundMessage);
+        }
+    }
+
+    //PESSIMISTIC holds the row lock until commit, OPTIMISTIC reads without one and relies on @Version
+    private BankAccount loadForChange(Long accountNo, String notFoundMessage){
+        Optional<BankAccount> account = concurrencyMode == ConcurrencyMode.PESSIMISTIC
+                ? accountRepository.findByAccountNoForUpdate(accountNo)
+                : accountRepository.findByAccountNo(accountNo);
+        return account.orElseThrow(() -> new AccountNotFoundException(notFoundMessage));
+    }
+
+    //Current balance and recent transactions, read after the update so it includes our own change
+    private AccountInfo accountInfo(Long accountNo, TransactionHistory justWritten){
+        BankAccount bankAccount = accountRepository.findByAccountNo(accountNo)
+                .orElseThrow(()-> new AccountNotFoundException("Account Not Found"));
+
+        //Row and slots are read in the same transaction snapshot, so the sum is an exact balance
+        return new AccountInfo(bankAccount.getAccountNo(),
+                balanceSlotService.totalBalance(bankAccount),
+                bankAccount.getAccountType(),
+                recentTransactions(accountNo, justWritten));
+    }
+
+    //Latest transactions with the row just written on top
+    private List<TransactionInfo> recentTransactions(Long accountNo, TransactionHistory justWritten){
+        List<TransactionInfo> transactions;
+        List<TransactionInfo> cached = recentTransactionsCache.get(accountNo);
+        if(cached != null){
+            //Cache holds committed rows only, our own row goes on top
+            transactions = new ArrayList<>(RecentTransactionsCache.PER_ACCOUNT);
+            transactions.add(RecentTransactionsCache.toInfo(justWritten));
+            transactions.addAll(cached.subList(0, Math.min(cached.size(), RecentTransactionsCache.PER_ACCOUNT - 1)));
+        } else {
+            long stamp = recentTransactionsCache.stamp();
+            List<TransactionHistory> rows = transactionHistoryRepository.findTop5ByAccountNoOrderByTimeStampDesc(accountNo);
+            //This query sees our uncommitted row, it is kept out of the cache and appended after commit instead
+            recentTransactionsCache.fill(accountNo, rows.stream()
+                    .filter(row -> !row.getTransactionID().equals(justWritten.getTransactionID()))
+                    .toList(), stamp);
+            if(justWritten.getTransactionID() == null){
+                //Write-behind: our row is still on its way through the journal, not in the table yet
+                transactions = new ArrayList<>(RecentTransactionsCache.PER_ACCOUNT);
+                transactions.add(RecentTransactionsCache.toInfo(justWritten));
+                rows.stream().limit(RecentTransactionsCache.PER_ACCOUNT - 1)
+                        .map(RecentTransactionsCache::toInfo).forEach(transactions::add);
+            } else {
+                transactions = rows.stream().map(RecentTransactionsCache::toInfo).toList();
+            }
+        }
+        return transactions;
+    }
+
+    //One transaction so account rows and slot sums come from the same snapshot
+    @Transactional
+    public List<AccountInfo> getAccountsForUser(Long userId) {
+        List<BankAccount> accounts = accountRepository.findByBankUserUserId(userId);
+        if(accounts.isEmpty()){
+            return List.of();
+        }
+
+        Map<Long, List<TransactionInfo>> recent = new HashMap<>();
+        Map<Long, List<TransactionHistory>> missing = new HashMap<>();
+        for(BankAccount account : accounts){
+            List<TransactionInfo> cached = recentTransactionsCache.get(account.getAccountNo());
+            if(cached != null){
+                recent.put(account.getAccountNo(), cached);
+            } else {
+                missing.put(account.getAccountNo(), new ArrayList<>());
+            }
+        }
+
+        //Last 5 transactions of every uncached account in a single query instead of one query per account
+        if(!missing.isEmpty()){
+            long stamp = recentTransactionsCache.stamp();
+            transactionHistoryRepository.findLatestForAccounts(missing.keySet(), RecentTransactionsCache.PER_ACCOUNT)
+                    .forEach(tx -> missing.get(tx.getAccountNo()).add(tx));
+            missing.forEach((accountNo, rows) -> {
+                recentTransactionsCache.fill(accountNo, rows, stamp);
+                recent.put(accountNo, rows.stream().map(RecentTransactionsCache::toInfo).toList());
+            });
+        }
+
+        //Slot sums of the sharded accounts in one query
+        Map<Long, Long> slotTotals = balanceSlotService.slotTotals(accounts.stream()
+                .filter(account -> account.getBalanceSlots() > 0)
+                .map(BankAccount::getAccountNo)
+                .toList());
+
+        return accounts.stream().map(account -> new AccountInfo(
+                account.getAccountNo(),
+                concurrencyMode == ConcurrencyMode.SEQUENCED
+                        ? sequencedLedgerEngine.balance(account.getAccountNo()).orElse(account.getBalance())
+                        : account.getBalance() + slotTotals.getOrDefault(account.getAccountNo(), 0L),
+                account.getAccountType(),
+                recent.get(account.getAccountNo())
+        )).collect(Collectors.toList());
+    }
 
 }
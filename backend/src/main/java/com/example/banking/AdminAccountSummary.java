@@ -0,0 +1,18 @@
+package com.example.banking;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//Admin account listing row with its owner, read in one joined query
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AdminAccountSummary {
+    private Long accountNo;
+    private String accountType;
+    private Long balance;
+    private Long userId;
+    private String userName;
+    private String email;
+}
@@ -2,25 +2,74 @@ package com.example.banking;
 
 
 import jakarta.validation.Valid;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/admin")
 public class AdminController {
 
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 200;
+    //Sortable columns, anything else is rejected before it reaches the query
+    private static final Set<String> USER_SORTS = Set.of("userId", "name", "email", "role");
+    private static final Set<String> ACCOUNT_SORTS = Set.of("accountNo", "balance", "accountType");
+
     private final UserRepository userRepository;
     private final AccountService accountService;
     private final AccountRepository accountRepository;
+    private final AccountLockManager accountLockManager;
+    private final BatchTransferService batchTransferService;
+    private final TokenRevocationService tokenRevocationService;
+    private final PasswordHashingService passwordHashingService;
+    private final BankingMetrics bankingMetrics;
+    private final BankStatsService bankStatsService;
+    private final LedgerService ledgerService;
+    private final IdempotencyService idempotencyService;
+    private final OptimisticRetry optimisticRetry;
+    private final BalanceSlotService balanceSlotService;
+    private final SequencedLedgerEngine sequencedLedgerEngine;
+    private final AccountNumberAllocator accountNumberAllocator;
+    private final InterestAccrualService interestAccrualService;
 
-    public AdminController(UserRepository userRepository, AccountService accountService, AccountRepository accountRepository){
+    public AdminController(UserRepository userRepository, AccountService accountService, AccountRepository accountRepository,
+                           AccountLockManager accountLockManager, BatchTransferService batchTransferService,
+                           TokenRevocationService tokenRevocationService, PasswordHashingService passwordHashingService,
+                           BankingMetrics bankingMetrics, BankStatsService bankStatsService,
+                           LedgerService ledgerService, IdempotencyService idempotencyService,
+                           OptimisticRetry optimisticRetry, BalanceSlotService balanceSlotService,
+                           SequencedLedgerEngine sequencedLedgerEngine, AccountNumberAllocator accountNumberAllocator,
+                           InterestAccrualService interestAccrualService){
         this.userRepository=userRepository;
         this.accountService=accountService;
         this.accountRepository=accountRepository;
+        this.accountLockManager=accountLockManager;
+        this.batchTransferService=batchTransferService;
+        this.tokenRevocationService=tokenRevocationService;
+        this.passwordHashingService=passwordHashingService;
+        this.bankingMetrics=bankingMetrics;
+        this.bankStatsService=bankStatsService;
+        this.ledgerService=ledgerService;
+        this.idempotencyService=idempotencyService;
+        this.optimisticRetry=optimisticRetry;
+        this.balanceSlotService=balanceSlotService;
+        this.sequencedLedgerEngine=sequencedLedgerEngine;
+        this.accountNumberAllocator=accountNumberAllocator;
+        this.interestAccrualService=interestAccrualService;
     }
 
     //Getting Single user
@@ -32,26 +81,37 @@ public class AdminController {
         return ResponseEntity.ok(user);
     }
 
-    //Admin get all accounts
+    //Admin accounts listing, one sorted page at a time
     @GetMapping("/accounts")
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<List<AccountInfo>> getAllAccounts() {
-        var accounts = accountRepository.findAll().stream().map(acc -> new AccountInfo(
-                acc.getAccountNo(),
-                acc.getBalance(),
-                acc.getAccountType(),
-                List.of()
-        )).toList();
-        return ResponseEntity.ok(accounts);
+    public ResponseEntity<PageResponse<AdminAccountSummary>> getAllAccounts(
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int size,
+            @RequestParam(defaultValue = "accountNo") String sort,
+            @RequestParam(defaultValue = "asc") String direction,
+            @RequestParam(required = false) String accountType,
+            @RequestParam(required = false) String search) {
+        Pageable pageable = pageRequest(page, size, sort, direction, ACCOUNT_SORTS);
+        String typeFilter = accountType == null || accountType.isBlank() ? null : accountType.trim().toUpperCase();
+        String pattern = search == null || search.isBlank() ? null : "%" + search.trim().toLowerCase() + "%";
+        Long accountNo = pattern != null && search.trim().matches("\\d{1,18}") ? Long.valueOf(search.trim()) : null;
+        return ResponseEntity.ok(PageResponse.of(accountRepository.findSummaries(typeFilter, pattern, accountNo, pageable)));
     }
 
 
 
-    //Getting all Users
+    //Admin users listing, one sorted page at a time with account counts and balance totals
     @GetMapping("/users")
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<List<BankUser>> getAllUsers(){
-        return ResponseEntity.ok(userRepository.findAll());
+    public ResponseEntity<PageResponse<AdminUserSummary>> getAllUsers(
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int size,
+            @RequestParam(defaultValue = "userId") String sort,
+            @RequestParam(defaultValue = "asc") String direction,
+            @RequestParam(required = false) String search){
+        Pageable pageable = pageRequest(page, size, sort, direction, USER_SORTS);
+        String pattern = search == null || search.isBlank() ? null : "%" + search.trim().toLowerCase() + "%";
+        return ResponseEntity.ok(PageResponse.of(userRepository.findSummaries(pattern, pageable)));
     }
 
 
@@ -61,12 +121,14 @@ public class AdminController {
     public ResponseEntity<BankUser> updateUser(@PathVariable Long id ,@RequestBody BankUser updatedUser){
         BankUser user =userRepository.findById(id)
                 .orElseThrow(()-> new RuntimeException("User Not found"));
+        boolean emailChanged = !String.valueOf(user.getEmail()).equalsIgnoreCase(updatedUser.getEmail());
         user.setName(updatedUser.getName());
         user.setEmail(updatedUser.getEmail());
         user.setAddress(updatedUser.getAddress());
         user.setMobileNo(updatedUser.getMobileNo());
 
         userRepository.save(user);
+        if(emailChanged) tokenRevocationService.revokeAllForUser(user.getUserId());
         return ResponseEntity.ok(user);
     }
 
@@ -76,6 +138,7 @@ public class AdminController {
     public ResponseEntity<?> patchUser(@PathVariable Long id ,@RequestBody BankUser updatedUser){
         BankUser user =userRepository.findById(id)
                 .orElseThrow(()-> new RuntimeException("User Not found"));
+        String originalEmail = String.valueOf(user.getEmail());
         if(updatedUser.getName()!=null && !updatedUser.getName().isBlank()) user.setName(updatedUser.getName());
         if(updatedUser.getEmail()!=null && !updatedUser.getEmail().isBlank()) {
             String newEmail = updatedUser.getEmail();
@@ -92,9 +155,18 @@ public class AdminController {
             user.setAddress(addr);
         }
         if(updatedUser.getMobileNo()!=null && !updatedUser.getMobileNo().isBlank()) user.setMobileNo(updatedUser.getMobileNo());
-        if(updatedUser.getRole()!=null && !updatedUser.getRole().isBlank()) user.setRole(updatedUser.getRole());
+        //Role and email are baked into issued tokens, changing either revokes them
+        boolean revokeTokens = false;
+        String originalRole = user.getRole();
+        if(updatedUser.getRole()!=null && !updatedUser.getRole().isBlank() && !updatedUser.getRole().equals(user.getRole())) {
+            user.setRole(updatedUser.getRole());
+            revokeTokens = true;
+        }
+        if(!originalEmail.equalsIgnoreCase(user.getEmail())) revokeTokens = true;
         try {
             userRepository.save(user);
+            if(revokeTokens) tokenRevocationService.revokeAllForUser(user.getUserId());
+            if(!Objects.equals(originalRole, user.getRole())) bankStatsService.recordRoleChanged(originalRole, user.getRole());
             return ResponseEntity.ok(user);
         } catch (org.springframework.dao.DataIntegrityViolationException e) {
             return ResponseEntity.badRequest().body("Validation error: " + (e.getMostSpecificCause()!=null? e.getMostSpecificCause().getMessage(): e.getMessage()));
@@ -109,7 +181,16 @@ public class AdminController {
     public ResponseEntity<Void> deleteUser(@PathVariable Long id){
         BankUser user =userRepository.findById(id)
                 .orElseThrow(()-> new RuntimeException("User Not found"));
+        //Accounts go with the user (cascade), their balances leave the bank-wide totals
+        List<BankAccount> accounts = accountRepository.findByBankUserUserId(id);
+        Map<Long, Long> balances = new HashMap<>();
+        accounts.forEach(account -> balances.put(account.getAccountNo(), balanceSlotService.totalBalance(account)));
         userRepository.delete(user);
+        balanceSlotService.deleteSlots(balances.keySet());
+        balances.keySet().forEach(sequencedLedgerEngine::closeAccount);
+        tokenRevocationService.revokeAllForUser(id);
+        bankStatsService.recordUserDeleted(user.getRole());
+        accounts.forEach(account -> bankStatsService.recordAccountClosed(account.getAccountType(), balances.get(account.getAccountNo())));
         return ResponseEntity.noContent().build();
     }
 
@@ -117,19 +198,41 @@ public class AdminController {
     //Deposit service
     @PreAuthorize("hasRole('ADMIN')")
     @PostMapping("/deposit")
-    public ResponseEntity<AccountInfo> adminDeposit(@Valid @RequestBody DepositRequest request){
-        AccountInfo updated = accountService.Deposit(request);
-        return ResponseEntity.ok(updated);
+    public ResponseEntity<AccountInfo> adminDeposit(@Valid @RequestBody DepositRequest request,
+                                                    @AuthenticationPrincipal JwtPrincipal principal,
+                                                    @RequestHeader(value = IdempotencyService.KEY_HEADER, required = false) String idempotencyKey){
+        IdempotencyService.Result<AccountInfo> updated = bankingMetrics.record(BankingMetrics.DEPOSIT,
+                () -> optimisticRetry.run(BankingMetrics.DEPOSIT,
+                        () -> idempotencyService.execute(BankingMetrics.DEPOSIT, principal.userId(), idempotencyKey, request,
+                                AccountInfo.class, () -> accountService.Deposit(request))));
+        return IdempotencyService.respond(HttpStatus.OK, updated);
     }
 
     @PreAuthorize("hasRole('ADMIN')")
     @PostMapping("/transfer")
-    public ResponseEntity<String> MoneyTransfer(@Valid @RequestBody TransferRequest request){
-        String message = accountService.MoneyTransfer(request);
-        return ResponseEntity.status(HttpStatus.CREATED).body(message);
+    public ResponseEntity<String> MoneyTransfer(@Valid @RequestBody TransferRequest request,
+                                                @AuthenticationPrincipal JwtPrincipal principal,
+                                                @RequestHeader(value = IdempotencyService.KEY_HEADER, required = false) String idempotencyKey){
+        IdempotencyService.Result<String> message = bankingMetrics.record(BankingMetrics.ADMIN_TRANSFER,
+                () -> optimisticRetry.run(BankingMetrics.ADMIN_TRANSFER,
+                        () -> idempotencyService.execute(BankingMetrics.ADMIN_TRANSFER, principal.userId(), idempotencyKey, request,
+                                String.class, () -> accountService.MoneyTransfer(request))));
+        return IdempotencyService.respond(HttpStatus.CREATED, message);
 
     }
 
+    // Bulk transfers, each item reports its own success or failure
+    @PreAuthorize("hasRole('ADMIN')")
+    @PostMapping("/transfers/batch")
+    public ResponseEntity<BatchTransferResponse> batchTransfer(@Valid @RequestBody BatchTransferRequest request,
+                                                               @AuthenticationPrincipal JwtPrincipal principal,
+                                                               @RequestHeader(value = IdempotencyService.KEY_HEADER, required = false) String idempotencyKey){
+        IdempotencyService.Result<BatchTransferResponse> response = bankingMetrics.record(BankingMetrics.BATCH_TRANSFER,
+                () -> idempotencyService.execute(BankingMetrics.BATCH_TRANSFER, principal.userId(), idempotencyKey, request,
+                        BatchTransferResponse.class, () -> batchTransferService.transfer(request.getTransfers())));
+        return IdempotencyService.respond(HttpStatus.OK, response);
+    }
+
     // Get accounts for a specific user
     @GetMapping("/users/{id}/accounts")
     @PreAuthorize("hasRole('ADMIN')")
@@ -137,7 +240,7 @@ public class AdminController {
         BankUser user = userRepository.findById(id).orElseThrow(() -> new RuntimeException("User not found"));
         var accounts = accountRepository.findByBankUser(user).stream().map(acc -> new AccountInfo(
                 acc.getAccountNo(),
-                acc.getBalance(),
+                balanceSlotService.totalBalance(acc),
                 acc.getAccountType(),
                 List.of()
         )).toList();
@@ -150,11 +253,13 @@ public class AdminController {
     public ResponseEntity<AccountInfo> updateAccount(@PathVariable Long accountNo, @RequestBody BankAccount updated) {
         BankAccount acc = accountRepository.findByAccountNo(accountNo)
                 .orElseThrow(() -> new RuntimeException("Account not found"));
+        String originalType = acc.getAccountType();
         if (updated.getAccountType() != null) {
             acc.setAccountType(updated.getAccountType());
         }
         accountRepository.save(acc);
-        return ResponseEntity.ok(new AccountInfo(acc.getAccountNo(), acc.getBalance(), acc.getAccountType(), List.of()));
+        if (!Objects.equals(originalType, acc.getAccountType())) bankStatsService.recordAccountTypeChanged(originalType, acc.getAccountType());
+        return ResponseEntity.ok(new AccountInfo(acc.getAccountNo(), balanceSlotService.totalBalance(acc), acc.getAccountType(), List.of()));
     }
 
     // Delete account by account number
@@ -163,7 +268,124 @@ public class AdminController {
     public ResponseEntity<Void> deleteAccount(@PathVariable Long accountNo) {
         BankAccount acc = accountRepository.findByAccountNo(accountNo)
                 .orElseThrow(() -> new RuntimeException("Account not found"));
+        long balance = balanceSlotService.totalBalance(acc);
         accountRepository.delete(acc);
+        balanceSlotService.deleteSlots(List.of(accountNo));
+        sequencedLedgerEngine.closeAccount(accountNo);
+        bankStatsService.recordAccountClosed(acc.getAccountType(), balance);
         return ResponseEntity.noContent().build();
     }
+
+    // Splits a hot account's balance over N slots so concurrent credits stop queueing on one row, 0 merges them back
+    @PutMapping("/accounts/{accountNo}/balance-slots")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> reshardAccount(@PathVariable Long accountNo, @RequestParam int slots) {
+        return ResponseEntity.ok(balanceSlotService.reshard(accountNo, slots));
+    }
+
+    // Sharded accounts with their slot counts as known to this node
+    @GetMapping("/accounts/balance-slots")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<Long, Integer>> getShardedAccounts() {
+        return ResponseEntity.ok(balanceSlotService.shardedAccounts());
+    }
+
+    // Bank-wide totals, account counts per type and the balance histogram, served from memory
+    @GetMapping("/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getBankStats() {
+        return ResponseEntity.ok(bankStatsService.stats());
+    }
+
+    // Latest ledger postings of an account, newest first
+    @GetMapping("/ledger/accounts/{accountNo}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<List<LedgerPosting>> getLedgerPostings(@PathVariable Long accountNo) {
+        return ResponseEntity.ok(ledgerService.recentPostings(accountNo));
+    }
+
+    // Recomputes the account's balance from its ledger postings
+    @PostMapping("/ledger/accounts/{accountNo}/rebuild")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> rebuildBalance(@PathVariable Long accountNo) {
+        return ResponseEntity.ok(ledgerService.rebuildBalance(accountNo));
+    }
+
+    // Balances that drifted from the ledger and entries that do not sum to zero
+    @GetMapping("/ledger/verify")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> verifyLedger() {
+        return ResponseEntity.ok(ledgerService.verify());
+    }
+
+    // Concurrency mode in use with its optimistic conflict rate, for comparing modes under real traffic
+    @GetMapping("/concurrency/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getConcurrencyStats() {
+        return ResponseEntity.ok(optimisticRetry.stats());
+    }
+
+    // Sequenced engine state: accounts held, ring backlog, journal, projection and snapshot positions
+    @GetMapping("/engine/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getEngineStats() {
+        return ResponseEntity.ok(sequencedLedgerEngine.stats());
+    }
+
+    // Account number allocation: numbers handed out, blocks reserved, clashes with pre-allocator numbers
+    @GetMapping("/account-numbers/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getAccountNumberStats() {
+        return ResponseEntity.ok(accountNumberAllocator.stats());
+    }
+
+    // Start (or finish) the interest accrual of a period, last month by default; progress is on /interest/stats
+    @PostMapping("/interest/accruals")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> startInterestAccrual(@RequestParam(required = false) String period) {
+        YearMonth month;
+        try {
+            month = period == null ? YearMonth.now().minusMonths(1) : YearMonth.parse(period);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Period must look like 2026-09");
+        }
+        interestAccrualService.start(month);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(interestAccrualService.stats());
+    }
+
+    // Interest accrual progress and throughput of the current or last run
+    @GetMapping("/interest/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getInterestStats() {
+        return ResponseEntity.ok(interestAccrualService.stats());
+    }
+
+    // Account lock contention and wait-time counters
+    @GetMapping("/locks/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getLockStats() {
+        return ResponseEntity.ok(accountLockManager.stats());
+    }
+
+    // BCrypt pool usage and hash/verify time histograms
+    @GetMapping("/password-hashing/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getPasswordHashingStats() {
+        return ResponseEntity.ok(passwordHashingService.stats());
+    }
+
+    private static Pageable pageRequest(int page, int size, String sort, String direction, Set<String> allowedSorts){
+        if(page < 0){
+            throw new IllegalArgumentException("Page must not be negative");
+        }
+        if(size <= 0 || size > MAX_PAGE_SIZE){
+            throw new IllegalArgumentException("Size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        if(!allowedSorts.contains(sort)){
+            throw new IllegalArgumentException("Sort must be one of " + allowedSorts);
+        }
+        Sort.Direction sortDirection = Sort.Direction.fromOptionalString(direction)
+                .orElseThrow(() -> new IllegalArgumentException("Direction must be asc or desc"));
+        return PageRequest.of(page, size, Sort.by(sortDirection, sort));
+    }
 }
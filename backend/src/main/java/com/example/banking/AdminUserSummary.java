@@ -0,0 +1,21 @@
+package com.example.banking;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//Admin user listing row, no password hash and no lazy accounts collection
+//Account count and balance total come from the same grouped query as the user columns
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AdminUserSummary {
+    private Long userId;
+    private String name;
+    private String email;
+    private String mobileNo;
+    private String address;
+    private String role;
+    private Long accountCount;
+    private Long totalBalance;
+}
@@ -0,0 +1,25 @@
+package com.example.banking;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+//Runs in-memory bookkeeping only once the surrounding transaction has committed, nothing happens on rollback
+//Outside a transaction the action runs right away, the write it follows is already committed
+final class AfterCommit {
+
+    private AfterCommit(){
+    }
+
+    static void run(Runnable action){
+        if(TransactionSynchronizationManager.isSynchronizationActive()){
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
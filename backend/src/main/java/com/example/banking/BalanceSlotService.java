@@ -0,0 +1,192 @@
+package com.example.banking;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.transaction.Transactional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+//Sub-balance sharding for hot accounts that receive many concurrent credits (merchants, payroll)
+//A sharded account's balance is its bank_account row plus N account_balance_slots rows
+//Credits add to one random slot, so N credits run in parallel instead of queueing on the account row
+//Debits take the account row first and only sweep the slots into it when the row alone is short
+//Lock order is always account row, then slots ascending; credits lock a single slot and never the row
+@Service
+public class BalanceSlotService {
+
+    private static final String CREDIT_SQL =
+            "update account_balance_slots set balance = balance + ? where account_no = ? and slot = ?";
+    private static final String SLOT_TOTALS_SQL =
+            "select account_no, coalesce(sum(balance), 0) from account_balance_slots where account_no in (%s) group by account_no";
+    public static final int MAX_SLOTS = 64;
+
+    private final AccountRepository accountRepository;
+    private final AccountLockManager accountLockManager;
+    private final JdbcTemplate jdbcTemplate;
+
+    //Account number -> slot count, only used to route credits; reads and debits go by the account row,
+    //so a node that has not synced yet just credits the row and stays correct
+    private final Map<Long, Integer> shardedAccounts = new ConcurrentHashMap<>();
+    private static final Logger logger = LoggerFactory.getLogger(BalanceSlotService.class);
+
+    public BalanceSlotService(AccountRepository accountRepository, AccountLockManager accountLockManager,
+                              JdbcTemplate jdbcTemplate){
+        this.accountRepository=accountRepository;
+        this.accountLockManager=accountLockManager;
+        this.jdbcTemplate=jdbcTemplate;
+    }
+
+    //Picks up accounts sharded or unsharded on other nodes
+    @PostConstruct
+    @Scheduled(initialDelayString = "${banking.balance-slots.sync-interval-ms:30000}",
+            fixedDelayString = "${banking.balance-slots.sync-interval-ms:30000}")
+    public void sync(){
+        Map<Long, Integer> current = new HashMap<>();
+        accountRepository.findShardedAccounts().forEach(row -> current.put((Long) row[0], (Integer) row[1]));
+        shardedAccounts.keySet().retainAll(current.keySet());
+        shardedAccounts.putAll(current);
+    }
+
+    public boolean isSharded(Long accountNo){
+        return shardedAccounts.containsKey(accountNo);
+    }
+
+    //False when the account is not known as sharded, the caller then credits the account row
+    public boolean credit(Long accountNo, Long amount){
+        Integer slots = shardedAccounts.get(accountNo);
+        if(slots == null){
+            return false;
+        }
+        int slot = ThreadLocalRandom.current().nextInt(slots);
+        return jdbcTemplate.update(CREDIT_SQL, amount, accountNo, slot) > 0;
+    }
+
+    //Called when the conditional debit of the account row failed; locks the row and the slots,
+    //folds the slots into the row and debits it if the total covers the amount
+    public boolean sweepAndDebit(Long accountNo, Long amount){
+        Long rowBalance = jdbcTemplate.query("select balance from bank_account where account_no = ? for update",
+                rs -> rs.next() ? rs.getLong(1) : null, accountNo);
+        if(rowBalance == null){
+            return false;
+        }
+        long slotBalance = lockedSlotTotal(accountNo);
+        if(rowBalance + slotBalance < amount){
+            return false;
+        }
+        zeroSlots(accountNo);
+        jdbcTemplate.update("update bank_account set balance = balance + ?, version = version + 1 where account_no = ?",
+                slotBalance - amount, accountNo);
+        return true;
+    }
+
+    //Empties the slots of an account whose row the caller already holds FOR UPDATE and returns what they held,
+    //the caller adds it to the row in the same transaction
+    public long takeSlots(Long accountNo){
+        long slotBalance = lockedSlotTotal(accountNo);
+        if(slotBalance != 0){
+            zeroSlots(accountNo);
+        }
+        return slotBalance;
+    }
+
+    //Row balance plus slots, for an account row already loaded
+    public long totalBalance(BankAccount account){
+        return account.getBalanceSlots() > 0 ? account.getBalance() + slotTotal(account.getAccountNo()) : account.getBalance();
+    }
+
+    public long slotTotal(Long accountNo){
+        Long total = jdbcTemplate.queryForObject(
+                "select coalesce(sum(balance), 0) from account_balance_slots where account_no = ?", Long.class, accountNo);
+        return total == null ? 0L : total;
+    }
+
+    //Slot sums of several accounts in one query, accounts without slots are absent
+    public Map<Long, Long> slotTotals(Collection<Long> accountNos){
+        Map<Long, Long> totals = new HashMap<>();
+        if(accountNos.isEmpty()){
+            return totals;
+        }
+        String placeholders = String.join(", ", Collections.nCopies(accountNos.size(), "?"));
+        jdbcTemplate.query(String.format(SLOT_TOTALS_SQL, placeholders),
+                rs -> {
+                    totals.put(rs.getLong(1), rs.getLong(2));
+                }, accountNos.toArray());
+        return totals;
+    }
+
+    //Splits an account into slots, or with 0 folds its slots back into the row; the total balance never changes
+    @Transactional
+    public Map<String, Object> reshard(Long accountNo, int slots){
+        if(slots < 0 || slots > MAX_SLOTS){
+            throw new IllegalArgumentException("Slots must be between 0 and " + MAX_SLOTS);
+        }
+        accountLockManager.lockForTransaction(accountNo);
+        Long rowBalance = jdbcTemplate.query("select balance from bank_account where account_no = ? for update",
+                rs -> rs.next() ? rs.getLong(1) : null, accountNo);
+        if(rowBalance == null){
+            throw new AccountNotFoundException("Account not found with Account Number :" + accountNo);
+        }
+
+        //Existing slots go back into the row first, then the new set starts empty
+        long slotBalance = lockedSlotTotal(accountNo);
+        jdbcTemplate.update("delete from account_balance_slots where account_no = ?", accountNo);
+        jdbcTemplate.update("update bank_account set balance = balance + ?, balance_slots = ?, version = version + 1 where account_no = ?",
+                slotBalance, slots, accountNo);
+        if(slots > 0){
+            List<Object[]> rows = new ArrayList<>(slots);
+            for(int slot = 0; slot < slots; slot++){
+                rows.add(new Object[]{accountNo, slot, 0L});
+            }
+            jdbcTemplate.batchUpdate("insert into account_balance_slots (account_no, slot, balance) values (?, ?, ?)", rows);
+        }
+
+        AfterCommit.run(() -> {
+            if(slots > 0){
+                shardedAccounts.put(accountNo, slots);
+            } else {
+                shardedAccounts.remove(accountNo);
+            }
+        });
+        logger.info("Account No {} resharded into {} balance slots", accountNo, slots);
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("accountNo", accountNo);
+        body.put("slots", slots);
+        body.put("balance", rowBalance + slotBalance);
+        return body;
+    }
+
+    //Slots of a deleted account go with it
+    public void deleteSlots(Collection<Long> accountNos){
+        accountNos.forEach(accountNo -> {
+            jdbcTemplate.update("delete from account_balance_slots where account_no = ?", accountNo);
+            AfterCommit.run(() -> shardedAccounts.remove(accountNo));
+        });
+    }
+
+    public Map<Long, Integer> shardedAccounts(){
+        return Map.copyOf(shardedAccounts);
+    }
+
+    private void zeroSlots(Long accountNo){
+        jdbcTemplate.update("update account_balance_slots set balance = 0 where account_no = ? and balance <> 0", accountNo);
+    }
+
+    private long lockedSlotTotal(Long accountNo){
+        List<Long> balances = jdbcTemplate.queryForList(
+                "select balance from account_balance_slots where account_no = ? order by slot for update", Long.class, accountNo);
+        return balances.stream().mapToLong(Long::longValue).sum();
+    }
+}
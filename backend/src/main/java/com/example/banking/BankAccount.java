@@ -19,7 +19,10 @@ public class BankAccount {
     private BankUser bankUser;
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = IdBlockAllocator.BANK_ACCOUNT)
+    @TableGenerator(name = IdBlockAllocator.BANK_ACCOUNT, table = IdBlockAllocator.TABLE,
+            pkColumnName = IdBlockAllocator.PK_COLUMN, valueColumnName = IdBlockAllocator.VALUE_COLUMN,
+            pkColumnValue = IdBlockAllocator.BANK_ACCOUNT, allocationSize = IdBlockAllocator.ALLOCATION_SIZE)
     private Long accountId;
 
     @Column(unique = true)
@@ -31,4 +34,13 @@ public class BankAccount {
     @Column(nullable = false)
     private String accountType;
 
+    //Number of sub-balance slots, 0 for a plain account; the true balance is this row plus its AccountBalanceSlot rows
+    @Column(nullable = false, columnDefinition = "int not null default 0")
+    private int balanceSlots;
+
+    //Bumped by every balance change, including the bulk UPDATEs, checked at flush in OPTIMISTIC mode
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint not null default 0")
+    private Long version;
+
 }
@@ -0,0 +1,254 @@
+package com.example.banking;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+//Bank-wide figures for the admin dashboard, read in O(1) from in-memory counters
+//Postings, registrations and deletions adjust the counters after commit, a scheduled job recomputes them from MySQL
+//The reconcile also picks up changes made by other nodes, and transfers, which keep the total but move balances between histogram buckets
+@Service
+public class BankStatsService {
+
+    //Upper bounds (exclusive) of the balance histogram buckets, the last bucket is open ended
+    private static final long[] BUCKET_BOUNDS = {1, 1_000, 10_000, 100_000, 1_000_000, 10_000_000};
+    private static final String[] BUCKET_LABELS = {"0", "1-999", "1K-9.9K", "10K-99.9K", "100K-999.9K", "1M-9.9M", "10M+"};
+    //Account balances including the slots of sharded accounts
+    private static final String ACCOUNT_BALANCES = "(select a.account_type, a.balance + coalesce(s.slot_balance, 0) as balance"
+            + " from bank_account a left join (select account_no, sum(balance) as slot_balance from account_balance_slots"
+            + " group by account_no) s on s.account_no = a.account_no)";
+    private static final String HISTOGRAM_SQL = "select bucket, count(*) from (select case"
+            + " when balance < 1 then 0 when balance < 1000 then 1 when balance < 10000 then 2"
+            + " when balance < 100000 then 3 when balance < 1000000 then 4 when balance < 10000000 then 5"
+            + " else 6 end as bucket from " + ACCOUNT_BALANCES + " balances) buckets group by bucket";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+
+    private volatile Counters counters = new Counters();
+    //Non-null while a reconcile runs, deltas recorded meanwhile are replayed onto the recomputed counters
+    private volatile Counters pending;
+    private volatile LocalDateTime reconciledAt;
+    private static final Logger logger = LoggerFactory.getLogger(BankStatsService.class);
+
+    public BankStatsService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager){
+        this.jdbcTemplate=jdbcTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize(){
+        reconcile();
+    }
+
+    public void recordDeposit(long amount, long newBalance){
+        AfterCommit.run(() -> apply(c -> {
+            c.totalBalance.add(amount);
+            c.depositCount.increment();
+            c.depositAmount.add(amount);
+            c.moveBalance(newBalance - amount, newBalance);
+        }));
+    }
+
+    public void recordWithdraw(long amount, long newBalance){
+        AfterCommit.run(() -> apply(c -> {
+            c.totalBalance.add(-amount);
+            c.moveBalance(newBalance + amount, newBalance);
+        }));
+    }
+
+    //Interest on many accounts at once, each credit is [balance before, amount]
+    public void recordInterest(List<long[]> credits){
+        AfterCommit.run(() -> apply(c -> {
+            for(long[] credit : credits){
+                c.totalBalance.add(credit[1]);
+                c.moveBalance(credit[0], credit[0] + credit[1]);
+            }
+        }));
+    }
+
+    public void recordUserRegistered(String role){
+        AfterCommit.run(() -> apply(c -> c.users.computeIfAbsent(String.valueOf(role), key -> new LongAdder()).increment()));
+    }
+
+    public void recordUserDeleted(String role){
+        AfterCommit.run(() -> apply(c -> c.users.computeIfAbsent(String.valueOf(role), key -> new LongAdder()).decrement()));
+    }
+
+    public void recordRoleChanged(String oldRole, String newRole){
+        AfterCommit.run(() -> apply(c -> {
+            c.users.computeIfAbsent(String.valueOf(oldRole), key -> new LongAdder()).decrement();
+            c.users.computeIfAbsent(String.valueOf(newRole), key -> new LongAdder()).increment();
+        }));
+    }
+
+    public void recordAccountOpened(String accountType, long balance){
+        AfterCommit.run(() -> apply(c -> {
+            c.accounts.computeIfAbsent(String.valueOf(accountType), key -> new LongAdder()).increment();
+            c.totalBalance.add(balance);
+            c.histogram[bucket(balance)].increment();
+        }));
+    }
+
+    public void recordAccountClosed(String accountType, long balance){
+        AfterCommit.run(() -> apply(c -> {
+            c.accounts.computeIfAbsent(String.valueOf(accountType), key -> new LongAdder()).decrement();
+            c.totalBalance.add(-balance);
+            c.histogram[bucket(balance)].decrement();
+        }));
+    }
+
+    public void recordAccountTypeChanged(String oldType, String newType){
+        AfterCommit.run(() -> apply(c -> {
+            c.accounts.computeIfAbsent(String.valueOf(oldType), key -> new LongAdder()).decrement();
+            c.accounts.computeIfAbsent(String.valueOf(newType), key -> new LongAdder()).increment();
+        }));
+    }
+
+    public Map<String, Object> stats(){
+        Counters current = counters;
+        Map<String, Long> usersByRole = sums(current.users);
+        Map<String, Long> accountsByType = sums(current.accounts);
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for(int i = 0; i < BUCKET_LABELS.length; i++){
+            histogram.put(BUCKET_LABELS[i], current.histogram[i].sum());
+        }
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("totalUsers", usersByRole.values().stream().mapToLong(Long::longValue).sum());
+        body.put("usersByRole", usersByRole);
+        body.put("totalAccounts", accountsByType.values().stream().mapToLong(Long::longValue).sum());
+        body.put("accountsByType", accountsByType);
+        body.put("totalBalance", current.totalBalance.sum());
+        body.put("depositCount", current.depositCount.sum());
+        body.put("totalDeposits", current.depositAmount.sum());
+        body.put("balanceHistogram", histogram);
+        body.put("reconciledAt", reconciledAt);
+        return body;
+    }
+
+    //Full recompute, O(accounts + history) in MySQL but off the request path
+    @Scheduled(initialDelayString = "${banking.stats.reconcile-interval-ms:300000}",
+            fixedDelayString = "${banking.stats.reconcile-interval-ms:300000}")
+    public void reconcile(){
+        long started = System.nanoTime();
+        Counters delta = new Counters();
+        pending = delta;
+        Counters fresh;
+        try {
+            //One read-only transaction so every figure comes from the same snapshot
+            fresh = readOnlyTransaction.execute(status -> load());
+        } catch (RuntimeException ex){
+            pending = null;
+            logger.warn("Bank stats reconcile failed, keeping the incremental counters", ex);
+            return;
+        }
+
+        //Postings that committed while the snapshot was read are replayed, a few may have been in it already;
+        //the next reconcile settles those
+        synchronized (this){
+            pending = null;
+            fresh.add(delta);
+            counters = fresh;
+        }
+        reconciledAt = LocalDateTime.now();
+        logger.info("Bank stats reconciled in {} ms", (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private Counters load(){
+        Counters fresh = new Counters();
+        jdbcTemplate.query("select role, count(*) from users group by role", rs -> {
+            fresh.users.computeIfAbsent(String.valueOf(rs.getString(1)), key -> new LongAdder()).add(rs.getLong(2));
+        });
+        jdbcTemplate.query("select account_type, count(*), coalesce(sum(balance), 0) from " + ACCOUNT_BALANCES
+                + " balances group by account_type", rs -> {
+            fresh.accounts.computeIfAbsent(String.valueOf(rs.getString(1)), key -> new LongAdder()).add(rs.getLong(2));
+            fresh.totalBalance.add(rs.getLong(3));
+        });
+        jdbcTemplate.query(HISTOGRAM_SQL, rs -> {
+            fresh.histogram[rs.getInt(1)].add(rs.getLong(2));
+        });
+        jdbcTemplate.query("select count(*), coalesce(sum(amount), 0) from transaction_history where transaction_type = 'DEPOSIT'", rs -> {
+            fresh.depositCount.add(rs.getLong(1));
+            fresh.depositAmount.add(rs.getLong(2));
+        });
+        return fresh;
+    }
+
+    //Applied to the live counters, and to the reconcile delta while one is running
+    private void apply(Consumer<Counters> change){
+        synchronized (this){
+            change.accept(counters);
+            Counters delta = pending;
+            if(delta != null){
+                change.accept(delta);
+            }
+        }
+    }
+
+    private static int bucket(long balance){
+        for(int i = 0; i < BUCKET_BOUNDS.length; i++){
+            if(balance < BUCKET_BOUNDS[i]){
+                return i;
+            }
+        }
+        return BUCKET_BOUNDS.length;
+    }
+
+    private static Map<String, Long> sums(Map<String, LongAdder> adders){
+        Map<String, Long> sorted = new TreeMap<>();
+        adders.forEach((key, adder) -> sorted.put(key, adder.sum()));
+        return sorted;
+    }
+
+    private static final class Counters {
+        private final Map<String, LongAdder> users = new ConcurrentHashMap<>();
+        private final Map<String, LongAdder> accounts = new ConcurrentHashMap<>();
+        private final LongAdder totalBalance = new LongAdder();
+        private final LongAdder depositCount = new LongAdder();
+        private final LongAdder depositAmount = new LongAdder();
+        private final LongAdder[] histogram = new LongAdder[BUCKET_LABELS.length];
+
+        Counters(){
+            for(int i = 0; i < histogram.length; i++){
+                histogram[i] = new LongAdder();
+            }
+        }
+
+        void moveBalance(long oldBalance, long newBalance){
+            int from = bucket(oldBalance);
+            int to = bucket(newBalance);
+            if(from != to){
+                histogram[from].decrement();
+                histogram[to].increment();
+            }
+        }
+
+        void add(Counters other){
+            other.users.forEach((key, adder) -> users.computeIfAbsent(key, k -> new LongAdder()).add(adder.sum()));
+            other.accounts.forEach((key, adder) -> accounts.computeIfAbsent(key, k -> new LongAdder()).add(adder.sum()));
+            totalBalance.add(other.totalBalance.sum());
+            depositCount.add(other.depositCount.sum());
+            depositAmount.add(other.depositAmount.sum());
+            for(int i = 0; i < histogram.length; i++){
+                histogram[i].add(other.histogram[i].sum());
+            }
+        }
+    }
+}
@@ -17,7 +17,10 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 public class BankUser {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = IdBlockAllocator.USERS)
+    @TableGenerator(name = IdBlockAllocator.USERS, table = IdBlockAllocator.TABLE,
+            pkColumnName = IdBlockAllocator.PK_COLUMN, valueColumnName = IdBlockAllocator.VALUE_COLUMN,
+            pkColumnValue = IdBlockAllocator.USERS, allocationSize = IdBlockAllocator.ALLOCATION_SIZE)
     private Long userId;
 
     @NotBlank(message="Name is Required")
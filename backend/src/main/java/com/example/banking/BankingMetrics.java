@@ -0,0 +1,66 @@
+package com.example.banking;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+//Latency histograms for every money operation, split by outcome
+//Exported as banking_operation_seconds with p50/p99/p999 and histogram buckets on /actuator/prometheus
+@Component
+public class BankingMetrics {
+
+    public static final String DEPOSIT = "deposit";
+    public static final String WITHDRAW = "withdraw";
+    public static final String ADMIN_TRANSFER = "admin_transfer";
+    public static final String USER_TRANSFER = "user_transfer";
+    public static final String BATCH_TRANSFER = "batch_transfer";
+
+    private final MeterRegistry meterRegistry;
+    //Builders are not free, one timer per operation/outcome pair is created once and reused
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public BankingMetrics(MeterRegistry meterRegistry){
+        this.meterRegistry=meterRegistry;
+    }
+
+    //Times the work, including the commit when called outside the transaction, and tags it with its outcome
+    public <T> T record(String operation, Supplier<T> work){
+        long start = System.nanoTime();
+        String outcome = "success";
+        try {
+            return work.get();
+        } catch (RuntimeException ex){
+            outcome = outcome(ex);
+            throw ex;
+        } finally {
+            timer(operation, outcome).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public MeterRegistry registry(){
+        return meterRegistry;
+    }
+
+    static String outcome(Throwable ex){
+        if(ex instanceof InsufficientBalanceException) return "insufficient_balance";
+        if(ex instanceof AccountNotFoundException) return "not_found";
+        if(ex instanceof InvalidTransactionException || ex instanceof IllegalArgumentException) return "invalid";
+        if(ex instanceof ServiceBusyException) return "busy";
+        return "error";
+    }
+
+    private Timer timer(String operation, String outcome){
+        return timers.computeIfAbsent(operation + '|' + outcome, key -> Timer.builder("banking.operation")
+                .description("Money operation latency")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.banking;
+
+import jakarta.validation.constraints.NotEmpty;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BatchTransferRequest {
+
+    //Each transfer is validated by the service so one bad item does not reject the whole batch
+    @NotEmpty(message = "At least one transfer is required")
+    private List<TransferRequest> transfers;
+}
@@ -0,0 +1,21 @@
+package com.example.banking;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchTransferResult {
+
+    //Position of the transfer in the request list
+    private int index;
+    private Long fromAccountNo;
+    private Long toAccountNo;
+    private Long amount;
+
+    //SUCCESS or FAILED
+    private String status;
+    private String message;
+}
@@ -0,0 +1,228 @@
+package com.example.banking;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+//Bulk admin transfers, e.g. month-end settlement
+//One locking IN query for all accounts, net balance changes, ledger postings and history rows written as JDBC batches
+@Service
+public class BatchTransferService {
+
+    private static final String SUCCESS = "SUCCESS";
+    private static final String FAILED = "FAILED";
+    private static final String UPDATE_BALANCE_SQL =
+            "update bank_account set balance = balance + ?, version = version + 1 where account_no = ?";
+
+    private final AccountRepository accountRepository;
+    private final TransactionHistoryWriter transactionHistoryWriter;
+    private final JdbcTemplate jdbcTemplate;
+    private final RecentTransactionsCache recentTransactionsCache;
+    private final LedgerService ledgerService;
+    private final BalanceSlotService balanceSlotService;
+    private final SequencedLedgerEngine sequencedLedgerEngine;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxTransfers;
+    private static final Logger logger = LoggerFactory.getLogger(BatchTransferService.class);
+
+    public BatchTransferService(AccountRepository accountRepository, TransactionHistoryWriter transactionHistoryWriter,
+                                JdbcTemplate jdbcTemplate, RecentTransactionsCache recentTransactionsCache,
+                                LedgerService ledgerService, BalanceSlotService balanceSlotService,
+                                SequencedLedgerEngine sequencedLedgerEngine, PlatformTransactionManager transactionManager,
+                                @Value("${banking.batch.max-transfers:1000}") int maxTransfers){
+        this.accountRepository=accountRepository;
+        this.transactionHistoryWriter=transactionHistoryWriter;
+        this.jdbcTemplate=jdbcTemplate;
+        this.recentTransactionsCache=recentTransactionsCache;
+        this.ledgerService=ledgerService;
+        this.balanceSlotService=balanceSlotService;
+        this.sequencedLedgerEngine=sequencedLedgerEngine;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxTransfers=maxTransfers;
+    }
+
+    //The SEQUENCED path never opens a transaction, the engine's fsync waits would otherwise hold a pooled connection
+    public BatchTransferResponse transfer(List<TransferRequest> transfers){
+
+        logger.info("Admin Batch Transfer Request with {} transfers", transfers.size());
+
+        if(transfers.size() > maxTransfers){
+            throw new IllegalArgumentException("A batch can contain at most " + maxTransfers + " transfers");
+        }
+        if(sequencedLedgerEngine.enabled()){
+            return sequencedTransfer(transfers);
+        }
+        return transactionTemplate.execute(status -> databaseTransfer(transfers));
+    }
+
+    private BatchTransferResponse databaseTransfer(List<TransferRequest> transfers){
+
+        //Validating every item up front, invalid ones are reported and skipped
+        BatchTransferResult[] results = new BatchTransferResult[transfers.size()];
+        TreeSet<Long> accountNos = new TreeSet<>();
+        Set<Long> sources = new HashSet<>();
+        for(int i = 0; i < transfers.size(); i++){
+            TransferRequest request = transfers.get(i);
+            String error = validate(request);
+            if(error != null){
+                results[i] = result(i, request, FAILED, error);
+            } else {
+                accountNos.add(request.getFromAccountNo());
+                accountNos.add(request.getToAccountNo());
+                sources.add(request.getFromAccountNo());
+            }
+        }
+
+        //Single IN query, rows are locked in account number order so concurrent batches cannot deadlock
+        Map<Long, Long> balances = new HashMap<>();
+        Map<Long, Long> deltas = new TreeMap<>();
+        if(!accountNos.isEmpty()){
+            accountRepository.findAllByAccountNoInForUpdate(accountNos).forEach(account -> {
+                long balance = account.getBalance();
+                //Sharded sources spend from their slots too, the slots are emptied into the row's net update
+                if(account.getBalanceSlots() > 0 && sources.contains(account.getAccountNo())){
+                    long slotBalance = balanceSlotService.takeSlots(account.getAccountNo());
+                    balance += slotBalance;
+                    deltas.merge(account.getAccountNo(), slotBalance, Long::sum);
+                }
+                balances.put(account.getAccountNo(), balance);
+            });
+        }
+
+        //Applying the postings in request order against the in-memory balances
+        List<TransactionHistory> history = new ArrayList<>();
+        List<LedgerService.Entry> entries = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        for(int i = 0; i < transfers.size(); i++){
+            if(results[i] != null){
+                continue;
+            }
+            TransferRequest request = transfers.get(i);
+            Long from = request.getFromAccountNo();
+            Long to = request.getToAccountNo();
+            Long amount = request.getAmount();
+
+            if(!balances.containsKey(from)){
+                results[i] = result(i, request, FAILED, "Account not found with Account Number :" + from);
+                continue;
+            }
+            if(!balances.containsKey(to)){
+                results[i] = result(i, request, FAILED, "Account not found with Account Number :" + to);
+                continue;
+            }
+            if(balances.get(from) < amount){
+                results[i] = result(i, request, FAILED, "Insufficient Balance for Transfer");
+                continue;
+            }
+
+            balances.merge(from, -amount, Long::sum);
+            balances.merge(to, amount, Long::sum);
+            deltas.merge(from, -amount, Long::sum);
+            deltas.merge(to, amount, Long::sum);
+
+            entries.add(LedgerService.transfer(from, to, amount));
+            history.add(new TransactionHistory(null, from, " TRANSFER ", amount, " TRANSFERRED TO " + to, now));
+            history.add(new TransactionHistory(null, to, " TRANSFER ", amount, " RECEIVED FROM " + from, now));
+
+            results[i] = result(i, request, SUCCESS, "Successfully Transferred " + amount + " From " + from + " To " + to);
+        }
+
+        //One net update per account, in account order
+        List<Object[]> updates = new ArrayList<>();
+        deltas.forEach((accountNo, delta) -> {
+            if(delta != 0){
+                updates.add(new Object[]{delta, accountNo});
+            }
+        });
+        if(!updates.isEmpty()){
+            jdbcTemplate.batchUpdate(UPDATE_BALANCE_SQL, updates);
+        }
+        ledgerService.postAll(entries);
+        transactionHistoryWriter.insertBatch(history);
+        //Touched accounts are refilled from the database on next read, one eviction per account instead of an append per row
+        recentTransactionsCache.evictAfterCommit(List.copyOf(deltas.keySet()));
+
+        int succeeded = history.size() / 2;
+        logger.info("Admin Batch Transfer Done, {} succeeded and {} failed", succeeded, transfers.size() - succeeded);
+
+        return new BatchTransferResponse(transfers.size(), succeeded, transfers.size() - succeeded, List.of(results));
+    }
+
+    //SEQUENCED: each item is one engine command, all published before any is awaited so they share journal forces
+    private BatchTransferResponse sequencedTransfer(List<TransferRequest> transfers){
+        BatchTransferResult[] results = new BatchTransferResult[transfers.size()];
+        List<Integer> indexes = new ArrayList<>();
+        List<SequencedLedgerEngine.Transfer> commands = new ArrayList<>();
+        for(int i = 0; i < transfers.size(); i++){
+            TransferRequest request = transfers.get(i);
+            String error = validate(request);
+            if(error != null){
+                results[i] = result(i, request, FAILED, error);
+                continue;
+            }
+            indexes.add(i);
+            commands.add(new SequencedLedgerEngine.Transfer(request.getFromAccountNo(), request.getToAccountNo(), request.getAmount()));
+        }
+
+        List<SequencedLedgerEngine.Outcome> outcomes = commands.isEmpty() ? List.of() : sequencedLedgerEngine.transferAll(commands);
+        int succeeded = 0;
+        for(int j = 0; j < outcomes.size(); j++){
+            int i = indexes.get(j);
+            TransferRequest request = transfers.get(i);
+            Long from = request.getFromAccountNo();
+            Long to = request.getToAccountNo();
+            switch (outcomes.get(j).status()){
+                case FROM_NOT_FOUND -> results[i] = result(i, request, FAILED, "Account not found with Account Number :" + from);
+                case TO_NOT_FOUND -> results[i] = result(i, request, FAILED, "Account not found with Account Number :" + to);
+                case INSUFFICIENT -> results[i] = result(i, request, FAILED, "Insufficient Balance for Transfer");
+                default -> {
+                    succeeded++;
+                    results[i] = result(i, request, SUCCESS, "Successfully Transferred " + request.getAmount() + " From " + from + " To " + to);
+                }
+            }
+        }
+        logger.info("Admin Batch Transfer Done, {} succeeded and {} failed", succeeded, transfers.size() - succeeded);
+        return new BatchTransferResponse(transfers.size(), succeeded, transfers.size() - succeeded, List.of(results));
+    }
+
+    private String validate(TransferRequest request){
+        if(request == null){
+            return "Transfer is required";
+        }
+        if(request.getFromAccountNo() == null){
+            return "Source account number is required";
+        }
+        if(request.getToAccountNo() == null){
+            return "Destination account number is required";
+        }
+        if(request.getAmount() == null || request.getAmount() <= 0){
+            return "Transfer Amount must be Greater than 0";
+        }
+        if(request.getFromAccountNo().equals(request.getToAccountNo())){
+            return "Cannot Transfer to the same Account";
+        }
+        return null;
+    }
+
+    private BatchTransferResult result(int index, TransferRequest request, String status, String message){
+        if(request == null){
+            return new BatchTransferResult(index, null, null, null, status, message);
+        }
+        return new BatchTransferResult(index, request.getFromAccountNo(), request.getToAccountNo(),
+                request.getAmount(), status, message);
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.banking;
+
+//How AccountService keeps balances consistent under concurrent requests, set with banking.concurrency.mode
+public enum ConcurrencyMode {
+
+    //Stripe lock in the JVM plus one conditional UPDATE per side, the balance check runs inside MySQL
+    ATOMIC,
+
+    //Stripe lock plus SELECT ... FOR UPDATE, the balance is checked and changed on the loaded entity
+    PESSIMISTIC,
+
+    //No locks, the @Version check at flush detects a concurrent change and the whole operation is retried
+    OPTIMISTIC,
+
+    //Single-writer SequencedLedgerEngine, balances in memory and a local journal, MySQL updated asynchronously
+    SEQUENCED
+}
@@ -0,0 +1,48 @@
+package com.example.banking;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+
+//Records how many database round trips each request made, per endpoint
+//Exported as banking_db_roundtrips on /actuator/prometheus
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class DbRoundTripFilter extends OncePerRequestFilter {
+
+    private final MeterRegistry meterRegistry;
+
+    public DbRoundTripFilter(MeterRegistry meterRegistry){
+        this.meterRegistry=meterRegistry;
+    }
+
+    @Override
+    protected void doFilterInternal(@NotNull HttpServletRequest request, @NotNull HttpServletResponse response, @NotNull FilterChain filterChain) throws ServletException, IOException {
+        DbRoundTrips.begin();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            long roundTrips = DbRoundTrips.end();
+            //Route template rather than the raw path keeps the tag cardinality bounded
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            DistributionSummary.builder("banking.db.roundtrips")
+                    .description("Database round trips per request")
+                    .tag("method", request.getMethod())
+                    .tag("uri", pattern == null ? "UNKNOWN" : pattern.toString())
+                    .publishPercentiles(0.5, 0.99)
+                    .register(meterRegistry)
+                    .record(roundTrips);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.banking;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import javax.sql.DataSource;
+
+//Counts database round trips made by the current request thread
+//Every statement execution, batch execution, commit and rollback counts as one trip to MySQL
+public final class DbRoundTrips {
+
+    private static final ThreadLocal<long[]> COUNTER = new ThreadLocal<>();
+
+    private DbRoundTrips(){
+    }
+
+    public static void begin(){
+        COUNTER.set(new long[1]);
+    }
+
+    //Round trips since begin(), the counter is cleared
+    public static long end(){
+        long[] counter = COUNTER.get();
+        COUNTER.remove();
+        return counter == null ? 0 : counter[0];
+    }
+
+    public static long current(){
+        long[] counter = COUNTER.get();
+        return counter == null ? 0 : counter[0];
+    }
+
+    static void increment(){
+        long[] counter = COUNTER.get();
+        if(counter != null){
+            counter[0]++;
+        }
+    }
+
+    //Wraps a DataSource so connections and statements it hands out report their round trips
+    public static DataSource wrap(DataSource dataSource){
+        return (DataSource) Proxy.newProxyInstance(DbRoundTrips.class.getClassLoader(),
+                new Class<?>[]{DataSource.class},
+                new Handler(dataSource, Kind.DATA_SOURCE));
+    }
+
+    private enum Kind { DATA_SOURCE, CONNECTION, STATEMENT }
+
+    private static final class Handler implements InvocationHandler {
+        private final Object target;
+        private final Kind kind;
+
+        Handler(Object target, Kind kind){
+            this.target = target;
+            this.kind = kind;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if(kind == Kind.STATEMENT && name.startsWith("execute")){
+                increment();
+            } else if(kind == Kind.CONNECTION && (name.equals("commit") || name.equals("rollback"))){
+                increment();
+            }
+
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException ex){
+                throw ex.getCause();
+            }
+
+            //Connections and statements are wrapped as they are handed out, through their interface type
+            if(kind == Kind.DATA_SOURCE && result instanceof Connection){
+                return wrapAs(Connection.class, result, Kind.CONNECTION);
+            }
+            if(kind == Kind.CONNECTION && result instanceof Statement
+                    && method.getReturnType().isInterface() && Statement.class.isAssignableFrom(method.getReturnType())){
+                return wrapAs(method.getReturnType(), result, Kind.STATEMENT);
+            }
+            return result;
+        }
+
+        private static Object wrapAs(Class<?> type, Object target, Kind kind){
+            return Proxy.newProxyInstance(DbRoundTrips.class.getClassLoader(), new Class<?>[]{type}, new Handler(target, kind));
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.example.banking;
 
 
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -32,6 +34,37 @@ public class GlobalExceptionHandler {
         return buildResponse(HttpStatus.BAD_REQUEST,ex.getMessage());
     }
 
+    //IdempotencyKeyReusedException
+    //Same Idempotency-Key sent with a different body, the stored response belongs to another request
+    @ExceptionHandler(IdempotencyKeyReusedException.class)
+    public ResponseEntity<Map<String,Object>> handleIdempotencyKeyReused(IdempotencyKeyReusedException ex){
+        return buildResponse(HttpStatus.UNPROCESSABLE_ENTITY,ex.getMessage());
+    }
+
+    //IdempotencyKeyPendingException
+    //Same Idempotency-Key while the first request is running elsewhere or ended without a known outcome
+    @ExceptionHandler(IdempotencyKeyPendingException.class)
+    public ResponseEntity<Map<String,Object>> handleIdempotencyKeyPending(IdempotencyKeyPendingException ex){
+        return buildResponse(HttpStatus.CONFLICT,ex.getMessage());
+    }
+
+    //OptimisticLockingFailureException
+    //Someone else changed the row between our read and our write, e.g. two admins editing the same account
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<Map<String,Object>> handleOptimisticLockingFailure(OptimisticLockingFailureException ex){
+        return buildResponse(HttpStatus.CONFLICT,"Record was changed concurrently, please retry");
+    }
+
+    //ServiceBusyException
+    //Fast 503 when a bounded pool is full, the client is told when to retry
+    @ExceptionHandler(ServiceBusyException.class)
+    public ResponseEntity<Map<String,Object>> handleServiceBusy(ServiceBusyException ex){
+        ResponseEntity<Map<String,Object>> response = buildResponse(HttpStatus.SERVICE_UNAVAILABLE,ex.getMessage());
+        return ResponseEntity.status(response.getStatusCode())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(response.getBody());
+    }
+
     //General exception
     @ExceptionHandler(Exception.class)
     public ResponseEntity<Map<String,Object>> handleException(Exception ex){
@@ -0,0 +1,97 @@
+package com.example.banking;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+//Journal of TransactionHistory rows for the write-behind history recorder, segment files are history-*.journal
+//Besides rows it holds tombstones: the rows appended in [start, end) belonged to a transaction that rolled back
+public class HistoryJournal extends MappedJournal<HistoryJournal.Entry> {
+
+    //Written where a row has its account number, which is never negative
+    private static final long TOMBSTONE = -1L;
+
+    //A history row, or with no row a tombstone for the range
+    public record Entry(TransactionHistory row, long start, long end) {
+
+        public static Entry of(TransactionHistory row){
+            return new Entry(row, 0, 0);
+        }
+
+        public static Entry tombstone(Range range){
+            return new Entry(null, range.start(), range.end());
+        }
+
+        public boolean tombstone(){
+            return row == null;
+        }
+    }
+
+    private static final Codec<Entry> CODEC = new Codec<>() {
+        @Override
+        public byte[] encode(Entry entry) {
+            if(entry.tombstone()){
+                return ByteBuffer.allocate(3 * Long.BYTES)
+                        .putLong(TOMBSTONE)
+                        .putLong(entry.start())
+                        .putLong(entry.end())
+                        .array();
+            }
+            TransactionHistory row = entry.row();
+            byte[] type = bytes(row.getTransactionType());
+            byte[] description = bytes(row.getDescription());
+            LocalDateTime timeStamp = row.getTimeStamp();
+            ByteBuffer buffer = ByteBuffer.allocate(3 * Long.BYTES + 3 * Integer.BYTES
+                    + (type == null ? 0 : type.length) + (description == null ? 0 : description.length));
+            buffer.putLong(row.getAccountNo());
+            buffer.putLong(row.getAmount());
+            buffer.putLong(timeStamp.toEpochSecond(ZoneOffset.UTC));
+            buffer.putInt(timeStamp.getNano());
+            putString(buffer, type);
+            putString(buffer, description);
+            return buffer.array();
+        }
+
+        @Override
+        public Entry decode(byte[] payload) {
+            ByteBuffer buffer = ByteBuffer.wrap(payload);
+            long accountNo = buffer.getLong();
+            if(accountNo == TOMBSTONE){
+                return new Entry(null, buffer.getLong(), buffer.getLong());
+            }
+            long amount = buffer.getLong();
+            LocalDateTime timeStamp = LocalDateTime.ofEpochSecond(buffer.getLong(), buffer.getInt(), ZoneOffset.UTC);
+            String type = getString(buffer);
+            String description = getString(buffer);
+            return Entry.of(new TransactionHistory(null, accountNo, type, amount, description, timeStamp));
+        }
+    };
+
+    public HistoryJournal(Path directory, int segmentSize, long checkpoint) throws IOException {
+        super(directory, "history", segmentSize, checkpoint, CODEC);
+    }
+
+    static byte[] bytes(String value){
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static void putString(ByteBuffer buffer, byte[] value){
+        buffer.putInt(value == null ? -1 : value.length);
+        if(value != null){
+            buffer.put(value);
+        }
+    }
+
+    static String getString(ByteBuffer buffer){
+        int length = buffer.getInt();
+        if(length < 0){
+            return null;
+        }
+        byte[] value = new byte[length];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
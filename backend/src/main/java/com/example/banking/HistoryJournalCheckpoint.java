@@ -0,0 +1,30 @@
+package com.example.banking;
+
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+//How far a node's history journal has been drained into transaction_history
+//Updated in the same transaction as the drained rows, so a restart replays exactly what is missing
+@Entity
+@Table(name = "history_journal_checkpoints")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HistoryJournalCheckpoint {
+
+    @Id
+    private String journalId;
+
+    //Journal position just past the last drained record
+    private Long position;
+
+    private LocalDateTime updatedAt;
+
+}
@@ -0,0 +1,8 @@
+package com.example.banking;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface HistoryJournalCheckpointRepository extends JpaRepository<HistoryJournalCheckpoint,String> {
+}
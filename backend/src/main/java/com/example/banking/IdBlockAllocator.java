@@ -0,0 +1,83 @@
+package com.example.banking;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Map;
+
+//Pooled ids for the tables written in bulk; IDENTITY ids turn off Hibernate's insert batching,
+//because every insert has to run on its own to learn the id MySQL gave it
+//Each table has a row in id_sequences; Hibernate's table generator (pooled-lo) and the JDBC writers both
+//reserve [next_val, next_val + n) and advance the row under its lock, so they never hand out the same id
+//Rows inserted through AUTO_INCREMENT by an older node are not covered, upgrade all nodes together
+@Component
+@DependsOn("entityManagerFactory")
+public class IdBlockAllocator {
+
+    public static final String TABLE = "id_sequences";
+    public static final String PK_COLUMN = "sequence_name";
+    public static final String VALUE_COLUMN = "next_val";
+    public static final String USERS = "users";
+    public static final String BANK_ACCOUNT = "bank_account";
+    public static final String TRANSACTION_HISTORY = "transaction_history";
+    //Ids Hibernate reserves per trip to id_sequences, matches hibernate.jdbc.batch_size
+    public static final int ALLOCATION_SIZE = 50;
+
+    //Sequence -> id column of the table with the same name
+    private static final Map<String, String> ID_COLUMNS = Map.of(
+            USERS, "user_id",
+            BANK_ACCOUNT, "account_id",
+            TRANSACTION_HISTORY, "transactionid");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate reserveTransaction;
+    private static final Logger logger = LoggerFactory.getLogger(IdBlockAllocator.class);
+
+    public IdBlockAllocator(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager){
+        this.jdbcTemplate=jdbcTemplate;
+        //Own transaction, the sequence row lock is held only for the reservation, as Hibernate's generator does
+        this.reserveTransaction = new TransactionTemplate(transactionManager);
+        this.reserveTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    //Brings each sequence past the highest id already in its table, so rows written with AUTO_INCREMENT ids
+    //(or bulk loaded with explicit ids) are never handed out again; safe to run on every start and on every node
+    @PostConstruct
+    public void migrate(){
+        ID_COLUMNS.forEach((sequence, idColumn) -> {
+            Long maxId = jdbcTemplate.queryForObject("select coalesce(max(" + idColumn + "), 0) from " + sequence, Long.class);
+            long floor = (maxId == null ? 0L : maxId) + 1;
+            int created = jdbcTemplate.update("insert ignore into " + TABLE + " (" + PK_COLUMN + ", " + VALUE_COLUMN + ") values (?, ?)",
+                    sequence, floor);
+            int raised = jdbcTemplate.update("update " + TABLE + " set " + VALUE_COLUMN + " = ? where " + PK_COLUMN + " = ? and " + VALUE_COLUMN + " < ?",
+                    floor, sequence, floor);
+            if(created > 0 || raised > 0){
+                logger.info("Id sequence {} moved to {}", sequence, floor);
+            }
+        });
+    }
+
+    //First id of a reserved range of count ids, for inserts made through JDBC instead of Hibernate
+    public long reserve(String sequence, int count){
+        if(count < 1){
+            throw new IllegalArgumentException("Id count must be at least 1");
+        }
+        return reserveTransaction.execute(status -> {
+            Long current = jdbcTemplate.query("select " + VALUE_COLUMN + " from " + TABLE + " where " + PK_COLUMN + " = ? for update",
+                    rs -> rs.next() ? rs.getLong(1) : null, sequence);
+            if(current == null){
+                throw new IllegalStateException("Id sequence " + sequence + " does not exist");
+            }
+            jdbcTemplate.update("update " + TABLE + " set " + VALUE_COLUMN + " = " + VALUE_COLUMN + " + ? where " + PK_COLUMN + " = ?",
+                    count, sequence);
+            return current;
+        });
+    }
+}
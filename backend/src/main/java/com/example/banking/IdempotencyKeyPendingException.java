@@ -0,0 +1,7 @@
+package com.example.banking;
+
+public class IdempotencyKeyPendingException extends RuntimeException{
+    public IdempotencyKeyPendingException(String message){
+        super(message);
+    }
+}
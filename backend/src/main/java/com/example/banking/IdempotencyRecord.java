@@ -0,0 +1,41 @@
+package com.example.banking;
+
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Lob;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+//Response of a money request made with an Idempotency-Key, inserted pending before the request runs
+@Entity
+@Table(name = "idempotency_keys", indexes = @Index(name = "idx_idempotency_expires_at", columnList = "expiresAt"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IdempotencyRecord {
+
+    //SHA-256 of endpoint, user id and the client's key, so keys of different users never collide
+    @Id
+    @Column(length = 64)
+    private String keyHash;
+
+    //SHA-256 of the request body, a retry with a different body is rejected
+    @Column(length = 64)
+    private String requestHash;
+
+    //Response body as JSON, replayed to retries; null while the request is pending
+    @Lob
+    private String responseBody;
+
+    private LocalDateTime createdAt;
+
+    private LocalDateTime expiresAt;
+
+}
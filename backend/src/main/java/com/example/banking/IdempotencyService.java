@@ -0,0 +1,313 @@
+package com.example.banking;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+//Idempotency-Key support for the money endpoints: a retry gets the first response back instead of moving money again
+//The key row is inserted as pending before the work runs and completed with the response after it; a retry that finds
+//a pending row is refused, since the first attempt may still be running or may have moved the money and died
+//A rejected request (insufficient balance, unknown account, bad input, busy) deletes its pending row, nothing was applied
+//Any other failure leaves the row pending until it expires: the outcome is unknown and a retry must not run again
+//No transaction is held around the work, it opens its own, so nothing here keeps a connection while it runs
+//A key is claimed in memory too, a second request with the same key on this node waits for the first and replays it
+//Completed keys sit in a bounded LRU in front of the idempotency_keys table, most retries never reach MySQL
+@Service
+public class IdempotencyService implements MeterBinder {
+
+    public static final String KEY_HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private static final String INSERT_SQL =
+            "insert into idempotency_keys (key_hash, request_hash, response_body, created_at, expires_at) values (?, ?, null, ?, ?)";
+    private static final String COMPLETE_SQL =
+            "update idempotency_keys set response_body = ? where key_hash = ?";
+    private static final String DELETE_PENDING_SQL =
+            "delete from idempotency_keys where key_hash = ? and response_body is null";
+
+    private final IdempotencyRecordRepository idempotencyRecordRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final boolean sequenced;
+    private final Duration ttl;
+
+    //Access-ordered, so the eldest entry is the least recently used key
+    private final LinkedHashMap<String, Stored> recent;
+    //Keys whose work is running on this node, released once the outcome is committed or failed
+    private final ConcurrentHashMap<String, CountDownLatch> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder cacheReplays = new LongAdder();
+    private final LongAdder tableReplays = new LongAdder();
+    private final LongAdder pendingRefusals = new LongAdder();
+    private final LongAdder unknownOutcomes = new LongAdder();
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyService.class);
+
+    public IdempotencyService(IdempotencyRecordRepository idempotencyRecordRepository, JdbcTemplate jdbcTemplate,
+                              ObjectMapper objectMapper,
+                              @Value("${banking.concurrency.mode:ATOMIC}") ConcurrencyMode concurrencyMode,
+                              @Value("${banking.idempotency.ttl-hours:24}") long ttlHours,
+                              @Value("${banking.idempotency.cache-size:10000}") int cacheSize){
+        this.idempotencyRecordRepository=idempotencyRecordRepository;
+        this.jdbcTemplate=jdbcTemplate;
+        this.objectMapper=objectMapper;
+        this.sequenced = concurrencyMode == ConcurrencyMode.SEQUENCED;
+        this.ttl = Duration.ofHours(ttlHours);
+        this.recent = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Stored> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    public record Result<T>(T body, boolean replayed) {
+    }
+
+    private record Stored(String requestHash, String responseBody, LocalDateTime expiresAt) {
+    }
+
+    //Without a key the work simply runs, the header is optional for older clients
+    public <T> Result<T> execute(String endpoint, Long userId, String key, Object request,
+                                 Class<T> responseType, Supplier<T> work){
+        if(key == null){
+            return new Result<>(work.get(), false);
+        }
+        if(key.isBlank() || key.length() > MAX_KEY_LENGTH){
+            throw new IllegalArgumentException(KEY_HEADER + " must be 1 to " + MAX_KEY_LENGTH + " characters");
+        }
+
+        String keyHash = sha256(endpoint + ":" + userId + ":" + key);
+        String requestHash = sha256(toJson(request));
+
+        while(true){
+            //A pending row may belong to a request running on this node, the claim below tells
+            Stored stored = lookup(keyHash);
+            if(stored != null && stored.responseBody() != null){
+                return replay(stored, requestHash, responseType);
+            }
+            CountDownLatch claim = new CountDownLatch(1);
+            CountDownLatch holder = inFlight.putIfAbsent(keyHash, claim);
+            if(holder != null){
+                //Same key running on this node, wait for it and answer with its response (or run if it failed)
+                awaitClaim(holder);
+                continue;
+            }
+            try {
+                //The holder may have finished between the lookup and the claim; a row still pending now was
+                //inserted by another node, or by an attempt whose outcome is unknown
+                stored = lookup(keyHash);
+                if(stored != null){
+                    return replay(stored, requestHash, responseType);
+                }
+                return run(endpoint, keyHash, requestHash, responseType, work);
+            } finally {
+                inFlight.remove(keyHash, claim);
+                claim.countDown();
+            }
+        }
+    }
+
+    private <T> Result<T> run(String endpoint, String keyHash, String requestHash, Class<T> responseType, Supplier<T> work){
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime expiresAt = now.plus(ttl);
+        try {
+            jdbcTemplate.update(INSERT_SQL, keyHash, requestHash, now, expiresAt);
+        } catch (DuplicateKeyException ex){
+            //Another node inserted the key between our lookup and the insert
+            Stored other = load(keyHash);
+            if(other == null){
+                throw new IllegalStateException("Idempotency key vanished after a duplicate insert", ex);
+            }
+            return replay(other, requestHash, responseType);
+        }
+
+        T result;
+        try {
+            result = work.get();
+        } catch (RuntimeException ex){
+            if(rejected(ex)){
+                try {
+                    jdbcTemplate.update(DELETE_PENDING_SQL, keyHash);
+                } catch (DataAccessException deleteFailure){
+                    ex.addSuppressed(deleteFailure);
+                }
+            } else {
+                unknownOutcomes.increment();
+                logger.error("Request on {} failed with an unknown outcome, its {} stays pending", endpoint, KEY_HEADER, ex);
+            }
+            throw ex;
+        }
+
+        //If this update fails the key stays pending, a retry is refused rather than applied twice
+        String body = toJson(result);
+        jdbcTemplate.update(COMPLETE_SQL, body, keyHash);
+        remember(keyHash, new Stored(requestHash, body, expiresAt));
+        executed.increment();
+        return new Result<>(result, false);
+    }
+
+    //Failures raised before anything was applied, the request may simply be sent again
+    //In the database modes a busy answer comes from a transaction that rolled back; from the engine it can follow
+    //a command that was applied but not made durable
+    private boolean rejected(RuntimeException ex){
+        return ex instanceof InsufficientBalanceException
+                || ex instanceof AccountNotFoundException
+                || ex instanceof InvalidTransactionException
+                || ex instanceof IllegalArgumentException
+                || (!sequenced && ex instanceof ServiceBusyException);
+    }
+
+    //Replayed responses carry Idempotent-Replayed: true so clients can tell a retry was absorbed
+    public static <T> ResponseEntity<T> respond(HttpStatus status, Result<T> result){
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(status);
+        if(result.replayed()){
+            response.header(REPLAYED_HEADER, "true");
+        }
+        return response.body(result.body());
+    }
+
+    //Expired keys are dropped in one statement, the index on expiresAt keeps it off a full scan
+    @Scheduled(fixedDelayString = "${banking.idempotency.cleanup-interval-ms:600000}")
+    public void cleanup(){
+        int deleted = idempotencyRecordRepository.deleteExpired(LocalDateTime.now());
+        if(deleted > 0){
+            logger.info("Deleted {} expired idempotency keys", deleted);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("banking.idempotency.requests", executed, LongAdder::sum)
+                .tag("result", "executed")
+                .register(registry);
+        FunctionCounter.builder("banking.idempotency.requests", cacheReplays, LongAdder::sum)
+                .tag("result", "replayed_cache")
+                .register(registry);
+        FunctionCounter.builder("banking.idempotency.requests", tableReplays, LongAdder::sum)
+                .tag("result", "replayed_table")
+                .register(registry);
+        FunctionCounter.builder("banking.idempotency.requests", pendingRefusals, LongAdder::sum)
+                .tag("result", "refused_pending")
+                .register(registry);
+        FunctionCounter.builder("banking.idempotency.requests", unknownOutcomes, LongAdder::sum)
+                .tag("result", "unknown_outcome")
+                .register(registry);
+    }
+
+    private <T> Result<T> replay(Stored stored, String requestHash, Class<T> responseType){
+        if(!stored.requestHash().equals(requestHash)){
+            throw new IdempotencyKeyReusedException(KEY_HEADER + " was already used with a different request body");
+        }
+        if(stored.responseBody() == null){
+            pendingRefusals.increment();
+            throw new IdempotencyKeyPendingException("A request with this " + KEY_HEADER
+                    + " is still being processed or its outcome is unknown, check the transaction history before retrying with a new key");
+        }
+        try {
+            return new Result<>(objectMapper.readValue(stored.responseBody(), responseType), true);
+        } catch (JsonProcessingException ex){
+            throw new IllegalStateException("Stored idempotent response could not be read", ex);
+        }
+    }
+
+    private Stored lookup(String keyHash){
+        Stored stored = cached(keyHash);
+        if(stored != null){
+            cacheReplays.increment();
+            return stored;
+        }
+        stored = load(keyHash);
+        if(stored != null && stored.responseBody() != null){
+            tableReplays.increment();
+        }
+        return stored;
+    }
+
+    private static void awaitClaim(CountDownLatch holder){
+        try {
+            holder.await();
+        } catch (InterruptedException ex){
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a request with the same " + KEY_HEADER, ex);
+        }
+    }
+
+    private Stored cached(String keyHash){
+        synchronized (recent){
+            Stored stored = recent.get(keyHash);
+            if(stored != null && stored.expiresAt().isBefore(LocalDateTime.now())){
+                recent.remove(keyHash);
+                return null;
+            }
+            return stored;
+        }
+    }
+
+    private void remember(String keyHash, Stored stored){
+        synchronized (recent){
+            recent.put(keyHash, stored);
+        }
+    }
+
+    //An expired row is deleted here rather than waiting for cleanup, otherwise it would block reuse of the key
+    private Stored load(String keyHash){
+        IdempotencyRecord record = idempotencyRecordRepository.findById(keyHash).orElse(null);
+        if(record == null){
+            return null;
+        }
+        if(record.getExpiresAt().isBefore(LocalDateTime.now())){
+            jdbcTemplate.update("delete from idempotency_keys where key_hash = ? and expires_at = ?", keyHash, record.getExpiresAt());
+            return null;
+        }
+        Stored stored = new Stored(record.getRequestHash(), record.getResponseBody(), record.getExpiresAt());
+        //Pending rows are not cached, they are completed or deleted later
+        if(stored.responseBody() != null){
+            remember(keyHash, stored);
+        }
+        return stored;
+    }
+
+    private String toJson(Object value){
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException ex){
+            throw new IllegalStateException("Could not serialize " + value.getClass().getSimpleName(), ex);
+        }
+    }
+
+    private static String sha256(String value){
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException ex){
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.banking;
+
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+//Checkpoint of one credited id range, inserted in the same transaction as the credits
+//Its primary key is what stops a rerun or another node from crediting the range twice
+@Entity
+@Table(name = "interest_accrual_chunks", indexes = @Index(name = "idx_interest_chunk_period", columnList = "period"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InterestAccrualChunk {
+
+    //Period and first account id, e.g. 2026-09:5001
+    @Id
+    private String chunkId;
+
+    private String period;
+
+    private Long firstAccountId;
+
+    private Long lastAccountId;
+
+    //Accounts credited and interest paid in this range
+    private Integer accounts;
+
+    private Long interest;
+
+    private LocalDateTime completedAt;
+
+}
@@ -0,0 +1,36 @@
+package com.example.banking;
+
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+//One monthly interest accrual, created by its first run and reused by every rerun of the same period
+//Chunk size and rate are fixed here so a rerun cuts the same id ranges and pays the same rate
+@Entity
+@Table(name = "interest_accrual_runs")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InterestAccrualRun {
+
+    //Year and month the interest is for, e.g. 2026-09
+    @Id
+    private String period;
+
+    private Integer chunkSize;
+
+    //Annual rate in basis points
+    private Integer rateBps;
+
+    private LocalDateTime startedAt;
+
+    //Set once every chunk of the period has a checkpoint
+    private LocalDateTime completedAt;
+
+}
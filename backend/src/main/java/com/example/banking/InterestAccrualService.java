@@ -0,0 +1,398 @@
+package com.example.banking;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+//Monthly interest on savings accounts, credited in id-range chunks on a bounded pool
+//Chunk k covers account ids [1 + k * chunkSize, (k + 1) * chunkSize] and is one transaction: it claims its
+//checkpoint row, credits every account with one batched UPDATE, posts the ledger entries and inserts its history
+//rows last; a chunk is credited and checkpointed, or neither
+//Account rows are locked before the id reservation, so a chunk never waits on a transfer while holding id_sequences
+//Rerunning a period (after a crash, or on another node) skips every chunk that already has a checkpoint
+//Credits are relative UPDATEs, so transfers keep running on the same rows; sharded accounts earn on row plus slots
+@Service
+public class InterestAccrualService implements MeterBinder {
+
+    public static final String SAVINGS = "SAVINGS";
+    public static final String INTEREST = "INTEREST";
+
+    private static final String CREATE_RUN_SQL =
+            "insert ignore into interest_accrual_runs (period, chunk_size, rate_bps, started_at) values (?, ?, ?, ?)";
+    private static final String CLAIM_CHUNK_SQL =
+            "insert ignore into interest_accrual_chunks (chunk_id, period, first_account_id, last_account_id, accounts, interest, completed_at)"
+                    + " values (?, ?, ?, ?, 0, 0, ?)";
+    private static final String ACCOUNTS_SQL =
+            "select account_no, balance, balance_slots from bank_account"
+                    + " where account_id between ? and ? and account_type = ? and (balance > 0 or balance_slots > 0)";
+    private static final String CREDIT_SQL =
+            "update bank_account set balance = balance + ?, version = version + 1 where account_no = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionHistoryWriter transactionHistoryWriter;
+    private final LedgerService ledgerService;
+    private final BalanceSlotService balanceSlotService;
+    private final RecentTransactionsCache recentTransactionsCache;
+    private final BankStatsService bankStatsService;
+    private final SequencedLedgerEngine sequencedLedgerEngine;
+    private final boolean enabled;
+    private final int rateBps;
+    private final int chunkSize;
+    private final ExecutorService executor;
+    private final int threads;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile Progress progress;
+    private final LongAdder accountsCredited = new LongAdder();
+    private final LongAdder interestCredited = new LongAdder();
+    private final LongAdder chunksCompleted = new LongAdder();
+    private final LongAdder chunksFailed = new LongAdder();
+    private static final Logger logger = LoggerFactory.getLogger(InterestAccrualService.class);
+
+    public InterestAccrualService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                  TransactionHistoryWriter transactionHistoryWriter, LedgerService ledgerService,
+                                  BalanceSlotService balanceSlotService, RecentTransactionsCache recentTransactionsCache,
+                                  BankStatsService bankStatsService, SequencedLedgerEngine sequencedLedgerEngine,
+                                  @Value("${banking.interest.enabled:false}") boolean enabled,
+                                  @Value("${banking.interest.annual-rate-bps:350}") int rateBps,
+                                  @Value("${banking.interest.chunk-size:1000}") int chunkSize,
+                                  @Value("${banking.interest.threads:4}") int threads){
+        if(rateBps < 0){
+            throw new IllegalArgumentException("banking.interest.annual-rate-bps must not be negative");
+        }
+        if(chunkSize < 1 || threads < 1){
+            throw new IllegalArgumentException("banking.interest.chunk-size and banking.interest.threads must be at least 1");
+        }
+        this.jdbcTemplate=jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionHistoryWriter=transactionHistoryWriter;
+        this.ledgerService=ledgerService;
+        this.balanceSlotService=balanceSlotService;
+        this.recentTransactionsCache=recentTransactionsCache;
+        this.bankStatsService=bankStatsService;
+        this.sequencedLedgerEngine=sequencedLedgerEngine;
+        this.enabled=enabled;
+        this.rateBps=rateBps;
+        this.chunkSize=chunkSize;
+        this.threads=threads;
+        //Each worker holds a connection for the length of a chunk plus one briefly for its id reservation,
+        //keep threads well below the connection pool size
+        AtomicInteger threadNo = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "interest-" + threadNo.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    //Last month's interest; the job runs on its own thread so the scheduler is free for the projection and drains
+    @Scheduled(cron = "${banking.interest.cron:0 0 2 1 * *}")
+    public void scheduledAccrual(){
+        if(!enabled){
+            return;
+        }
+        if(sequencedLedgerEngine.enabled()){
+            logger.warn("Interest accrual skipped, balances are owned by the sequenced engine");
+            return;
+        }
+        YearMonth period = YearMonth.now().minusMonths(1);
+        try {
+            start(period);
+        } catch (ServiceBusyException ex){
+            logger.warn("Interest accrual for {} not started, a run is already in progress", period);
+        }
+    }
+
+    //Starts a run in the background, also used to finish a period whose earlier run failed part way
+    public void start(YearMonth period){
+        acquire();
+        Thread.ofPlatform().name("interest-accrual").daemon(true).start(() -> {
+            try {
+                accrueHoldingLock(period);
+            } catch (RuntimeException ex){
+                logger.error("Interest accrual for {} failed", period, ex);
+            }
+        });
+    }
+
+    //Runs a period to the end on the calling thread
+    public Map<String, Object> accrue(YearMonth period){
+        acquire();
+        return accrueHoldingLock(period);
+    }
+
+    public Map<String, Object> stats(){
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("enabled", enabled);
+        body.put("annualRateBps", rateBps);
+        body.put("chunkSize", chunkSize);
+        body.put("threads", threads);
+        body.put("running", running.get());
+        body.put("accountsCredited", accountsCredited.sum());
+        body.put("interestCredited", interestCredited.sum());
+        body.put("chunksCompleted", chunksCompleted.sum());
+        body.put("chunksFailed", chunksFailed.sum());
+        Progress current = progress;
+        body.put("lastRun", current == null ? null : current.toMap());
+        return body;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("banking.interest.accounts", accountsCredited, LongAdder::sum)
+                .register(registry);
+        FunctionCounter.builder("banking.interest.amount", interestCredited, LongAdder::sum)
+                .register(registry);
+        FunctionCounter.builder("banking.interest.chunks", chunksCompleted, LongAdder::sum)
+                .tag("result", "completed")
+                .register(registry);
+        FunctionCounter.builder("banking.interest.chunks", chunksFailed, LongAdder::sum)
+                .tag("result", "failed")
+                .register(registry);
+        Gauge.builder("banking.interest.chunks.pending", this, service -> {
+                    Progress current = service.progress;
+                    return current == null || current.finishedAt != null ? 0 : current.pending();
+                })
+                .register(registry);
+    }
+
+    @PreDestroy
+    public void close(){
+        executor.shutdownNow();
+    }
+
+    private void acquire(){
+        if(sequencedLedgerEngine.enabled()){
+            throw new InvalidTransactionException("Interest accrual is not available in SEQUENCED mode");
+        }
+        if(!running.compareAndSet(false, true)){
+            throw new ServiceBusyException("Interest accrual is already running", 60);
+        }
+    }
+
+    private Map<String, Object> accrueHoldingLock(YearMonth period){
+        try {
+            Run run = openRun(period.toString());
+            if(run.completed()){
+                logger.info("Interest for {} was already credited", run.period());
+                return stats();
+            }
+            Long maxAccountId = jdbcTemplate.queryForObject("select coalesce(max(account_id), 0) from bank_account", Long.class);
+            Set<Long> done = new HashSet<>(jdbcTemplate.queryForList(
+                    "select first_account_id from interest_accrual_chunks where period = ?", Long.class, run.period()));
+            List<Long> pending = new ArrayList<>();
+            for(long first = 1; first <= maxAccountId; first += run.chunkSize()){
+                if(!done.contains(first)){
+                    pending.add(first);
+                }
+            }
+            Progress current = new Progress(run.period(), pending.size(), done.size());
+            progress = current;
+            logger.info("Interest accrual for {} started, {} chunks to credit, {} already checkpointed",
+                    run.period(), pending.size(), done.size());
+
+            List<Future<?>> futures = new ArrayList<>(pending.size());
+            for(Long first : pending){
+                futures.add(executor.submit(() -> runChunk(run, first, first + run.chunkSize() - 1, current)));
+            }
+            for(Future<?> future : futures){
+                try {
+                    future.get();
+                } catch (InterruptedException ex){
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for interest chunks", ex);
+                } catch (ExecutionException ex){
+                    //runChunk logs and counts its own failures
+                }
+            }
+            current.finish();
+
+            if(current.failed.get() == 0){
+                jdbcTemplate.update("update interest_accrual_runs set completed_at = ? where period = ?",
+                        Timestamp.valueOf(current.finishedAt), run.period());
+            }
+            logger.info("Interest accrual for {} finished: {} accounts, {} interest, {} chunks failed, {} accounts/s",
+                    run.period(), current.accounts.sum(), current.interest.sum(), current.failed.get(), current.accountsPerSecond());
+            return stats();
+        } finally {
+            running.set(false);
+        }
+    }
+
+    //The first run of a period fixes its chunk size and rate, later runs read them back
+    private Run openRun(String period){
+        jdbcTemplate.update(CREATE_RUN_SQL, period, chunkSize, rateBps, Timestamp.valueOf(LocalDateTime.now()));
+        return jdbcTemplate.queryForObject(
+                "select chunk_size, rate_bps, completed_at from interest_accrual_runs where period = ?",
+                (rs, rowNum) -> new Run(period, rs.getInt(1), rs.getInt(2), rs.getTimestamp(3) != null), period);
+    }
+
+    private void runChunk(Run run, long firstId, long lastId, Progress current){
+        try {
+            long[] result = transactionTemplate.execute(status -> accrueChunk(run, firstId, lastId));
+            if(result == null){
+                current.skipped.incrementAndGet();
+                return;
+            }
+            current.completed.incrementAndGet();
+            current.accounts.add(result[0]);
+            current.interest.add(result[1]);
+            chunksCompleted.increment();
+            accountsCredited.add(result[0]);
+            interestCredited.add(result[1]);
+        } catch (RuntimeException ex){
+            current.failed.incrementAndGet();
+            chunksFailed.increment();
+            logger.warn("Interest chunk {}:{} failed, a rerun of the period will retry it", run.period(), firstId, ex);
+        }
+    }
+
+    //[accounts, interest] of the chunk, null when another run already checkpointed it
+    private long[] accrueChunk(Run run, long firstId, long lastId){
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        Timestamp timestamp = Timestamp.valueOf(now);
+        String chunkId = run.period() + ":" + firstId;
+        //Waits on a concurrent claim of the same range and then finds it taken
+        if(jdbcTemplate.update(CLAIM_CHUNK_SQL, chunkId, run.period(), firstId, lastId, timestamp) == 0){
+            return null;
+        }
+
+        List<long[]> accounts = jdbcTemplate.query(ACCOUNTS_SQL,
+                (rs, rowNum) -> new long[]{rs.getLong(1), rs.getLong(2), rs.getInt(3)}, firstId, lastId, SAVINGS);
+        List<Long> sharded = accounts.stream().filter(row -> row[2] > 0).map(row -> row[0]).toList();
+        Map<Long, Long> slotTotals = balanceSlotService.slotTotals(sharded);
+
+        List<TransactionHistory> history = new ArrayList<>();
+        List<LedgerService.Entry> entries = new ArrayList<>();
+        List<Long> accountNos = new ArrayList<>();
+        List<long[]> credits = new ArrayList<>();
+        long total = 0;
+        for(long[] row : accounts){
+            long balance = row[1] + slotTotals.getOrDefault(row[0], 0L);
+            long interest = interestOn(balance, run.rateBps());
+            if(interest <= 0){
+                continue;
+            }
+            history.add(new TransactionHistory(null, row[0], INTEREST, interest, "INTEREST FOR " + run.period(), now));
+            entries.add(LedgerService.interest(row[0], interest));
+            accountNos.add(row[0]);
+            credits.add(new long[]{balance, interest});
+            total += interest;
+        }
+
+        if(!history.isEmpty()){
+            int[][] credited = jdbcTemplate.batchUpdate(CREDIT_SQL, history, history.size(), (ps, row) -> {
+                ps.setLong(1, row.getAmount());
+                ps.setLong(2, row.getAccountNo());
+            });
+            //An account deleted since the read would be paid nothing, the chunk is retried instead
+            for(int[] counts : credited){
+                for(int count : counts){
+                    if(count == 0){
+                        throw new IllegalStateException("Interest chunk " + chunkId + " found an account missing");
+                    }
+                }
+            }
+            ledgerService.postAll(entries);
+            transactionHistoryWriter.insertBatch(history);
+            recentTransactionsCache.evictAfterCommit(accountNos);
+            bankStatsService.recordInterest(credits);
+        }
+        jdbcTemplate.update("update interest_accrual_chunks set accounts = ?, interest = ? where chunk_id = ?",
+                history.size(), total, chunkId);
+        return new long[]{history.size(), total};
+    }
+
+    //One month at the annual rate, rounded down to whole units
+    static long interestOn(long balance, int annualRateBps){
+        if(balance <= 0){
+            return 0;
+        }
+        return Math.multiplyExact(balance, annualRateBps) / (12L * 10_000);
+    }
+
+    private record Run(String period, int chunkSize, int rateBps, boolean completed) {
+    }
+
+    //Progress of the current or last run, read by stats() and the pending gauge
+    private static final class Progress {
+        final String period;
+        final int totalChunks;
+        final int checkpointedBefore;
+        final LocalDateTime startedAt = LocalDateTime.now();
+        final long startedNanos = System.nanoTime();
+        final AtomicInteger completed = new AtomicInteger();
+        final AtomicInteger skipped = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final LongAdder accounts = new LongAdder();
+        final LongAdder interest = new LongAdder();
+        volatile long finishedNanos;
+        volatile LocalDateTime finishedAt;
+
+        Progress(String period, int totalChunks, int checkpointedBefore){
+            this.period = period;
+            this.totalChunks = totalChunks;
+            this.checkpointedBefore = checkpointedBefore;
+        }
+
+        void finish(){
+            finishedNanos = System.nanoTime();
+            finishedAt = LocalDateTime.now();
+        }
+
+        int pending(){
+            return totalChunks - completed.get() - skipped.get() - failed.get();
+        }
+
+        long accountsPerSecond(){
+            long elapsed = (finishedAt != null ? finishedNanos : System.nanoTime()) - startedNanos;
+            return elapsed <= 0 ? 0 : accounts.sum() * 1_000_000_000L / elapsed;
+        }
+
+        Map<String, Object> toMap(){
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("period", period);
+            body.put("startedAt", startedAt);
+            body.put("finishedAt", finishedAt);
+            body.put("chunks", totalChunks);
+            body.put("chunksCheckpointedBefore", checkpointedBefore);
+            body.put("chunksCompleted", completed.get());
+            body.put("chunksSkipped", skipped.get());
+            body.put("chunksFailed", failed.get());
+            body.put("chunksPending", pending());
+            body.put("accounts", accounts.sum());
+            body.put("interest", interest.sum());
+            body.put("accountsPerSecond", accountsPerSecond());
+            return body;
+        }
+    }
+}
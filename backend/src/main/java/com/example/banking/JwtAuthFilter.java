@@ -2,15 +2,18 @@ package com.example.banking;
 
 
 import java.io.IOException;
+import java.util.List;
 
 import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
+import io.jsonwebtoken.JwtException;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -20,11 +23,12 @@ import jakarta.servlet.http.HttpServletResponse;
 public class JwtAuthFilter extends OncePerRequestFilter {
 
     private final JwtUtil jwtUtil;
-    private final UserDetailsService userDetailsService;
+    private final TokenRevocationService tokenRevocationService;
+    private static final Logger logger = LoggerFactory.getLogger(JwtAuthFilter.class);
 
-    public JwtAuthFilter(JwtUtil jwtUtil, UserDetailsService userDetailsService){
+    public JwtAuthFilter(JwtUtil jwtUtil, TokenRevocationService tokenRevocationService){
         this.jwtUtil=jwtUtil;
-        this.userDetailsService=userDetailsService;
+        this.tokenRevocationService=tokenRevocationService;
     }
 
 
@@ -33,19 +37,29 @@ public class JwtAuthFilter extends OncePerRequestFilter {
         String authHeader = request.getHeader("Authorization");
 
 
-        if(authHeader != null && authHeader.startsWith("Bearer ")){
+        if(authHeader != null && authHeader.startsWith("Bearer ") && SecurityContextHolder.getContext().getAuthentication()==null){
             String token = authHeader.substring(7);
-            String username = jwtUtil.extractUsername(token);
 
-            if(username != null && SecurityContextHolder.getContext().getAuthentication()==null){
-                UserDetails userDetails = userDetailsService.loadUserByUsername(username);
-
-                if(jwtUtil.validateToken(token,userDetails.getUsername())){
-                    UsernamePasswordAuthenticationToken authToken =
-                            new UsernamePasswordAuthenticationToken(userDetails,null,userDetails.getAuthorities());
-
-                    SecurityContextHolder.getContext().setAuthentication(authToken);
+            //Token is parsed exactly once, the principal comes from its claims without touching the database
+            long start = System.nanoTime();
+            try {
+                JwtPrincipal principal = jwtUtil.parse(token);
+                boolean revoked = tokenRevocationService.isRevoked(principal);
+                RequestTimings.record("jwt", System.nanoTime() - start);
+                if(revoked){
+                    logger.debug("Rejected revoked JWT for User ID : {}", principal.userId());
+                    filterChain.doFilter(request,response);
+                    return;
                 }
+                UsernamePasswordAuthenticationToken authToken =
+                        new UsernamePasswordAuthenticationToken(principal,null,
+                                List.of(new SimpleGrantedAuthority("ROLE_" + principal.role())));
+
+                SecurityContextHolder.getContext().setAuthentication(authToken);
+            } catch (JwtException | IllegalArgumentException ex){
+                RequestTimings.record("jwt", System.nanoTime() - start);
+                //Invalid or expired token, the request continues unauthenticated
+                logger.debug("Rejected JWT : {}", ex.getMessage());
             }
         }
         filterChain.doFilter(request,response);
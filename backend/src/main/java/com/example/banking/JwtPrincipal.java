@@ -0,0 +1,15 @@
+package com.example.banking;
+
+import java.security.Principal;
+import java.time.Instant;
+
+//Authenticated user as read from the JWT claims, no database lookup needed
+//getName() returns the email so existing Authentication.getName() callers keep working
+public record JwtPrincipal(Long userId, String email, String role,
+                           String tokenId, Instant issuedAt, Instant expiresAt) implements Principal {
+
+    @Override
+    public String getName() {
+        return email;
+    }
+}
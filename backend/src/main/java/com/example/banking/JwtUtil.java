@@ -1,6 +1,9 @@
 package com.example.banking;
 
 
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
@@ -8,51 +11,59 @@ import org.springframework.stereotype.Component;
 
 import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.time.Instant;
 import java.util.Date;
+import java.util.UUID;
 
 @Component
 public class JwtUtil {
     private static final String SECRET = "mysecretkeymysecretkeymysecretkey";
-    private static final long EXPIRATION_TIME = 1000 * 60 * 60;
+    static final long EXPIRATION_TIME = 1000 * 60 * 60;
+    private static final String USER_ID_CLAIM = "uid";
+    private static final String ROLE_CLAIM = "role";
+    //iat has second precision, this carries the issue time in milliseconds for revocation cutoffs
+    private static final String ISSUED_AT_MS_CLAIM = "iat_ms";
 
     private final Key key = Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8));
 
+    //Parser is thread safe, built once instead of on every call
+    private final JwtParser parser = Jwts.parserBuilder()
+            .setSigningKey(key)
+            .build();
 
 
-    //Generate Token
-    public String generateToken(String username){
+
+    //Generate Token, userId and role are embedded so requests need no user lookup
+    public String generateToken(BankUser bankUser){
+        long now = System.currentTimeMillis();
         return Jwts.builder()
-                .setSubject(username)
-                .setIssuedAt(new Date())
-                .setExpiration(new Date(System.currentTimeMillis() + EXPIRATION_TIME))
+                .setId(UUID.randomUUID().toString())
+                .setSubject(bankUser.getEmail())
+                .claim(USER_ID_CLAIM, bankUser.getUserId())
+                .claim(ROLE_CLAIM, bankUser.getRole())
+                .claim(ISSUED_AT_MS_CLAIM, now)
+                .setIssuedAt(new Date(now))
+                .setExpiration(new Date(now + EXPIRATION_TIME))
                 .signWith(key, SignatureAlgorithm.HS256)
                 .compact();
     }
 
-    //Extract Username
-    public String extractUsername(String token){
-        return Jwts.parserBuilder()
-                .setSigningKey(key)
-                .build()
-                .parseClaimsJws(token)
-                .getBody()
-                .getSubject();
-    }
-
-    //Validate Token
-    public boolean validateToken(String token , String username){
-        return username.equals(extractUsername(token)) && !isTokenExpired(token);
-    }
-
-    private boolean isTokenExpired(String token){
-        Date expiration = Jwts.parserBuilder()
-                .setSigningKey(key)
-                .build()
-                .parseClaimsJws(token)
-                .getBody()
-                .getExpiration();
-        return expiration.before(new Date());
+    //Parse and validate in one pass, signature and expiry are checked by the parser
+    //Throws JwtException when the token is invalid, expired or lacks the user claims
+    public JwtPrincipal parse(String token){
+        Claims claims = parser.parseClaimsJws(token).getBody();
 
+        Number userId = claims.get(USER_ID_CLAIM, Number.class);
+        String role = claims.get(ROLE_CLAIM, String.class);
+        if(claims.getSubject() == null || claims.getId() == null || userId == null || role == null
+                || claims.getIssuedAt() == null || claims.getExpiration() == null){
+            throw new JwtException("Token is missing user claims");
+        }
+        //Tokens issued before the claim existed fall back to iat, which only errs towards revoking them
+        Number issuedAtMs = claims.get(ISSUED_AT_MS_CLAIM, Number.class);
+        Instant issuedAt = issuedAtMs != null ? Instant.ofEpochMilli(issuedAtMs.longValue()) : claims.getIssuedAt().toInstant();
+        return new JwtPrincipal(userId.longValue(), claims.getSubject(), role, claims.getId(),
+                issuedAt, claims.getExpiration().toInstant());
     }
 
 
@@ -0,0 +1,81 @@
+package com.example.banking;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+//Lock-free latency histogram with power-of-two microsecond buckets
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 32;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+    private final LongAdder totalNanos = new LongAdder();
+
+    public LatencyHistogram(){
+        for(int i = 0; i < BUCKETS; i++){
+            counts[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos){
+        long micros = Math.max(nanos / 1000, 1);
+        int bucket = Math.min(63 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+        counts[bucket].increment();
+        totalNanos.add(nanos);
+    }
+
+    public long count(){
+        long total = 0;
+        for(LongAdder c : counts){
+            total += c.sum();
+        }
+        return total;
+    }
+
+    public Map<String, Object> snapshot(){
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for(int i = 0; i < BUCKETS; i++){
+            snapshot[i] = counts[i].sum();
+            total += snapshot[i];
+        }
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("count", total);
+        body.put("meanMillis", total == 0 ? 0.0 : totalNanos.sum() / 1_000_000.0 / total);
+        body.put("p50Millis", percentile(snapshot, total, 0.50));
+        body.put("p99Millis", percentile(snapshot, total, 0.99));
+        body.put("p999Millis", percentile(snapshot, total, 0.999));
+
+        //Upper bound of each non-empty bucket in milliseconds -> count
+        Map<String, Long> buckets = new LinkedHashMap<>();
+        for(int i = 0; i < BUCKETS; i++){
+            if(snapshot[i] > 0){
+                buckets.put("le_" + upperBoundMillis(i), snapshot[i]);
+            }
+        }
+        body.put("buckets", buckets);
+        return body;
+    }
+
+    //Upper bound of the bucket holding the percentile, accurate to a factor of two
+    private static double percentile(long[] snapshot, long total, double percentile){
+        if(total == 0){
+            return 0.0;
+        }
+        long rank = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++){
+            seen += snapshot[i];
+            if(seen >= rank){
+                return upperBoundMillis(i);
+            }
+        }
+        return upperBoundMillis(BUCKETS - 1);
+    }
+
+    private static double upperBoundMillis(int bucket){
+        return (1L << (bucket + 1)) / 1000.0;
+    }
+}
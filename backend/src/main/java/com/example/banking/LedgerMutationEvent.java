@@ -0,0 +1,59 @@
+package com.example.banking;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+//JFR event for every balance change made by AccountService, covering lock wait, updates and the history insert
+//Costs almost nothing while no recording is running, e.g. jcmd <pid> JFR.start name=ledger duration=60s filename=ledger.jfr
+@Name("com.example.banking.LedgerMutation")
+@Label("Ledger Mutation")
+@Category({"Banking"})
+@Description("Deposit, withdraw or transfer applied to account balances")
+@StackTrace(false)
+public class LedgerMutationEvent extends Event {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("From Account")
+    long fromAccountNo;
+
+    @Label("To Account")
+    long toAccountNo;
+
+    @Label("Amount")
+    long amount;
+
+    @Label("Outcome")
+    String outcome = "success";
+
+    //Fields are only filled when a recording is listening
+    static LedgerMutationEvent start(String operation, Long fromAccountNo, Long toAccountNo, Long amount){
+        LedgerMutationEvent event = new LedgerMutationEvent();
+        if(event.isEnabled()){
+            event.operation = operation;
+            event.fromAccountNo = fromAccountNo == null ? 0 : fromAccountNo;
+            event.toAccountNo = toAccountNo == null ? 0 : toAccountNo;
+            event.amount = amount == null ? 0 : amount;
+            event.begin();
+        }
+        return event;
+    }
+
+    void failed(RuntimeException ex){
+        outcome = BankingMetrics.outcome(ex);
+    }
+
+    void finish(){
+        if(isEnabled()){
+            end();
+            if(shouldCommit()){
+                commit();
+            }
+        }
+    }
+}
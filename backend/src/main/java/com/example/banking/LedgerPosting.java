@@ -0,0 +1,61 @@
+package com.example.banking;
+
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+//One leg of a double-entry ledger entry, rows are only ever inserted
+//Amounts are signed from the account's point of view, the legs of one entry always sum to zero
+//Deposits and withdrawals are balanced against the bank's cash account (account number 0)
+@Entity
+@Table(name = "ledger_postings", indexes = {
+        @Index(name = "idx_posting_account", columnList = "accountNo, postingId")
+}, uniqueConstraints = @UniqueConstraint(name = "uk_posting_entry_account", columnNames = {"entryId", "accountNo"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LedgerPosting {
+
+    public static final long CASH_ACCOUNT_NO = 0L;
+
+    public static final String DEPOSIT = "DEPOSIT";
+    public static final String WITHDRAW = "WITHDRAW";
+    public static final String TRANSFER = "TRANSFER";
+    //Monthly interest, paid out of the cash account like a deposit
+    public static final String INTEREST = "INTEREST";
+    //Balance an account already had when the ledger was introduced
+    public static final String OPENING = "OPENING";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long postingId;
+
+    //Shared by every leg of the same entry
+    @Column(nullable = false, length = 40)
+    private String entryId;
+
+    @Column(nullable = false)
+    private Long accountNo;
+
+    //Positive credits the account, negative debits it
+    @Column(nullable = false)
+    private Long amount;
+
+    @Column(nullable = false, length = 16)
+    private String entryType;
+
+    @Column(nullable = false)
+    private LocalDateTime postedAt;
+
+}
@@ -0,0 +1,20 @@
+package com.example.banking;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface LedgerPostingRepository extends JpaRepository<LedgerPosting,Long> {
+
+    //Balance derived from the ledger, what BankAccount.balance must equal
+    @Query("select coalesce(sum(p.amount), 0) from LedgerPosting p where p.accountNo = :accountNo")
+    long sumByAccountNo(@Param("accountNo") Long accountNo);
+
+    //Latest postings of one account for audits, newest first
+    List<LedgerPosting> findTop200ByAccountNoOrderByPostingIdDesc(Long accountNo);
+
+}
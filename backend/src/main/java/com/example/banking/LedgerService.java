@@ -0,0 +1,191 @@
+package com.example.banking;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.transaction.Transactional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+//Append-only double-entry ledger, the source of truth for balances
+//BankAccount.balance is a cached projection of the postings: still updated with the conditional UPDATE so the
+//balance check stays a single statement, and rebuildable from the ledger at any time
+@Service
+public class LedgerService {
+
+    private static final String INSERT_SQL =
+            "insert into ledger_postings (entry_id, account_no, amount, entry_type, posted_at) values (?, ?, ?, ?, ?)";
+    private static final int BATCH_SIZE = 500;
+
+    //Opening entries for accounts that have a balance but no postings yet, both legs in one statement
+    //The SELECT is materialized before the insert and reads bank_account with shared locks,
+    //so it waits for in-flight postings on the same rows and running it twice adds nothing
+    private static final String OPENING_CANDIDATES =
+            " from bank_account a where a.balance <> 0"
+                    + " and not exists (select 1 from ledger_postings p where p.account_no = a.account_no)";
+    private static final String BACKFILL_SQL =
+            "insert into ledger_postings (entry_id, account_no, amount, entry_type, posted_at)"
+                    + " select concat('opening-', a.account_no), a.account_no, a.balance, 'OPENING', ?" + OPENING_CANDIDATES
+                    + " union all"
+                    + " select concat('opening-', a.account_no), 0, -a.balance, 'OPENING', ?" + OPENING_CANDIDATES;
+
+    //Accounts whose cached balance differs from the ledger, and entries whose legs do not sum to zero
+    //A sharded account's cached balance is its row plus its slots
+    private static final String MISMATCHED_BALANCES_SQL =
+            "select a.account_no, a.balance + coalesce(s.slot_balance, 0), coalesce(sum(p.amount), 0) as ledger_balance"
+                    + " from bank_account a"
+                    + " left join (select account_no, sum(balance) as slot_balance from account_balance_slots group by account_no) s"
+                    + " on s.account_no = a.account_no"
+                    + " left join ledger_postings p on p.account_no = a.account_no"
+                    + " group by a.account_no, a.balance, s.slot_balance"
+                    + " having a.balance + coalesce(s.slot_balance, 0) <> coalesce(sum(p.amount), 0)"
+                    + " order by a.account_no limit 100";
+    private static final String UNBALANCED_ENTRIES_SQL =
+            "select entry_id, sum(amount) from ledger_postings group by entry_id having sum(amount) <> 0 limit 100";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final LedgerPostingRepository ledgerPostingRepository;
+    private final AccountLockManager accountLockManager;
+    private final TransactionTemplate transactionTemplate;
+    private final BalanceSlotService balanceSlotService;
+    private static final Logger logger = LoggerFactory.getLogger(LedgerService.class);
+
+    public LedgerService(JdbcTemplate jdbcTemplate, LedgerPostingRepository ledgerPostingRepository,
+                         AccountLockManager accountLockManager, PlatformTransactionManager transactionManager,
+                         BalanceSlotService balanceSlotService){
+        this.jdbcTemplate=jdbcTemplate;
+        this.ledgerPostingRepository=ledgerPostingRepository;
+        this.accountLockManager=accountLockManager;
+        this.balanceSlotService=balanceSlotService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public record Leg(Long accountNo, long amount) {
+    }
+
+    public record Entry(String entryType, List<Leg> legs) {
+    }
+
+    public static Entry deposit(Long accountNo, long amount){
+        return new Entry(LedgerPosting.DEPOSIT, List.of(new Leg(LedgerPosting.CASH_ACCOUNT_NO, -amount), new Leg(accountNo, amount)));
+    }
+
+    public static Entry withdraw(Long accountNo, long amount){
+        return new Entry(LedgerPosting.WITHDRAW, List.of(new Leg(accountNo, -amount), new Leg(LedgerPosting.CASH_ACCOUNT_NO, amount)));
+    }
+
+    public static Entry interest(Long accountNo, long amount){
+        return new Entry(LedgerPosting.INTEREST, List.of(new Leg(LedgerPosting.CASH_ACCOUNT_NO, -amount), new Leg(accountNo, amount)));
+    }
+
+    public static Entry transfer(Long fromAccountNo, Long toAccountNo, long amount){
+        return new Entry(LedgerPosting.TRANSFER, List.of(new Leg(fromAccountNo, -amount), new Leg(toAccountNo, amount)));
+    }
+
+    //Joins the caller's transaction, the postings commit or roll back with the balance updates
+    public void post(Entry entry){
+        postAll(List.of(entry));
+    }
+
+    //Every leg of every entry in one JDBC batch
+    public void postAll(List<Entry> entries){
+        if(entries.isEmpty()){
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>(entries.size() * 2);
+        for(Entry entry : entries){
+            long sum = 0;
+            String entryId = UUID.randomUUID().toString();
+            for(Leg leg : entry.legs()){
+                sum += leg.amount();
+                rows.add(new Object[]{entryId, leg.accountNo(), leg.amount(), entry.entryType(), now});
+            }
+            if(sum != 0){
+                throw new IllegalStateException("Unbalanced " + entry.entryType() + " entry, legs sum to " + sum);
+            }
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, rows, BATCH_SIZE, (ps, row) -> {
+            ps.setString(1, (String) row[0]);
+            ps.setLong(2, (Long) row[1]);
+            ps.setLong(3, (Long) row[2]);
+            ps.setString(4, (String) row[3]);
+            ps.setTimestamp(5, (Timestamp) row[4]);
+        });
+    }
+
+    //Overwrites the cached balance with the ledger sum, under the account's stripe lock
+    //Slots of a sharded account are emptied into the row first, the ledger sum then goes on the row alone
+    @Transactional
+    public Map<String, Object> rebuildBalance(Long accountNo){
+        accountLockManager.lockForTransaction(accountNo);
+        Long cached = jdbcTemplate.query("select balance from bank_account where account_no = ? for update",
+                rs -> rs.next() ? rs.getLong(1) : null, accountNo);
+        if(cached == null){
+            throw new AccountNotFoundException("Account not found with Account Number :" + accountNo);
+        }
+        long slotBalance = balanceSlotService.takeSlots(accountNo);
+        long previous = cached + slotBalance;
+        long ledgerBalance = ledgerPostingRepository.sumByAccountNo(accountNo);
+        if(ledgerBalance != cached || slotBalance != 0){
+            jdbcTemplate.update("update bank_account set balance = ?, version = version + 1 where account_no = ?", ledgerBalance, accountNo);
+        }
+        if(ledgerBalance != previous){
+            logger.warn("Balance of Account No {} rebuilt from the ledger, {} -> {}", accountNo, previous, ledgerBalance);
+        }
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("accountNo", accountNo);
+        body.put("previousBalance", previous);
+        body.put("balance", ledgerBalance);
+        body.put("changed", ledgerBalance != previous);
+        return body;
+    }
+
+    //Full audit, scans the whole ledger, meant for an admin or a nightly job
+    public Map<String, Object> verify(){
+        List<Map<String, Object>> mismatched = jdbcTemplate.query(MISMATCHED_BALANCES_SQL, (rs, rowNum) -> {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("accountNo", rs.getLong(1));
+            row.put("balance", rs.getLong(2));
+            row.put("ledgerBalance", rs.getLong(3));
+            return row;
+        });
+        List<Map<String, Object>> unbalanced = jdbcTemplate.query(UNBALANCED_ENTRIES_SQL, (rs, rowNum) -> {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("entryId", rs.getString(1));
+            row.put("sum", rs.getLong(2));
+            return row;
+        });
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("consistent", mismatched.isEmpty() && unbalanced.isEmpty());
+        body.put("mismatchedBalances", mismatched);
+        body.put("unbalancedEntries", unbalanced);
+        return body;
+    }
+
+    public List<LedgerPosting> recentPostings(Long accountNo){
+        return ledgerPostingRepository.findTop200ByAccountNoOrderByPostingIdDesc(accountNo);
+    }
+
+    //Runs before the web server takes traffic, gives pre-ledger balances an opening entry
+    @PostConstruct
+    public void backfillOpeningBalances(){
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        Integer inserted = transactionTemplate.execute(status -> jdbcTemplate.update(BACKFILL_SQL, now, now));
+        if(inserted != null && inserted > 0){
+            logger.info("Ledger backfill created opening entries for {} accounts", inserted / 2);
+        }
+    }
+}
@@ -0,0 +1,449 @@
+package com.example.banking;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongPredicate;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+//Append-only journal in memory-mapped segment files, the codec turns each record into its payload bytes
+//Records are [length][crc32][payload], positions are logical offsets: segment index * segment size + offset in the segment
+//Group commit: one flusher thread forces whatever was appended since its last force, and every waiter it covers is released at once
+public class MappedJournal<T> implements Closeable {
+
+    private static final int HEADER_BYTES = 8;
+    private static final int END_OF_SEGMENT = -1;
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    private final Path directory;
+    private final String name;
+    private final String segmentPrefix;
+    private final int segmentSize;
+    private final Codec<T> codec;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    private final Condition forced = lock.newCondition();
+
+    //Writer side, guarded by lock
+    private MappedByteBuffer segment;
+    private long segmentIndex;
+    private long writePosition;
+    private long durablePosition;
+    private RuntimeException failure;
+    private boolean closed;
+
+    //Reader side, only used by the single draining thread
+    private MappedByteBuffer readSegment;
+    private long readSegmentIndex = -1;
+    private long oldestSegment;
+
+    private final Thread flusher;
+    private final LongAdder forces = new LongAdder();
+
+    public interface Codec<T> {
+        byte[] encode(T record);
+
+        T decode(byte[] payload);
+    }
+
+    //positions[i] is where records[i] starts
+    public record Batch<T>(List<T> records, long[] positions, long endPosition) {
+    }
+
+    //Positions taken by one append, every record of it starts in [start, end)
+    public record Range(long start, long end) {
+    }
+
+    //Opens the journal and finds its end, scanning from the checkpoint; a torn record at the tail is cut off
+    //The name prefixes the segment files, several journals can share a directory
+    public MappedJournal(Path directory, String name, int segmentSize, long checkpoint, Codec<T> codec) throws IOException {
+        this.directory = directory;
+        this.name = name;
+        this.segmentPrefix = name + "-";
+        this.segmentSize = segmentSize;
+        this.codec = codec;
+        Files.createDirectories(directory);
+
+        long position = recover(checkpoint);
+        this.segmentIndex = position / segmentSize;
+        this.segment = map(segmentIndex, FileChannel.MapMode.READ_WRITE);
+        this.writePosition = position;
+        this.durablePosition = position;
+        this.oldestSegment = checkpoint / segmentSize;
+
+        //Anything past the recovered end was never durable, zeroed so a later scan cannot mistake it for records
+        for(int offset = offset(position); offset + Long.BYTES <= segmentSize; offset += Long.BYTES){
+            if(segment.getLong(offset) != 0){
+                segment.putLong(offset, 0);
+            }
+        }
+        segment.force();
+        deleteSegments(index -> index < oldestSegment || index > segmentIndex);
+
+        this.flusher = new Thread(this::flushLoop, name + "-journal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    //Appends the records back to back and returns the position after the last one, durable once awaitDurable() says so
+    public long append(List<T> records){
+        return appendRange(records).end();
+    }
+
+    public Range appendRange(List<T> records){
+        List<byte[]> payloads = records.stream().map(codec::encode).toList();
+        lock.lock();
+        try {
+            if(failure != null){
+                throw new IllegalStateException("Journal " + name + " has failed", failure);
+            }
+            if(closed){
+                throw new IllegalStateException("Journal " + name + " is closed");
+            }
+            long start = writePosition;
+            for(byte[] payload : payloads){
+                if(payload.length > segmentSize - HEADER_BYTES - Integer.BYTES){
+                    throw new IllegalArgumentException("Record of " + payload.length + " bytes does not fit a segment of journal " + name);
+                }
+                if(offset(writePosition) + HEADER_BYTES + payload.length > segmentSize){
+                    roll();
+                }
+                int offset = offset(writePosition);
+                segment.put(offset + HEADER_BYTES, payload);
+                segment.putInt(offset + Integer.BYTES, checksum(payload));
+                //Length last, a zero length marks the end of the written records
+                segment.putInt(offset, payload.length);
+                writePosition += HEADER_BYTES + payload.length;
+            }
+            appended.signal();
+            return new Range(start, writePosition);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //False if the journal failed or the timeout passed first, the records' fate is then unknown
+    //A timeout fails the journal too and the records are wiped, but a force still in flight at that moment may land them anyway;
+    //the caller must give up on them rather than persist them another way, or they can show up twice after a restart
+    public boolean awaitDurable(long position, long timeout, TimeUnit unit){
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while(durablePosition < position){
+                if(failure != null){
+                    return false;
+                }
+                if(nanos <= 0){
+                    fail(new IllegalStateException("Journal " + name + " fsync timed out after " + unit.toMillis(timeout) + " ms"));
+                    return false;
+                }
+                nanos = forced.awaitNanos(nanos);
+            }
+            return true;
+        } catch (InterruptedException ex){
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //Durable records from the position on, at most maxRecords of them
+    public Batch<T> read(long position, int maxRecords){
+        return read(position, maxRecords, Long.MAX_VALUE);
+    }
+
+    //Same, stopping before the first record that starts at or after the limit, which must be a record boundary
+    public Batch<T> read(long position, int maxRecords, long limit){
+        lock.lock();
+        try {
+            limit = Math.min(limit, durablePosition);
+        } finally {
+            lock.unlock();
+        }
+
+        List<T> records = new ArrayList<>(Math.min(maxRecords, 1024));
+        long[] positions = new long[Math.min(maxRecords, 1024)];
+        while(records.size() < maxRecords && position < limit){
+            long index = position / segmentSize;
+            int offset = (int) (position % segmentSize);
+            MappedByteBuffer buffer = offset + Integer.BYTES > segmentSize ? null : readSegment(index);
+            int length = buffer == null ? END_OF_SEGMENT : buffer.getInt(offset);
+            if(length == END_OF_SEGMENT){
+                position = (index + 1) * segmentSize;
+                continue;
+            }
+            byte[] payload = payload(buffer, offset, length);
+            if(payload == null){
+                throw new IllegalStateException("Corrupt record in journal " + name + " at position " + position);
+            }
+            if(records.size() == positions.length){
+                positions = Arrays.copyOf(positions, Math.min(maxRecords, positions.length * 2));
+            }
+            positions[records.size()] = position;
+            records.add(codec.decode(payload));
+            position += HEADER_BYTES + length;
+        }
+        return new Batch<>(records, Arrays.copyOf(positions, records.size()), position);
+    }
+
+    //Segments entirely before the position are drained and can go
+    public void release(long position){
+        long firstKept = Math.min(position / segmentSize, segmentIndex());
+        for(; oldestSegment < firstKept; oldestSegment++){
+            if(readSegmentIndex == oldestSegment){
+                readSegment = null;
+                readSegmentIndex = -1;
+            }
+            try {
+                Files.deleteIfExists(segmentFile(oldestSegment));
+            } catch (IOException ex){
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
+    public long writePosition(){
+        lock.lock();
+        try {
+            return writePosition;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean failed(){
+        lock.lock();
+        try {
+            return failure != null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long forces(){
+        return forces.sum();
+    }
+
+    //Forces what is left and stops the flusher
+    @Override
+    public void close(){
+        lock.lock();
+        try {
+            closed = true;
+            appended.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException ex){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flushLoop(){
+        while(true){
+            MappedByteBuffer target;
+            long position;
+            int length;
+            lock.lock();
+            try {
+                while(failure == null && !closed && writePosition == durablePosition){
+                    appended.await();
+                }
+                if(failure != null || writePosition == durablePosition){
+                    return;
+                }
+                target = segment;
+                position = writePosition;
+                length = offset(position);
+            } catch (InterruptedException ex){
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            //Appends keep going while the force runs, the next force picks them all up together
+            try {
+                target.force(0, length);
+                forces.increment();
+            } catch (RuntimeException ex){
+                lock.lock();
+                try {
+                    fail(ex);
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+
+            lock.lock();
+            try {
+                if(failure != null){
+                    return;
+                }
+                durablePosition = Math.max(durablePosition, position);
+                forced.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    //Called with the lock held; the current segment is forced before the next one is mapped, so segments become durable in order
+    private void roll(){
+        int offset = offset(writePosition);
+        if(offset + Integer.BYTES <= segmentSize){
+            segment.putInt(offset, END_OF_SEGMENT);
+        }
+        try {
+            segment.force();
+            forces.increment();
+        } catch (RuntimeException ex){
+            fail(ex);
+            throw ex;
+        }
+        durablePosition = writePosition;
+        forced.signalAll();
+
+        try {
+            segment = map(segmentIndex + 1, FileChannel.MapMode.READ_WRITE);
+        } catch (IOException ex){
+            UncheckedIOException cause = new UncheckedIOException(ex);
+            fail(cause);
+            throw cause;
+        }
+        segmentIndex++;
+        writePosition = segmentIndex * segmentSize;
+        durablePosition = writePosition;
+    }
+
+    //Called with the lock held; records that never became durable are wiped and their waiters told they are not durable
+    private void fail(RuntimeException ex){
+        if(failure == null){
+            failure = ex;
+            for(int offset = offset(durablePosition); offset < offset(writePosition); offset++){
+                segment.put(offset, (byte) 0);
+            }
+            writePosition = durablePosition;
+        }
+        forced.signalAll();
+        appended.signal();
+    }
+
+    private long recover(long checkpoint) throws IOException {
+        long position = checkpoint;
+        while(true){
+            long index = position / segmentSize;
+            int offset = (int) (position % segmentSize);
+            if(!Files.exists(segmentFile(index))){
+                return position;
+            }
+            if(offset + Integer.BYTES > segmentSize){
+                position = (index + 1) * segmentSize;
+                continue;
+            }
+            //A segment cut short, e.g. by a crash while its file was being extended, is padded back with zeros,
+            //which read as the end of the records
+            if(Files.size(segmentFile(index)) < segmentSize){
+                map(index, FileChannel.MapMode.READ_WRITE);
+            }
+            MappedByteBuffer buffer = map(index, FileChannel.MapMode.READ_ONLY);
+            int length = buffer.getInt(offset);
+            if(length == END_OF_SEGMENT){
+                position = (index + 1) * segmentSize;
+                continue;
+            }
+            if(payload(buffer, offset, length) == null){
+                return position;
+            }
+            position += HEADER_BYTES + length;
+        }
+    }
+
+    //Null when there is no complete record at the offset: unwritten, torn or failing its checksum
+    private byte[] payload(ByteBuffer buffer, int offset, int length){
+        if(length <= 0 || offset + HEADER_BYTES + length > segmentSize){
+            return null;
+        }
+        byte[] payload = new byte[length];
+        buffer.get(offset + HEADER_BYTES, payload);
+        return checksum(payload) == buffer.getInt(offset + Integer.BYTES) ? payload : null;
+    }
+
+    private MappedByteBuffer readSegment(long index){
+        if(readSegmentIndex != index){
+            try {
+                readSegment = map(index, FileChannel.MapMode.READ_ONLY);
+            } catch (IOException ex){
+                throw new UncheckedIOException(ex);
+            }
+            readSegmentIndex = index;
+        }
+        return readSegment;
+    }
+
+    private MappedByteBuffer map(long index, FileChannel.MapMode mode) throws IOException {
+        Path file = segmentFile(index);
+        if(mode == FileChannel.MapMode.READ_WRITE){
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return channel.map(mode, 0, segmentSize);
+            }
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(mode, 0, segmentSize);
+        }
+    }
+
+    private void deleteSegments(LongPredicate doomed) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for(Path file : files.toList()){
+                String fileName = file.getFileName().toString();
+                if(fileName.startsWith(segmentPrefix) && fileName.endsWith(SEGMENT_SUFFIX)
+                        && doomed.test(Long.parseLong(fileName.substring(segmentPrefix.length(), fileName.length() - SEGMENT_SUFFIX.length())))){
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private long segmentIndex(){
+        lock.lock();
+        try {
+            return segmentIndex;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //Offset inside the current segment, equal to the segment size when the last record ends exactly at its end
+    private int offset(long position){
+        return (int) (position - segmentIndex * segmentSize);
+    }
+
+    private Path segmentFile(long index){
+        return directory.resolve(String.format("%s%016d%s", segmentPrefix, index, SEGMENT_SUFFIX));
+    }
+
+    private static int checksum(byte[] payload){
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+}
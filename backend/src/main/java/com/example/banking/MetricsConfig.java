@@ -0,0 +1,26 @@
+package com.example.banking;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+@Configuration
+public class MetricsConfig {
+
+    //Static so it is registered before the DataSource bean is created
+    //Wraps the pooled DataSource so every statement is counted in DbRoundTrips; Hikari stays reachable through unwrap()
+    @Bean
+    public static BeanPostProcessor dbRoundTripDataSourcePostProcessor(){
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if(bean instanceof DataSource dataSource){
+                    return DbRoundTrips.wrap(dataSource);
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.banking;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.OptimisticLockException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+//Reruns a whole money operation, transaction included, when a @Version check fails
+//Bounded attempts with full-jitter exponential backoff, so colliding retries spread out instead of colliding again
+//Only OPTIMISTIC mode produces conflicts, in the other modes this is a plain call
+@Component
+public class OptimisticRetry {
+
+    private final ConcurrencyMode mode;
+    private final int maxAttempts;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+    private final MeterRegistry meterRegistry;
+
+    //Conflict and exhaustion counters per operation, created once and reused
+    private final Map<String, Counter> conflictCounters = new ConcurrentHashMap<>();
+    private final Map<String, Counter> exhaustedCounters = new ConcurrentHashMap<>();
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+    private static final Logger logger = LoggerFactory.getLogger(OptimisticRetry.class);
+
+    public OptimisticRetry(@Value("${banking.concurrency.mode:ATOMIC}") ConcurrencyMode mode,
+                           @Value("${banking.concurrency.max-attempts:5}") int maxAttempts,
+                           @Value("${banking.concurrency.base-backoff-ms:5}") long baseBackoffMillis,
+                           @Value("${banking.concurrency.max-backoff-ms:100}") long maxBackoffMillis,
+                           MeterRegistry meterRegistry){
+        if(maxAttempts <= 0){
+            throw new IllegalArgumentException("Concurrency max attempts must be Greater than 0");
+        }
+        this.mode=mode;
+        this.maxAttempts=maxAttempts;
+        this.baseBackoffMillis=baseBackoffMillis;
+        this.maxBackoffMillis=maxBackoffMillis;
+        this.meterRegistry=meterRegistry;
+        logger.info("Account concurrency mode {}", mode);
+    }
+
+    public ConcurrencyMode mode(){
+        return mode;
+    }
+
+    //The work must start its own transaction, a retry inside a failed transaction would only fail again
+    public <T> T run(String operation, Supplier<T> work){
+        if(mode != ConcurrencyMode.OPTIMISTIC){
+            return work.get();
+        }
+        for(int attempt = 1; ; attempt++){
+            attempts.increment();
+            try {
+                return work.get();
+            } catch (RuntimeException ex){
+                if(!isConflict(ex)){
+                    throw ex;
+                }
+                conflicts.increment();
+                counter(conflictCounters, "banking.concurrency.conflicts", operation).increment();
+                if(attempt >= maxAttempts){
+                    exhausted.increment();
+                    counter(exhaustedCounters, "banking.concurrency.retries.exhausted", operation).increment();
+                    logger.warn("{} gave up after {} optimistic conflicts", operation, attempt);
+                    throw new ServiceBusyException("Account is busy, please retry", 1);
+                }
+                backoff(attempt);
+            }
+        }
+    }
+
+    public Map<String, Object> stats(){
+        long attemptCount = attempts.sum();
+        long conflictCount = conflicts.sum();
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("mode", mode);
+        body.put("attempts", attemptCount);
+        body.put("conflicts", conflictCount);
+        body.put("conflictRate", attemptCount == 0 ? 0.0 : (double) conflictCount / attemptCount);
+        body.put("retriesExhausted", exhausted.sum());
+        return body;
+    }
+
+    //Sleeps a random time up to base * 2^(attempt-1), capped
+    private void backoff(int attempt){
+        long ceiling = Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(attempt - 1, 20));
+        long sleep = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        try {
+            TimeUnit.MILLISECONDS.sleep(sleep);
+        } catch (InterruptedException ex){
+            Thread.currentThread().interrupt();
+            throw new ServiceBusyException("Interrupted while retrying", 1);
+        }
+    }
+
+    private Counter counter(Map<String, Counter> counters, String name, String operation){
+        return counters.computeIfAbsent(operation, key -> Counter.builder(name)
+                .tag("operation", key)
+                .register(meterRegistry));
+    }
+
+    //Spring translates the Hibernate failure at flush, a failure at commit may arrive wrapped
+    private static boolean isConflict(Throwable ex){
+        for(Throwable cause = ex; cause != null; cause = cause.getCause()){
+            if(cause instanceof OptimisticLockingFailureException || cause instanceof OptimisticLockException){
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.banking;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+//Runs BCrypt on a dedicated pool sized to the cores, so password hashing cannot take over the request threads
+//When the queue is full callers get a ServiceBusyException (503 + Retry-After) instead of waiting
+@Service
+public class PasswordHashingService implements MeterBinder {
+
+    private static final Pattern BCRYPT_COST = Pattern.compile("^\\$2[abxy]?\\$(\\d{2})\\$");
+
+    private final PasswordEncoder passwordEncoder;
+    private final int strength;
+    private final int retryAfterSeconds;
+    private final ThreadPoolExecutor executor;
+
+    private final LatencyHistogram hashTimes = new LatencyHistogram();
+    private final LatencyHistogram verifyTimes = new LatencyHistogram();
+    private final LatencyHistogram queueWaitTimes = new LatencyHistogram();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder rehashed = new LongAdder();
+    //Set once the meter registry binds this service, until then only the local histograms are recorded
+    private volatile Timer hashTimer;
+    private volatile Timer verifyTimer;
+    private static final Logger logger = LoggerFactory.getLogger(PasswordHashingService.class);
+
+    public PasswordHashingService(PasswordEncoder passwordEncoder,
+                                  @Value("${banking.bcrypt.strength:10}") int strength,
+                                  @Value("${banking.bcrypt.threads:0}") int threads,
+                                  @Value("${banking.bcrypt.queue-capacity:64}") int queueCapacity,
+                                  @Value("${banking.bcrypt.retry-after-seconds:1}") int retryAfterSeconds){
+        this.passwordEncoder=passwordEncoder;
+        this.strength=strength;
+        this.retryAfterSeconds=retryAfterSeconds;
+
+        //BCrypt is pure CPU, more threads than cores only adds queueing inside the scheduler
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadNo = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "bcrypt-" + threadNo.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        logger.info("Password hashing pool started with {} threads and queue capacity {}", poolSize, queueCapacity);
+    }
+
+    public String encode(String rawPassword){
+        return run(() -> passwordEncoder.encode(rawPassword), hashTimes, hashTimer);
+    }
+
+    public boolean matches(String rawPassword, String encodedPassword){
+        return run(() -> passwordEncoder.matches(rawPassword, encodedPassword), verifyTimes, verifyTimer);
+    }
+
+    //True when the hash was made with a different cost than the configured one, checked after a successful login
+    public boolean needsRehash(String encodedPassword){
+        if(encodedPassword == null){
+            return false;
+        }
+        Matcher matcher = BCRYPT_COST.matcher(encodedPassword);
+        return matcher.find() && Integer.parseInt(matcher.group(1)) != strength;
+    }
+
+    public void recordRehash(){
+        rehashed.increment();
+    }
+
+    public Map<String, Object> stats(){
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("strength", strength);
+        body.put("poolSize", executor.getMaximumPoolSize());
+        body.put("activeThreads", executor.getActiveCount());
+        body.put("queued", executor.getQueue().size());
+        body.put("queueCapacity", executor.getQueue().size() + executor.getQueue().remainingCapacity());
+        body.put("rejected", rejected.sum());
+        body.put("rehashed", rehashed.sum());
+        body.put("hash", hashTimes.snapshot());
+        body.put("verify", verifyTimes.snapshot());
+        body.put("queueWait", queueWaitTimes.snapshot());
+        return body;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        hashTimer = Timer.builder("banking.bcrypt")
+                .tag("operation", "hash")
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .publishPercentileHistogram()
+                .register(registry);
+        verifyTimer = Timer.builder("banking.bcrypt")
+                .tag("operation", "verify")
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .publishPercentileHistogram()
+                .register(registry);
+        Gauge.builder("banking.bcrypt.queued", executor, pool -> pool.getQueue().size())
+                .description("Password hashing tasks waiting for a thread")
+                .register(registry);
+        FunctionCounter.builder("banking.bcrypt.rejected", rejected, LongAdder::sum)
+                .description("Password hashing requests turned away with 503")
+                .register(registry);
+        FunctionCounter.builder("banking.bcrypt.rehashed", rehashed, LongAdder::sum)
+                .description("Passwords rehashed after a cost change")
+                .register(registry);
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        executor.shutdown();
+    }
+
+    private <T> T run(Callable<T> work, LatencyHistogram histogram, Timer timer){
+        long submitted = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                long started = System.nanoTime();
+                queueWaitTimes.record(started - submitted);
+                try {
+                    return work.call();
+                } finally {
+                    long elapsed = System.nanoTime() - started;
+                    histogram.record(elapsed);
+                    if(timer != null){
+                        timer.record(elapsed, TimeUnit.NANOSECONDS);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex){
+            rejected.increment();
+            throw new ServiceBusyException("Too many requests, please retry shortly", retryAfterSeconds);
+        }
+
+        try {
+            return future.get();
+        } catch (InterruptedException ex){
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing password");
+        } catch (ExecutionException ex){
+            if(ex.getCause() instanceof RuntimeException runtimeException){
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Password hashing failed", ex.getCause());
+        } finally {
+            //Request-side view of BCrypt, queue wait included
+            RequestTimings.record("bcrypt", System.nanoTime() - submitted);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.banking;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+//Last few transactions per account, kept in fixed-size ring buffers so responses and dashboards skip the history query
+//Filled lazily on a miss, appended to after commit on the write path, least recently used accounts are evicted first
+//Writes made by other nodes are not seen here, entries expire after the TTL so they show up within that window
+@Component
+public class RecentTransactionsCache implements MeterBinder {
+
+    public static final int PER_ACCOUNT = 5;
+
+    private static final Comparator<Entry> NEWEST_FIRST = Comparator
+            .comparing((Entry entry) -> entry.info().getTimeStamp(), Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(Entry::transactionId, Comparator.reverseOrder());
+
+    private final long ttlNanos;
+    //Access-ordered, so the eldest entry is the least recently used account
+    private final LinkedHashMap<Long, Ring> rings;
+    //Bumped by every committed write, a fill computed before a write would be missing it and is dropped
+    private final AtomicLong writeStamp = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public RecentTransactionsCache(@Value("${banking.recent-cache.max-accounts:50000}") int maxAccounts,
+                                   @Value("${banking.recent-cache.ttl-seconds:60}") long ttlSeconds){
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.rings = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Ring> eldest) {
+                return size() > maxAccounts;
+            }
+        };
+    }
+
+    //Read before querying the database, handed back to fill()
+    public long stamp(){
+        return writeStamp.get();
+    }
+
+    //Newest first, or null when the account is not cached or its entry has expired
+    public List<TransactionInfo> get(Long accountNo){
+        synchronized (rings){
+            Ring ring = rings.get(accountNo);
+            if(ring != null && System.nanoTime() - ring.loadedAt <= ttlNanos){
+                hits.increment();
+                return ring.snapshot();
+            }
+            if(ring != null){
+                rings.remove(accountNo);
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    //Rows as read from the database, only committed ones; ignored if a write committed since the stamp was taken
+    public void fill(Long accountNo, List<TransactionHistory> rows, long stamp){
+        synchronized (rings){
+            if(writeStamp.get() != stamp){
+                return;
+            }
+            Ring ring = new Ring(System.nanoTime());
+            for(int i = rows.size() - 1; i >= 0; i--){
+                ring.append(entry(rows.get(i)));
+            }
+            rings.put(accountNo, ring);
+        }
+    }
+
+    //Adds a freshly saved row once its transaction commits, nothing happens on rollback
+    public void appendAfterCommit(TransactionHistory row){
+        AfterCommit.run(() -> {
+            synchronized (rings){
+                writeStamp.incrementAndGet();
+                Ring ring = rings.get(row.getAccountNo());
+                if(ring != null){
+                    ring.append(entry(row));
+                }
+            }
+        });
+    }
+
+    //For bulk writes (JDBC batches), the accounts are simply dropped and refilled on the next read
+    public void evictAfterCommit(Collection<Long> accountNos){
+        AfterCommit.run(() -> {
+            synchronized (rings){
+                writeStamp.incrementAndGet();
+                accountNos.forEach(rings::remove);
+            }
+        });
+    }
+
+    public static TransactionInfo toInfo(TransactionHistory row){
+        return new TransactionInfo(row.getTransactionType(), row.getAmount(), row.getDescription(), row.getTimeStamp());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("banking.recent.cache", hits, LongAdder::sum)
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("banking.recent.cache", misses, LongAdder::sum)
+                .tag("result", "miss")
+                .register(registry);
+        Gauge.builder("banking.recent.cache.accounts", rings, cached -> {
+                    synchronized (cached){
+                        return cached.size();
+                    }
+                })
+                .register(registry);
+    }
+
+    private static Entry entry(TransactionHistory row){
+        return new Entry(row.getTransactionID() == null ? 0L : row.getTransactionID(), toInfo(row));
+    }
+
+    private record Entry(long transactionId, TransactionInfo info) {
+    }
+
+    //Fixed-size ring, the next slot overwrites the oldest entry once full
+    private static final class Ring {
+        private final Entry[] slots = new Entry[PER_ACCOUNT];
+        private final long loadedAt;
+        private int next;
+        private int size;
+
+        Ring(long loadedAt){
+            this.loadedAt = loadedAt;
+        }
+
+        void append(Entry entry){
+            //A fill racing with the commit may already hold this row; write-behind rows have no id yet and are never in a fill
+            for(int i = 0; i < size && entry.transactionId() != 0; i++){
+                if(slots[i].transactionId() == entry.transactionId()){
+                    return;
+                }
+            }
+            slots[next] = entry;
+            next = (next + 1) % slots.length;
+            size = Math.min(size + 1, slots.length);
+        }
+
+        List<TransactionInfo> snapshot(){
+            List<Entry> entries = new ArrayList<>(size);
+            for(int i = 0; i < size; i++){
+                entries.add(slots[i]);
+            }
+            entries.sort(NEWEST_FIRST);
+            return entries.stream().map(Entry::info).toList();
+        }
+    }
+}
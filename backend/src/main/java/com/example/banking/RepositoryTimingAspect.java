@@ -0,0 +1,46 @@
+package com.example.banking;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+//Times every repository call into RequestTimings, e.g. UserRepository.findByEmail
+//Does nothing beyond a ThreadLocal check unless the request is being recorded
+@Aspect
+@Component
+public class RepositoryTimingAspect {
+
+    //Spring Data proxy class -> our repository interface name
+    private final Map<Class<?>, String> repositoryNames = new ConcurrentHashMap<>();
+
+    @Around("execution(* com.example.banking.*Repository.*(..))")
+    public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+        if(!RequestTimings.active()){
+            return joinPoint.proceed();
+        }
+        long start = System.nanoTime();
+        try {
+            return joinPoint.proceed();
+        } finally {
+            RequestTimings.record(repositoryName(joinPoint.getThis()) + "." + joinPoint.getSignature().getName(),
+                    System.nanoTime() - start);
+        }
+    }
+
+    //Inherited methods like findById are declared on CrudRepository, the span should name our interface instead
+    private String repositoryName(Object proxy){
+        return repositoryNames.computeIfAbsent(proxy.getClass(), type -> {
+            for(Class<?> candidate : ClassUtils.getAllInterfacesForClassAsSet(type)){
+                if(candidate.getPackageName().equals(RepositoryTimingAspect.class.getPackageName())){
+                    return candidate.getSimpleName();
+                }
+            }
+            return type.getSimpleName();
+        });
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.banking;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+//Where the current request spent its time, split into named spans (jwt, repository calls, bcrypt, json)
+//Only active while ServerTimingFilter records the request, otherwise record() is a ThreadLocal read and nothing else
+public final class RequestTimings {
+
+    private static final ThreadLocal<RequestTimings> CURRENT = new ThreadLocal<>();
+
+    //Span name -> {calls, total nanos}, in first-seen order
+    private final Map<String, long[]> spans = new LinkedHashMap<>();
+
+    private RequestTimings(){
+    }
+
+    static void start(){
+        CURRENT.set(new RequestTimings());
+    }
+
+    static RequestTimings stop(){
+        RequestTimings timings = CURRENT.get();
+        CURRENT.remove();
+        return timings;
+    }
+
+    public static boolean active(){
+        return CURRENT.get() != null;
+    }
+
+    public static void record(String span, long nanos){
+        RequestTimings timings = CURRENT.get();
+        if(timings != null){
+            long[] totals = timings.spans.computeIfAbsent(span, key -> new long[2]);
+            totals[0]++;
+            totals[1] += nanos;
+        }
+    }
+
+    //Server-Timing header value, e.g. jwt;dur=0.412, UserRepository.findByEmail;dur=1.203;desc="2 calls"
+    String toHeader(long totalNanos, long dbRoundTrips){
+        StringBuilder header = new StringBuilder();
+        spans.forEach((span, totals) -> {
+            header.append(span).append(";dur=").append(millis(totals[1]));
+            if(totals[0] > 1){
+                header.append(";desc=\"").append(totals[0]).append(" calls\"");
+            }
+            header.append(", ");
+        });
+        header.append("db;desc=\"").append(dbRoundTrips).append(" round trips\", ");
+        header.append("total;dur=").append(millis(totalNanos));
+        return header.toString();
+    }
+
+    private static String millis(long nanos){
+        return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.banking;
+
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "revoked_tokens", indexes = {
+        @Index(name = "idx_revoked_revoked_at", columnList = "revokedAt"),
+        @Index(name = "idx_revoked_expires_at", columnList = "expiresAt")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RevokedToken {
+
+    //JWT id (jti), or "user:<userId>" when every token of a user issued up to revokedAt is revoked
+    @Id
+    private String tokenId;
+
+    private Long userId;
+
+    private LocalDateTime revokedAt;
+
+    //Row can be pruned once the revoked token would have expired anyway
+    private LocalDateTime expiresAt;
+
+}
@@ -1,5 +1,6 @@
 package com.example.banking;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -21,9 +22,10 @@ public class SecurityConfig {
         this.jwtAuthFilter=jwtAuthFilter;
     }
 
+    //Raising the strength rehashes existing passwords on their next successful login
     @Bean
-    public PasswordEncoder passwordEncoder(){
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(@Value("${banking.bcrypt.strength:10}") int strength){
+        return new BCryptPasswordEncoder(strength);
     }
 
     @Bean
@@ -42,8 +44,12 @@ public class SecurityConfig {
                             "/api/users/login",
                             "/v3/api-docs/**",
                             "/swagger-ui/**",
-                            "/swagger-ui/index.html"
+                            "/swagger-ui/index.html",
+                            "/actuator/health",
+                            //Unauthenticated for the scraper, management.server.address keeps it on loopback
+                            "/actuator/prometheus"
                     ).permitAll()
+                    .requestMatchers("/actuator/**").hasRole("ADMIN")
                     .requestMatchers("/api/admin/**").hasRole("ADMIN")
                     .anyRequest().authenticated()
             )
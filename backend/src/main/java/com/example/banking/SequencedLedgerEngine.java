@@ -0,0 +1,1019 @@
+package com.example.banking;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+//Single-writer ledger core behind AccountService when banking.concurrency.mode=SEQUENCED
+//Balances live in primitive arrays indexed by a dense account id and only the sequencer thread touches them,
+//so a command is checked and applied with no locks and no database round trip
+//Request threads claim slots in a pre-allocated ring (multi-producer, one consumer); the sequencer takes every published slot,
+//applies it, appends the accepted commands to a memory-mapped journal in one write, and a request is acknowledged once
+//the journal's group commit has forced its position
+//MySQL is a projection: a scheduled job replays the journal into bank_account, ledger_postings and transaction_history
+//On start the state is the last snapshot, or MySQL when there is none, plus a replay of the journal after it
+//The engine owns the balances of the accounts it has seen, so one node per database runs in this mode
+@Component
+public class SequencedLedgerEngine implements MeterBinder {
+
+    static final byte OPEN = 1;
+    static final byte CLOSE = 2;
+    static final byte DEPOSIT = 3;
+    static final byte WITHDRAW = 4;
+    static final byte TRANSFER = 5;
+    //Read-only, answered in sequence but never journaled
+    static final byte BALANCE = 6;
+
+    private static final int MAX_BATCH = 4096;
+    private static final int SNAPSHOT_MAGIC = 0x42424e4b;
+    private static final String SNAPSHOT_FILE = "engine.snapshot";
+    private static final String HALTED_MESSAGE = "Ledger engine halted after a journal failure, the node must be restarted";
+
+    private static final String CHECKPOINT_SQL =
+            "update history_journal_checkpoints set position = ?, updated_at = ? where journal_id = ?";
+    private static final String UPDATE_BALANCE_SQL =
+            "update bank_account set balance = balance + ?, version = version + 1 where account_no = ?";
+    //Sharded accounts come in with their slots, the engine keeps one balance per account
+    private static final String LOAD_ACCOUNTS_SQL =
+            "select a.account_no, a.balance + coalesce((select sum(s.balance) from account_balance_slots s"
+                    + " where s.account_no = a.account_no), 0), a.account_type from bank_account a";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final LedgerService ledgerService;
+    private final TransactionHistoryWriter transactionHistoryWriter;
+    private final HistoryJournalCheckpointRepository checkpointRepository;
+    private final RecentTransactionsCache recentTransactionsCache;
+    private final TransactionTemplate projectionTransaction;
+
+    private final boolean enabled;
+    private final String journalId;
+    private final Path directory;
+    private final int segmentSize;
+    private final long fsyncTimeoutMillis;
+    private final int projectionBatchSize;
+
+    //Ring: a producer claims a sequence, fills the slot and publishes it by writing the sequence last
+    private final Slot[] ring;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private volatile long consumed = -1;
+    private volatile boolean sequencerIdle;
+    private volatile boolean running;
+    private volatile RuntimeException halted;
+    private Thread sequencer;
+
+    //Sequencer-owned state, never read by other threads while the sequencer runs
+    private final AccountIndex index = new AccountIndex();
+    private long[] accountNos = new long[1024];
+    private long[] balances = new long[1024];
+    private String[] accountTypes = new String[1024];
+    private int accountCount;
+    private volatile int liveAccounts;
+
+    private volatile MappedJournal<Command> journal;
+    private final AtomicReference<CompletableFuture<Snapshot>> snapshotRequest = new AtomicReference<>();
+    //Journal position the snapshot on disk was taken at, the journal is kept from there on
+    private volatile long snapshotPosition = Long.MAX_VALUE;
+    //Journal position up to which MySQL has the commands, only moved by the projection
+    private volatile long projectedPosition;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder projected = new LongAdder();
+    private static final Logger logger = LoggerFactory.getLogger(SequencedLedgerEngine.class);
+
+    public SequencedLedgerEngine(JdbcTemplate jdbcTemplate, LedgerService ledgerService,
+                                 TransactionHistoryWriter transactionHistoryWriter,
+                                 HistoryJournalCheckpointRepository checkpointRepository,
+                                 RecentTransactionsCache recentTransactionsCache,
+                                 PlatformTransactionManager transactionManager,
+                                 @Value("${banking.concurrency.mode:ATOMIC}") ConcurrencyMode concurrencyMode,
+                                 @Value("${banking.engine.journal-id:engine}") String journalId,
+                                 @Value("${banking.engine.dir:data/engine}") String directory,
+                                 @Value("${banking.engine.segment-mb:64}") int segmentMb,
+                                 @Value("${banking.engine.ring-size:65536}") int ringSize,
+                                 @Value("${banking.engine.fsync-timeout-ms:1000}") long fsyncTimeoutMillis,
+                                 @Value("${banking.engine.projection-batch-size:5000}") int projectionBatchSize){
+        if(ringSize <= 0){
+            throw new IllegalArgumentException("Engine ring size must be Greater than 0");
+        }
+        this.jdbcTemplate=jdbcTemplate;
+        this.ledgerService=ledgerService;
+        this.transactionHistoryWriter=transactionHistoryWriter;
+        this.checkpointRepository=checkpointRepository;
+        this.recentTransactionsCache=recentTransactionsCache;
+        this.projectionTransaction = new TransactionTemplate(transactionManager);
+        this.enabled = concurrencyMode == ConcurrencyMode.SEQUENCED;
+        this.journalId=journalId;
+        this.directory=Path.of(directory);
+        this.segmentSize = segmentMb * 1024 * 1024;
+        this.fsyncTimeoutMillis=fsyncTimeoutMillis;
+        this.projectionBatchSize=projectionBatchSize;
+
+        //Outside SEQUENCED mode the ring is never used, it stays at a token size
+        int size = enabled ? Math.max(Integer.highestOneBit(ringSize - 1) << 1, 2) : 2;
+        this.ring = new Slot[size];
+        for(int i = 0; i < ring.length; i++){
+            ring[i] = new Slot();
+        }
+        this.mask = ring.length - 1;
+    }
+
+    //One accepted command as journaled; at is the sequencer's clock when it was applied
+    //OPEN carries the opening balance in amount and the account in toAccountNo, CLOSE the account in fromAccountNo
+    public record Command(byte type, long fromAccountNo, long toAccountNo, long amount, String accountType, LocalDateTime at) {
+    }
+
+    public enum Status { APPLIED, FROM_NOT_FOUND, TO_NOT_FOUND, INSUFFICIENT }
+
+    //balance is the account's new balance, the source's for a transfer
+    public record Outcome(Status status, long balance, String accountType, Command command) {
+    }
+
+    public record Transfer(long fromAccountNo, long toAccountNo, long amount) {
+    }
+
+    private record Snapshot(long position, long[] accountNos, long[] balances, String[] accountTypes) {
+    }
+
+    private static final class Slot {
+        byte type;
+        long fromAccountNo;
+        long toAccountNo;
+        long amount;
+        String accountType;
+        Ticket ticket;
+        volatile long published = -1;
+    }
+
+    //Filled in by the sequencer, everything is written before done
+    private static final class Ticket {
+        final Thread waiter = Thread.currentThread();
+        Status status;
+        boolean failed;
+        long balance;
+        String accountType;
+        Command command;
+        long position;
+        volatile boolean done;
+    }
+
+    //Rebuilds the state and starts the sequencer before the web server takes traffic
+    @PostConstruct
+    public void open() throws IOException {
+        if(!enabled){
+            return;
+        }
+        long started = System.nanoTime();
+        HistoryJournalCheckpoint checkpoint = checkpointRepository.findById(journalId)
+                .orElseGet(() -> checkpointRepository.save(new HistoryJournalCheckpoint(journalId, 0L, LocalDateTime.now())));
+        projectedPosition = checkpoint.getPosition();
+
+        Snapshot snapshot = readSnapshot();
+        long replayFrom;
+        if(snapshot != null){
+            for(int i = 0; i < snapshot.accountNos().length; i++){
+                register(snapshot.accountNos()[i], snapshot.balances()[i], snapshot.accountTypes()[i]);
+            }
+            snapshotPosition = snapshot.position();
+            replayFrom = snapshot.position();
+        } else {
+            //MySQL holds every command up to the projection checkpoint
+            jdbcTemplate.query(LOAD_ACCOUNTS_SQL, rs -> {
+                register(rs.getLong(1), rs.getLong(2), rs.getString(3));
+            });
+            replayFrom = projectedPosition;
+        }
+
+        journal = new MappedJournal<>(directory, "engine", segmentSize, Math.min(replayFrom, projectedPosition), CODEC);
+        long replayed = 0;
+        long position = replayFrom;
+        while(true){
+            MappedJournal.Batch<Command> batch = journal.read(position, projectionBatchSize);
+            batch.records().forEach(this::mutate);
+            replayed += batch.records().size();
+            position = batch.endPosition();
+            if(batch.records().isEmpty()){
+                break;
+            }
+        }
+        liveAccounts = index.size();
+
+        running = true;
+        sequencer = new Thread(this::sequence, "ledger-sequencer");
+        sequencer.setDaemon(true);
+        sequencer.start();
+        logger.info("Ledger engine started with {} accounts from {}, {} commands replayed, {} ms",
+                index.size(), snapshot != null ? "snapshot" : "MySQL", replayed, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    public boolean enabled(){
+        return enabled;
+    }
+
+    public Outcome deposit(long accountNo, long amount){
+        return execute(DEPOSIT, 0, accountNo, amount);
+    }
+
+    public Outcome withdraw(long accountNo, long amount){
+        return execute(WITHDRAW, accountNo, 0, amount);
+    }
+
+    public Outcome transfer(long fromAccountNo, long toAccountNo, long amount){
+        return execute(TRANSFER, fromAccountNo, toAccountNo, amount);
+    }
+
+    //Publishes every transfer before waiting on any, so they are sequenced back to back and share journal forces
+    //Accounts the engine has not seen are brought in first, retrying one transfer later would reorder the batch
+    public List<Outcome> transferAll(List<Transfer> transfers){
+        if(!enabled){
+            throw new IllegalStateException("Ledger engine is only available in SEQUENCED mode");
+        }
+        Set<Long> accountNos = new LinkedHashSet<>();
+        transfers.forEach(transfer -> {
+            accountNos.add(transfer.fromAccountNo());
+            accountNos.add(transfer.toAccountNo());
+        });
+        List<Ticket> lookups = new ArrayList<>(accountNos.size());
+        accountNos.forEach(accountNo -> lookups.add(publish(BALANCE, accountNo, 0, 0, null)));
+        List<Long> missing = new ArrayList<>();
+        Iterator<Long> lookedUp = accountNos.iterator();
+        for(Ticket lookup : lookups){
+            long accountNo = lookedUp.next();
+            if(await(lookup).status != Status.APPLIED){
+                missing.add(accountNo);
+            }
+        }
+        loadAll(missing);
+
+        Ticket[] tickets = new Ticket[transfers.size()];
+        for(int i = 0; i < tickets.length; i++){
+            Transfer transfer = transfers.get(i);
+            tickets[i] = publish(TRANSFER, transfer.fromAccountNo(), transfer.toAccountNo(), transfer.amount(), null);
+        }
+        List<Outcome> outcomes = new ArrayList<>(tickets.length);
+        Ticket latest = null;
+        for(Ticket ticket : tickets){
+            await(ticket);
+            outcomes.add(new Outcome(ticket.status, ticket.balance, ticket.accountType, ticket.command));
+            latest = ticket;
+        }
+        //Positions only grow, the last answer being durable covers all the others
+        if(latest != null){
+            awaitDurable(latest);
+        }
+        return outcomes;
+    }
+
+    //Current balance in sequence with the commands, empty when the account does not exist
+    public OptionalLong balance(long accountNo){
+        Outcome outcome = execute(BALANCE, accountNo, 0, 0);
+        return outcome.status() == Status.APPLIED ? OptionalLong.of(outcome.balance()) : OptionalLong.empty();
+    }
+
+    //The account was deleted in MySQL, later commands on it are rejected as not found
+    public void closeAccount(long accountNo){
+        if(enabled){
+            awaitDurable(await(publish(CLOSE, accountNo, 0, 0, null)));
+        }
+    }
+
+    //History rows of a command, shared by the response and the projection so both show the same rows
+    public static List<TransactionHistory> historyRows(Command command){
+        return switch (command.type()){
+            case DEPOSIT -> List.of(new TransactionHistory(null, command.toAccountNo(), "DEPOSIT", command.amount(),
+                    "DEPOSITED" + command.amount(), command.at()));
+            case WITHDRAW -> List.of(new TransactionHistory(null, command.fromAccountNo(), "WITHDRAW", command.amount(),
+                    "WITHDREW" + command.amount(), command.at()));
+            case TRANSFER -> List.of(
+                    new TransactionHistory(null, command.fromAccountNo(), " TRANSFER ", command.amount(),
+                            " TRANSFERRED TO " + command.toAccountNo(), command.at()),
+                    new TransactionHistory(null, command.toAccountNo(), " TRANSFER ", command.amount(),
+                            " RECEIVED FROM " + command.fromAccountNo(), command.at()));
+            default -> List.of();
+        };
+    }
+
+    //Commands, ledger entries and history rows of one batch commit together with the checkpoint,
+    //a crash between batches neither loses nor repeats a command
+    @Scheduled(fixedDelayString = "${banking.engine.projection-interval-ms:200}")
+    public synchronized void project(){
+        MappedJournal<Command> current = journal;
+        if(current == null){
+            return;
+        }
+        while(true){
+            MappedJournal.Batch<Command> batch = current.read(projectedPosition, projectionBatchSize);
+            if(batch.records().isEmpty()){
+                if(batch.endPosition() != projectedPosition){
+                    jdbcTemplate.update(CHECKPOINT_SQL, batch.endPosition(), LocalDateTime.now(), journalId);
+                    projectedPosition = batch.endPosition();
+                    current.release(Math.min(projectedPosition, snapshotPosition));
+                }
+                break;
+            }
+            long started = System.nanoTime();
+            projectionTransaction.executeWithoutResult(status -> {
+                Map<Long, Long> deltas = new TreeMap<>();
+                List<LedgerService.Entry> entries = new ArrayList<>();
+                List<TransactionHistory> history = new ArrayList<>();
+                for(Command command : batch.records()){
+                    switch (command.type()){
+                        case DEPOSIT -> {
+                            deltas.merge(command.toAccountNo(), command.amount(), Long::sum);
+                            entries.add(LedgerService.deposit(command.toAccountNo(), command.amount()));
+                        }
+                        case WITHDRAW -> {
+                            deltas.merge(command.fromAccountNo(), -command.amount(), Long::sum);
+                            entries.add(LedgerService.withdraw(command.fromAccountNo(), command.amount()));
+                        }
+                        case TRANSFER -> {
+                            deltas.merge(command.fromAccountNo(), -command.amount(), Long::sum);
+                            deltas.merge(command.toAccountNo(), command.amount(), Long::sum);
+                            entries.add(LedgerService.transfer(command.fromAccountNo(), command.toAccountNo(), command.amount()));
+                        }
+                        default -> {
+                            //OPEN and CLOSE only change the engine, MySQL already has the account or already lost it
+                        }
+                    }
+                    history.addAll(historyRows(command));
+                }
+
+                //One net update per account, in account order
+                List<Object[]> updates = new ArrayList<>();
+                deltas.forEach((accountNo, delta) -> {
+                    if(delta != 0){
+                        updates.add(new Object[]{delta, accountNo});
+                    }
+                });
+                if(!updates.isEmpty()){
+                    jdbcTemplate.batchUpdate(UPDATE_BALANCE_SQL, updates);
+                }
+                ledgerService.postAll(entries);
+                transactionHistoryWriter.insertBatch(history);
+                jdbcTemplate.update(CHECKPOINT_SQL, batch.endPosition(), LocalDateTime.now(), journalId);
+                //Rings filled from the table while these rows were only in the journal are missing them
+                Set<Long> touched = new HashSet<>();
+                history.forEach(row -> touched.add(row.getAccountNo()));
+                recentTransactionsCache.evictAfterCommit(touched);
+            });
+            projectedPosition = batch.endPosition();
+            projected.add(batch.records().size());
+            current.release(Math.min(projectedPosition, snapshotPosition));
+            logger.debug("Projected {} engine commands in {} ms", batch.records().size(), (System.nanoTime() - started) / 1_000_000);
+            if(batch.records().size() < projectionBatchSize){
+                break;
+            }
+        }
+    }
+
+    //Bounds the replay after a restart; the sequencer copies its arrays between batches, which takes milliseconds
+    @Scheduled(initialDelayString = "${banking.engine.snapshot-interval-ms:60000}",
+            fixedDelayString = "${banking.engine.snapshot-interval-ms:60000}")
+    public void snapshot(){
+        if(!running || halted != null){
+            return;
+        }
+        CompletableFuture<Snapshot> request = new CompletableFuture<>();
+        snapshotRequest.set(request);
+        LockSupport.unpark(sequencer);
+        Snapshot snapshot;
+        try {
+            snapshot = request.get(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ex){
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException | TimeoutException ex){
+            snapshotRequest.compareAndSet(request, null);
+            logger.warn("Ledger engine snapshot skipped", ex);
+            return;
+        }
+        //The copy may include commands still being forced, it only goes to disk once they are durable
+        if(!journal.awaitDurable(snapshot.position(), fsyncTimeoutMillis, TimeUnit.MILLISECONDS)){
+            return;
+        }
+        writeSnapshot(snapshot);
+    }
+
+    @PreDestroy
+    public void close(){
+        MappedJournal<Command> current = journal;
+        if(current == null){
+            return;
+        }
+        running = false;
+        LockSupport.unpark(sequencer);
+        try {
+            sequencer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException ex){
+            Thread.currentThread().interrupt();
+        }
+        current.close();
+        //The sequencer has stopped, its arrays can be read directly
+        if(halted == null && !sequencer.isAlive()){
+            writeSnapshot(copyState(current.writePosition()));
+        }
+        try {
+            project();
+        } catch (RuntimeException ex){
+            logger.warn("Final engine projection failed, the journal is projected on the next start", ex);
+        }
+    }
+
+    public Map<String, Object> stats(){
+        MappedJournal<Command> current = journal;
+        long written = current == null ? 0 : current.writePosition();
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("enabled", enabled);
+        body.put("running", running);
+        body.put("halted", halted != null);
+        body.put("accounts", liveAccounts);
+        body.put("ringSize", ring.length);
+        body.put("ringBacklog", claimed.get() - consumed);
+        body.put("commandsAccepted", accepted.sum());
+        body.put("commandsRejected", rejected.sum());
+        body.put("commandsProjected", projected.sum());
+        body.put("journalPosition", written);
+        body.put("projectedPosition", projectedPosition);
+        body.put("projectionLagBytes", written - projectedPosition);
+        body.put("snapshotPosition", snapshotPosition == Long.MAX_VALUE ? null : snapshotPosition);
+        return body;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if(!enabled){
+            return;
+        }
+        FunctionCounter.builder("banking.engine.commands", accepted, LongAdder::sum)
+                .tag("result", "accepted")
+                .register(registry);
+        FunctionCounter.builder("banking.engine.commands", rejected, LongAdder::sum)
+                .tag("result", "rejected")
+                .register(registry);
+        FunctionCounter.builder("banking.engine.commands", projected, LongAdder::sum)
+                .tag("result", "projected")
+                .register(registry);
+        Gauge.builder("banking.engine.projection.lag", this, engine -> {
+                    MappedJournal<Command> current = engine.journal;
+                    return current == null ? 0 : current.writePosition() - engine.projectedPosition;
+                })
+                .description("Journal bytes not yet projected into MySQL")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("banking.engine.ring.backlog", this, engine -> engine.claimed.get() - engine.consumed)
+                .description("Commands claimed in the ring and not yet taken by the sequencer")
+                .register(registry);
+    }
+
+    //Retries once per account the engine has not seen yet, after bringing it in from MySQL
+    private Outcome execute(byte type, long fromAccountNo, long toAccountNo, long amount){
+        if(!enabled){
+            throw new IllegalStateException("Ledger engine is only available in SEQUENCED mode");
+        }
+        for(int attempt = 0; ; attempt++){
+            Ticket ticket = await(publish(type, fromAccountNo, toAccountNo, amount, null));
+            long missing = ticket.status == Status.FROM_NOT_FOUND ? fromAccountNo
+                    : ticket.status == Status.TO_NOT_FOUND ? toAccountNo : 0;
+            if(missing == 0 || attempt == 2 || !load(missing)){
+                awaitDurable(ticket);
+                return new Outcome(ticket.status, ticket.balance, ticket.accountType, ticket.command);
+            }
+        }
+    }
+
+    //Nothing but the engine changes balances in this mode, so the row of an account it has not seen is still exact
+    private boolean load(long accountNo){
+        List<Object[]> rows = jdbcTemplate.query(LOAD_ACCOUNTS_SQL + " where a.account_no = ?",
+                (rs, rowNum) -> new Object[]{rs.getLong(2), rs.getString(3)}, accountNo);
+        if(rows.isEmpty()){
+            return false;
+        }
+        //A concurrent load of the same account is ignored by the sequencer
+        awaitDurable(await(publish(OPEN, 0, accountNo, (Long) rows.get(0)[0], (String) rows.get(0)[1])));
+        return true;
+    }
+
+    //Same as load() for many accounts, one query and one journal force for all of them
+    private void loadAll(List<Long> accountNos){
+        if(accountNos.isEmpty()){
+            return;
+        }
+        String placeholders = String.join(",", Collections.nCopies(accountNos.size(), "?"));
+        List<Ticket> opens = jdbcTemplate.query(LOAD_ACCOUNTS_SQL + " where a.account_no in (" + placeholders + ")",
+                (rs, rowNum) -> publish(OPEN, 0, rs.getLong(1), rs.getLong(2), rs.getString(3)),
+                accountNos.toArray());
+        Ticket latest = null;
+        for(Ticket open : opens){
+            latest = await(open);
+        }
+        if(latest != null){
+            awaitDurable(latest);
+        }
+    }
+
+    private Ticket publish(byte type, long fromAccountNo, long toAccountNo, long amount, String accountType){
+        if(halted != null){
+            throw new ServiceBusyException(HALTED_MESSAGE, 1);
+        }
+        Ticket ticket = new Ticket();
+        long sequence = claimed.incrementAndGet();
+        //The slot a full lap back must have been taken by the sequencer
+        while(sequence - ring.length > consumed){
+            LockSupport.parkNanos(1_000);
+        }
+        Slot slot = ring[(int) (sequence & mask)];
+        slot.type = type;
+        slot.fromAccountNo = fromAccountNo;
+        slot.toAccountNo = toAccountNo;
+        slot.amount = amount;
+        slot.accountType = accountType;
+        slot.ticket = ticket;
+        slot.published = sequence;
+        if(sequencerIdle){
+            LockSupport.unpark(sequencer);
+        }
+        return ticket;
+    }
+
+    //Spins briefly, most commands are answered within microseconds, then parks
+    private Ticket await(Ticket ticket){
+        for(int spins = 0; !ticket.done; spins++){
+            if(spins < 100){
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(this, 1_000_000);
+                if(!ticket.done && (halted != null || !running)){
+                    throw new ServiceBusyException(HALTED_MESSAGE, 1);
+                }
+            }
+        }
+        if(ticket.failed){
+            throw new ServiceBusyException(HALTED_MESSAGE, 1);
+        }
+        return ticket;
+    }
+
+    //A command is acknowledged only once its journal position is forced; a failed force halts the engine,
+    //whose memory is then ahead of the journal, and a restart replays only what was durable
+    private void awaitDurable(Ticket ticket){
+        if(ticket.position > 0 && !journal.awaitDurable(ticket.position, fsyncTimeoutMillis, TimeUnit.MILLISECONDS)){
+            halt(new IllegalStateException("Engine journal could not force position " + ticket.position));
+            throw new ServiceBusyException(HALTED_MESSAGE, 1);
+        }
+    }
+
+    private void halt(RuntimeException cause){
+        if(halted == null){
+            halted = cause;
+            logger.error("Ledger engine halted", cause);
+        }
+    }
+
+    private void sequence(){
+        Ticket[] tickets = new Ticket[MAX_BATCH];
+        List<Command> journaled = new ArrayList<>(MAX_BATCH);
+        long next = consumed + 1;
+        //End of the last append, every answer waits for it so none reveals state that could still be lost
+        long position = 0;
+        int idleSpins = 0;
+        while(true){
+            Slot slot = ring[(int) (next & mask)];
+            if(slot.published != next){
+                takeSnapshotIfRequested();
+                if(!running){
+                    return;
+                }
+                idleSpins = idle(next, idleSpins);
+                continue;
+            }
+            idleSpins = 0;
+
+            //Everything published so far goes into one batch and one journal write
+            LocalDateTime now = LocalDateTime.now();
+            int count = 0;
+            while(count < MAX_BATCH && slot.published == next){
+                Ticket ticket = slot.ticket;
+                apply(slot, ticket, now, journaled);
+                tickets[count++] = ticket;
+                slot.ticket = null;
+                slot.accountType = null;
+                next++;
+                slot = ring[(int) (next & mask)];
+            }
+
+            if(!journaled.isEmpty()){
+                try {
+                    position = journal.append(journaled);
+                    accepted.add(journaled.size());
+                } catch (RuntimeException ex){
+                    halt(ex);
+                }
+                journaled.clear();
+            }
+            consumed = next - 1;
+            liveAccounts = index.size();
+            for(int i = 0; i < count; i++){
+                Ticket ticket = tickets[i];
+                tickets[i] = null;
+                if(halted != null){
+                    ticket.failed = true;
+                } else {
+                    ticket.position = position;
+                }
+                ticket.done = true;
+                LockSupport.unpark(ticket.waiter);
+            }
+            takeSnapshotIfRequested();
+        }
+    }
+
+    private int idle(long next, int idleSpins){
+        if(idleSpins < 1000){
+            Thread.onSpinWait();
+            return idleSpins + 1;
+        }
+        sequencerIdle = true;
+        if(ring[(int) (next & mask)].published != next && running && snapshotRequest.get() == null){
+            LockSupport.parkNanos(this, 1_000_000);
+        }
+        sequencerIdle = false;
+        return 0;
+    }
+
+    //Checks a command against the arrays and applies it; only accepted state changes are journaled
+    private void apply(Slot slot, Ticket ticket, LocalDateTime now, List<Command> journaled){
+        if(halted != null){
+            ticket.failed = true;
+            return;
+        }
+        int from = slot.type == DEPOSIT || slot.type == OPEN ? -1 : index.get(slot.fromAccountNo);
+        int to = slot.type == TRANSFER || slot.type == DEPOSIT ? index.get(slot.toAccountNo) : -1;
+        switch (slot.type){
+            case OPEN -> {
+                if(index.get(slot.toAccountNo) < 0){
+                    accept(ticket, new Command(OPEN, 0, slot.toAccountNo, slot.amount, slot.accountType, now), journaled);
+                }
+                ticket.status = Status.APPLIED;
+            }
+            case CLOSE -> {
+                if(from >= 0){
+                    accept(ticket, new Command(CLOSE, slot.fromAccountNo, 0, 0, null, now), journaled);
+                }
+                ticket.status = Status.APPLIED;
+            }
+            case BALANCE -> {
+                if(from < 0){
+                    ticket.status = Status.FROM_NOT_FOUND;
+                } else {
+                    ticket.status = Status.APPLIED;
+                    ticket.balance = balances[from];
+                    ticket.accountType = accountTypes[from];
+                }
+            }
+            case DEPOSIT -> {
+                if(to < 0){
+                    reject(ticket, Status.TO_NOT_FOUND);
+                } else {
+                    accept(ticket, new Command(DEPOSIT, 0, slot.toAccountNo, slot.amount, null, now), journaled);
+                    ticket.balance = balances[to];
+                    ticket.accountType = accountTypes[to];
+                }
+            }
+            case WITHDRAW -> {
+                if(from < 0){
+                    reject(ticket, Status.FROM_NOT_FOUND);
+                } else if(balances[from] < slot.amount){
+                    reject(ticket, Status.INSUFFICIENT);
+                } else {
+                    accept(ticket, new Command(WITHDRAW, slot.fromAccountNo, 0, slot.amount, null, now), journaled);
+                    ticket.balance = balances[from];
+                    ticket.accountType = accountTypes[from];
+                }
+            }
+            case TRANSFER -> {
+                if(from < 0){
+                    reject(ticket, Status.FROM_NOT_FOUND);
+                } else if(to < 0){
+                    reject(ticket, Status.TO_NOT_FOUND);
+                } else if(balances[from] < slot.amount){
+                    reject(ticket, Status.INSUFFICIENT);
+                } else {
+                    accept(ticket, new Command(TRANSFER, slot.fromAccountNo, slot.toAccountNo, slot.amount, null, now), journaled);
+                    ticket.balance = balances[from];
+                    ticket.accountType = accountTypes[from];
+                }
+            }
+            default -> throw new IllegalStateException("Unknown engine command " + slot.type);
+        }
+    }
+
+    private void accept(Ticket ticket, Command command, List<Command> journaled){
+        mutate(command);
+        ticket.status = Status.APPLIED;
+        ticket.command = command;
+        journaled.add(command);
+    }
+
+    private void reject(Ticket ticket, Status status){
+        ticket.status = status;
+        rejected.increment();
+    }
+
+    //The state change of an accepted command, also used for the journal replay on start
+    private void mutate(Command command){
+        switch (command.type()){
+            case OPEN -> {
+                if(index.get(command.toAccountNo()) < 0){
+                    register(command.toAccountNo(), command.amount(), command.accountType());
+                }
+            }
+            case CLOSE -> {
+                int id = index.remove(command.fromAccountNo());
+                if(id >= 0){
+                    accountNos[id] = 0;
+                    accountTypes[id] = null;
+                }
+            }
+            case DEPOSIT -> balances[index.get(command.toAccountNo())] += command.amount();
+            case WITHDRAW -> balances[index.get(command.fromAccountNo())] -= command.amount();
+            case TRANSFER -> {
+                balances[index.get(command.fromAccountNo())] -= command.amount();
+                balances[index.get(command.toAccountNo())] += command.amount();
+            }
+            default -> throw new IllegalStateException("Unknown engine command " + command.type());
+        }
+    }
+
+    //Dense ids are handed out in order and never reused, a closed account leaves a hole
+    private void register(long accountNo, long balance, String accountType){
+        if(accountCount == accountNos.length){
+            int capacity = accountNos.length * 2;
+            accountNos = Arrays.copyOf(accountNos, capacity);
+            balances = Arrays.copyOf(balances, capacity);
+            accountTypes = Arrays.copyOf(accountTypes, capacity);
+        }
+        int id = accountCount++;
+        accountNos[id] = accountNo;
+        balances[id] = balance;
+        accountTypes[id] = accountType;
+        index.put(accountNo, id);
+    }
+
+    private void takeSnapshotIfRequested(){
+        CompletableFuture<Snapshot> request = snapshotRequest.getAndSet(null);
+        if(request != null){
+            try {
+                //Only the sequencer appends, so the write position is the end of its last batch
+                request.complete(copyState(journal.writePosition()));
+            } catch (RuntimeException ex){
+                request.completeExceptionally(ex);
+            }
+        }
+    }
+
+    private Snapshot copyState(long position){
+        int live = index.size();
+        long[] numbers = new long[live];
+        long[] amounts = new long[live];
+        String[] types = new String[live];
+        int n = 0;
+        for(int id = 0; id < accountCount; id++){
+            if(accountNos[id] != 0){
+                numbers[n] = accountNos[id];
+                amounts[n] = balances[id];
+                types[n] = accountTypes[id];
+                n++;
+            }
+        }
+        return new Snapshot(position, numbers, amounts, types);
+    }
+
+    //Written next to the journal and moved into place, a crash mid-write leaves the previous snapshot
+    private void writeSnapshot(Snapshot snapshot){
+        long started = System.nanoTime();
+        Path target = directory.resolve(SNAPSHOT_FILE);
+        Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            OutputStream stream = Channels.newOutputStream(channel);
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(stream, 1 << 16), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(snapshot.position());
+            out.writeInt(snapshot.accountNos().length);
+            for(int i = 0; i < snapshot.accountNos().length; i++){
+                out.writeLong(snapshot.accountNos()[i]);
+                out.writeLong(snapshot.balances()[i]);
+                out.writeUTF(snapshot.accountTypes()[i] == null ? "" : snapshot.accountTypes()[i]);
+            }
+            out.flush();
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            channel.force(true);
+        } catch (IOException ex){
+            throw new UncheckedIOException(ex);
+        }
+        try {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex){
+            throw new UncheckedIOException(ex);
+        }
+        snapshotPosition = snapshot.position();
+        logger.info("Ledger engine snapshot of {} accounts at position {} written in {} ms",
+                snapshot.accountNos().length, snapshot.position(), (System.nanoTime() - started) / 1_000_000);
+    }
+
+    //Null when there is no snapshot yet; a damaged one is an error, silently falling back to MySQL could lose commands
+    private Snapshot readSnapshot() throws IOException {
+        Path file = directory.resolve(SNAPSHOT_FILE);
+        if(!Files.exists(file)){
+            return null;
+        }
+        try (InputStream stream = Files.newInputStream(file)) {
+            CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(stream, 1 << 16), new CRC32());
+            DataInputStream in = new DataInputStream(checked);
+            if(in.readInt() != SNAPSHOT_MAGIC){
+                throw new IllegalStateException("Not a ledger engine snapshot: " + file);
+            }
+            long position = in.readLong();
+            int count = in.readInt();
+            long[] numbers = new long[count];
+            long[] amounts = new long[count];
+            String[] types = new String[count];
+            for(int i = 0; i < count; i++){
+                numbers[i] = in.readLong();
+                amounts[i] = in.readLong();
+                String type = in.readUTF();
+                types[i] = type.isEmpty() ? null : type;
+            }
+            long expected = checked.getChecksum().getValue();
+            if(in.readLong() != expected){
+                throw new IllegalStateException("Ledger engine snapshot failed its checksum: " + file);
+            }
+            return new Snapshot(position, numbers, amounts, types);
+        }
+    }
+
+    private static final MappedJournal.Codec<Command> CODEC = new MappedJournal.Codec<>() {
+        @Override
+        public byte[] encode(Command command) {
+            byte[] type = HistoryJournal.bytes(command.accountType());
+            ByteBuffer buffer = ByteBuffer.allocate(1 + 4 * Long.BYTES + 2 * Integer.BYTES + (type == null ? 0 : type.length));
+            buffer.put(command.type());
+            buffer.putLong(command.fromAccountNo());
+            buffer.putLong(command.toAccountNo());
+            buffer.putLong(command.amount());
+            buffer.putLong(command.at().toEpochSecond(ZoneOffset.UTC));
+            buffer.putInt(command.at().getNano());
+            HistoryJournal.putString(buffer, type);
+            return buffer.array();
+        }
+
+        @Override
+        public Command decode(byte[] payload) {
+            ByteBuffer buffer = ByteBuffer.wrap(payload);
+            byte type = buffer.get();
+            long from = buffer.getLong();
+            long to = buffer.getLong();
+            long amount = buffer.getLong();
+            LocalDateTime at = LocalDateTime.ofEpochSecond(buffer.getLong(), buffer.getInt(), ZoneOffset.UTC);
+            return new Command(type, from, to, amount, HistoryJournal.getString(buffer), at);
+        }
+    };
+
+    //Account number -> dense id without boxing, open addressing with linear probing
+    //Account numbers are positive, 0 marks a free cell
+    private static final class AccountIndex {
+        private long[] keys = new long[2048];
+        private int[] values = new int[2048];
+        private int size;
+
+        int size(){
+            return size;
+        }
+
+        int get(long key){
+            int mask = keys.length - 1;
+            for(int cell = hash(key) & mask; ; cell = (cell + 1) & mask){
+                if(keys[cell] == key){
+                    return values[cell];
+                }
+                if(keys[cell] == 0){
+                    return -1;
+                }
+            }
+        }
+
+        void put(long key, int value){
+            if((size + 1) * 2 > keys.length){
+                grow();
+            }
+            int mask = keys.length - 1;
+            int cell = hash(key) & mask;
+            while(keys[cell] != 0 && keys[cell] != key){
+                cell = (cell + 1) & mask;
+            }
+            if(keys[cell] == 0){
+                size++;
+            }
+            keys[cell] = key;
+            values[cell] = value;
+        }
+
+        //Backward-shift delete, later entries of the probe run move into the hole so lookups never stop early
+        int remove(long key){
+            int mask = keys.length - 1;
+            int cell = hash(key) & mask;
+            while(keys[cell] != key){
+                if(keys[cell] == 0){
+                    return -1;
+                }
+                cell = (cell + 1) & mask;
+            }
+            int value = values[cell];
+            int hole = cell;
+            for(int next = (hole + 1) & mask; keys[next] != 0; next = (next + 1) & mask){
+                int home = hash(keys[next]) & mask;
+                if(((next - home) & mask) >= ((next - hole) & mask)){
+                    keys[hole] = keys[next];
+                    values[hole] = values[next];
+                    hole = next;
+                }
+            }
+            keys[hole] = 0;
+            size--;
+            return value;
+        }
+
+        private void grow(){
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldValues.length * 2];
+            size = 0;
+            for(int i = 0; i < oldKeys.length; i++){
+                if(oldKeys[i] != 0){
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int hash(long key){
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
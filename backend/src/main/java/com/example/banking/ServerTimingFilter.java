@@ -0,0 +1,50 @@
+package com.example.banking;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.IOException;
+
+//Debug aid: returns the per-request span breakdown as a Server-Timing header, readable in the browser dev tools
+//The body is buffered so the header can still be set after serialization, statement downloads are left streaming
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+public class ServerTimingFilter extends OncePerRequestFilter {
+
+    static final String SERVER_TIMING_HEADER = "Server-Timing";
+    private static final String STATEMENT_PATH = "/statement";
+
+    private final boolean enabled;
+
+    public ServerTimingFilter(@Value("${banking.timing.server-timing:false}") boolean enabled){
+        this.enabled=enabled;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(@NotNull HttpServletRequest request) {
+        return !enabled || request.getRequestURI().endsWith(STATEMENT_PATH);
+    }
+
+    @Override
+    protected void doFilterInternal(@NotNull HttpServletRequest request, @NotNull HttpServletResponse response, @NotNull FilterChain filterChain) throws ServletException, IOException {
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        long start = System.nanoTime();
+        RequestTimings.start();
+        try {
+            filterChain.doFilter(request, wrapper);
+        } finally {
+            RequestTimings timings = RequestTimings.stop();
+            response.setHeader(SERVER_TIMING_HEADER, timings.toHeader(System.nanoTime() - start, DbRoundTrips.current()));
+            wrapper.copyBodyToResponse();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.banking;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+//Streams an account statement row by row from a forward-only cursor to the response
+//Nothing is collected in memory, so a 10 row and a 10 million row statement use the same heap
+@Component
+public class StatementExporter {
+
+    public static final String CSV = "csv";
+    public static final String NDJSON = "ndjson";
+
+    private static final String SELECT_SQL =
+            "select transactionid, time_stamp, transaction_type, amount, description from transaction_history"
+                    + " where account_no = ? and time_stamp >= ? and time_stamp < ?"
+                    + " order by time_stamp, transactionid";
+    private static final String CSV_HEADER = "transactionId,timeStamp,transactionType,amount,description";
+    private static final int FLUSH_EVERY_ROWS = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final int fetchSize;
+
+    //Integer.MIN_VALUE makes MySQL Connector/J stream rows instead of buffering the whole result set
+    public StatementExporter(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper,
+                             @Value("${banking.statement.fetch-size:-2147483648}") int fetchSize){
+        this.jdbcTemplate=jdbcTemplate;
+        this.objectMapper=objectMapper;
+        this.fetchSize=fetchSize;
+    }
+
+    public void export(Long accountNo, LocalDateTime from, LocalDateTime to, String format, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        RowWriter rowWriter = NDJSON.equals(format) ? new NdjsonRowWriter(writer) : new CsvRowWriter(writer);
+
+        try {
+            jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement(SELECT_SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                ps.setFetchSize(fetchSize);
+                ps.setLong(1, accountNo);
+                ps.setTimestamp(2, Timestamp.valueOf(from));
+                ps.setTimestamp(3, Timestamp.valueOf(to));
+                return ps;
+            }, new RowCallbackHandler() {
+                private long rows;
+
+                @Override
+                public void processRow(ResultSet rs) throws SQLException {
+                    try {
+                        rowWriter.write(rs);
+                        rows++;
+                        //First row goes out right away, later rows in chunks
+                        if(rows == 1 || rows % FLUSH_EVERY_ROWS == 0){
+                            writer.flush();
+                        }
+                    } catch (IOException ex){
+                        throw new UncheckedIOException(ex);
+                    }
+                }
+            });
+        } catch (UncheckedIOException ex){
+            //Client went away mid-download
+            throw ex.getCause();
+        }
+        writer.flush();
+    }
+
+    private interface RowWriter {
+        void write(ResultSet rs) throws SQLException, IOException;
+    }
+
+    private static final class CsvRowWriter implements RowWriter {
+        private final Writer writer;
+
+        CsvRowWriter(Writer writer) throws IOException {
+            this.writer = writer;
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+
+        @Override
+        public void write(ResultSet rs) throws SQLException, IOException {
+            writer.write(Long.toString(rs.getLong(1)));
+            writer.write(',');
+            Timestamp timeStamp = rs.getTimestamp(2);
+            writer.write(timeStamp == null ? "" : timeStamp.toLocalDateTime().toString());
+            writer.write(',');
+            writeField(trim(rs.getString(3)));
+            writer.write(',');
+            writer.write(Long.toString(rs.getLong(4)));
+            writer.write(',');
+            writeField(trim(rs.getString(5)));
+            writer.write('\n');
+        }
+
+        //Quoting only when the value needs it, as in RFC 4180
+        private void writeField(String value) throws IOException {
+            if(value == null){
+                return;
+            }
+            if(value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0){
+                writer.write(value);
+                return;
+            }
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+    }
+
+    private final class NdjsonRowWriter implements RowWriter {
+        private final Writer writer;
+        private final JsonGenerator generator;
+
+        NdjsonRowWriter(Writer writer) throws IOException {
+            this.writer = writer;
+            this.generator = objectMapper.getFactory().createGenerator(writer);
+            //The generator shares the writer, flushing is done by the exporter
+            this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            this.generator.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+            //Lines are separated by '\n' ourselves, not by Jackson's default space
+            this.generator.setRootValueSeparator(null);
+        }
+
+        @Override
+        public void write(ResultSet rs) throws SQLException, IOException {
+            Timestamp timeStamp = rs.getTimestamp(2);
+            generator.writeStartObject();
+            generator.writeNumberField("transactionId", rs.getLong(1));
+            generator.writeStringField("timeStamp", timeStamp == null ? null : timeStamp.toLocalDateTime().toString());
+            generator.writeStringField("transactionType", trim(rs.getString(3)));
+            generator.writeNumberField("amount", rs.getLong(4));
+            generator.writeStringField("description", trim(rs.getString(5)));
+            generator.writeEndObject();
+            generator.flush();
+            writer.write('\n');
+        }
+    }
+
+    private static String trim(String value){
+        return value == null ? null : value.trim();
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.banking;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+//Revoked JWTs, checked on every authenticated request without I/O
+//A Bloom filter answers "not revoked" for almost every token, only its rare hits consult the exact set
+//The revoked_tokens table is the durable copy: loaded at startup, synced periodically for revocations from other nodes
+@Service
+public class TokenRevocationService {
+
+    private static final String USER_PREFIX = "user:";
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private final RevokedTokenRepository revokedTokenRepository;
+    private final int expectedRevocations;
+
+    //Token id -> token expiry
+    private final Map<String, Instant> revokedTokens = new ConcurrentHashMap<>();
+    //User id -> tokens issued at or before this instant are revoked
+    //Tokens carry their issue time in milliseconds; a token issued in the same millisecond as the revocation is revoked
+    //too, so one issued just before it never slips through
+    private final Map<Long, Instant> revokedUsers = new ConcurrentHashMap<>();
+    private volatile BloomFilter bloomFilter;
+    private volatile LocalDateTime lastSync;
+    private static final Logger logger = LoggerFactory.getLogger(TokenRevocationService.class);
+
+    public TokenRevocationService(RevokedTokenRepository revokedTokenRepository,
+                                  @Value("${banking.revocation.expected-tokens:100000}") int expectedRevocations){
+        this.revokedTokenRepository=revokedTokenRepository;
+        this.expectedRevocations=expectedRevocations;
+        this.bloomFilter = new BloomFilter(expectedRevocations, FALSE_POSITIVE_RATE);
+    }
+
+    //Rebuilding from the table before the web server accepts requests
+    @PostConstruct
+    public void load(){
+        LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+        List<RevokedToken> active = revokedTokenRepository.findByExpiresAtAfter(now);
+        active.forEach(this::remember);
+        lastSync = now;
+        rebuildFilter();
+        logger.info("Loaded {} active token revocations", active.size());
+    }
+
+    public boolean isRevoked(JwtPrincipal principal){
+        if(!revokedUsers.isEmpty()){
+            Instant cutoff = revokedUsers.get(principal.userId());
+            if(cutoff != null && !principal.issuedAt().isAfter(cutoff)){
+                return true;
+            }
+        }
+        if(!bloomFilter.mightContain(principal.tokenId())){
+            return false;
+        }
+        return revokedTokens.containsKey(principal.tokenId());
+    }
+
+    //Logout, revokes a single token until it expires
+    public void revoke(JwtPrincipal principal){
+        LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+        revokedTokenRepository.save(new RevokedToken(principal.tokenId(), principal.userId(), now,
+                LocalDateTime.ofInstant(principal.expiresAt(), ZoneOffset.UTC)));
+        synchronized (this){
+            revokedTokens.put(principal.tokenId(), principal.expiresAt());
+            bloomFilter.put(principal.tokenId());
+        }
+        logger.info("Token revoked for User ID : {}", principal.userId());
+    }
+
+    //Password change, role change or deletion, revokes every token the user holds right now
+    public void revokeAllForUser(Long userId){
+        LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.MILLIS);
+        revokedTokenRepository.save(new RevokedToken(USER_PREFIX + userId, userId, now,
+                now.plus(Duration.ofMillis(JwtUtil.EXPIRATION_TIME))));
+        revokedUsers.put(userId, now.toInstant(ZoneOffset.UTC));
+        logger.info("All tokens revoked for User ID : {}", userId);
+    }
+
+    //Picks up revocations made by other nodes and drops entries whose tokens have expired
+    @Scheduled(fixedDelayString = "${banking.revocation.sync-interval-ms:30000}")
+    public void sync(){
+        LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+        //Small overlap so rows committed while the previous sync ran are not missed
+        LocalDateTime since = lastSync.minusSeconds(5);
+        List<RevokedToken> recent = revokedTokenRepository.findByRevokedAtAfterAndExpiresAtAfter(since, now);
+        synchronized (this){
+            recent.forEach(this::remember);
+        }
+        lastSync = now;
+
+        Instant nowInstant = now.toInstant(ZoneOffset.UTC);
+        boolean pruned = revokedTokens.values().removeIf(expiry -> !expiry.isAfter(nowInstant));
+        pruned |= revokedUsers.values().removeIf(cutoff ->
+                !cutoff.plusMillis(JwtUtil.EXPIRATION_TIME).isAfter(nowInstant));
+        //Bits cannot be removed from a Bloom filter, so it is rebuilt from the exact set
+        if(pruned){
+            rebuildFilter();
+        }
+        revokedTokenRepository.deleteExpired(now);
+    }
+
+    private void remember(RevokedToken row){
+        if(row.getTokenId().startsWith(USER_PREFIX)){
+            revokedUsers.merge(row.getUserId(), row.getRevokedAt().toInstant(ZoneOffset.UTC),
+                    (a, b) -> a.isAfter(b) ? a : b);
+        } else {
+            revokedTokens.put(row.getTokenId(), row.getExpiresAt().toInstant(ZoneOffset.UTC));
+            bloomFilter.put(row.getTokenId());
+        }
+    }
+
+    //Holding the monitor so a concurrent revoke cannot land in the filter being replaced
+    private synchronized void rebuildFilter(){
+        BloomFilter rebuilt = new BloomFilter(Math.max(expectedRevocations, revokedTokens.size() * 2), FALSE_POSITIVE_RATE);
+        revokedTokens.keySet().forEach(rebuilt::put);
+        bloomFilter = rebuilt;
+    }
+}
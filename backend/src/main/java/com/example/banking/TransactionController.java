@@ -1,31 +1,122 @@
 package com.example.banking;
 
 
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @RestController
 @RequestMapping("/api/accounts/{accountNo}")
 public class TransactionController {
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final int DEFAULT_LIMIT = 50;
+    private static final int MAX_LIMIT = 200;
+    private static final LocalDateTime EARLIEST = LocalDateTime.of(1970, 1, 1, 0, 0);
+
     private final TransactionHistoryRepository transactionHistoryRepository;
+    private final AccountRepository accountRepository;
+    private final StatementExporter statementExporter;
 
-    public TransactionController(TransactionHistoryRepository transactionHistoryRepository){
+    public TransactionController(TransactionHistoryRepository transactionHistoryRepository, AccountRepository accountRepository,
+                                 StatementExporter statementExporter){
         this.transactionHistoryRepository=transactionHistoryRepository;
+        this.accountRepository=accountRepository;
+        this.statementExporter=statementExporter;
     }
 
+    //Newest first, one bounded page per call
+    //The body stays a plain list; when more rows exist the cursor for the next page is sent in X-Next-Cursor
     @GetMapping("/transactions")
-    public ResponseEntity<List<TransactionInfo>> getTransactions(@PathVariable Long accountNo){
-        List<TransactionInfo> transactions = transactionHistoryRepository.findByAccountNo(accountNo)
+    public ResponseEntity<List<TransactionInfo>> getTransactions(
+            @PathVariable Long accountNo,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) String type,
+            @AuthenticationPrincipal JwtPrincipal principal){
+
+        int pageSize = limit == null ? DEFAULT_LIMIT : limit;
+        if(pageSize <= 0 || pageSize > MAX_LIMIT){
+            throw new IllegalArgumentException("Limit must be between 1 and " + MAX_LIMIT);
+        }
+        TransactionCursor after = TransactionCursor.decode(cursor);
+        checkAccess(accountNo, principal);
+        String typeFilter = type == null || type.isBlank() ? null : type.trim().toUpperCase();
+
+        //Fetching one extra row tells us whether there is a next page
+        List<TransactionHistory> rows = transactionHistoryRepository.findPage(
+                accountNo,
+                from == null ? EARLIEST : from,
+                to == null ? TransactionCursor.FIRST_PAGE.timeStamp() : to,
+                typeFilter,
+                after.timeStamp(),
+                after.transactionID(),
+                PageRequest.of(0, pageSize + 1));
+
+        boolean hasMore = rows.size() > pageSize;
+        List<TransactionHistory> page = hasMore ? rows.subList(0, pageSize) : rows;
+
+        List<TransactionInfo> transactions = page
                 .stream().map(tx-> new TransactionInfo(
                         tx.getTransactionType(),
                         tx.getAmount(),
                         tx.getDescription(),
                         tx.getTimeStamp()
                 )).toList();
-        return ResponseEntity.ok(transactions);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if(hasMore){
+            TransactionHistory last = page.get(page.size() - 1);
+            response.header(NEXT_CURSOR_HEADER, new TransactionCursor(last.getTimeStamp(), last.getTransactionID()).encode());
+        }
+        return response.body(transactions);
     }
 
+    //Full statement as CSV or NDJSON, streamed straight to the response while the query is still running
+    @GetMapping("/statement")
+    public void getStatement(
+            @PathVariable Long accountNo,
+            @RequestParam(defaultValue = StatementExporter.CSV) String format,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @AuthenticationPrincipal JwtPrincipal principal,
+            HttpServletResponse response) throws IOException {
 
+        String statementFormat = format.trim().toLowerCase();
+        if(!StatementExporter.CSV.equals(statementFormat) && !StatementExporter.NDJSON.equals(statementFormat)){
+            throw new IllegalArgumentException("Format must be csv or ndjson");
+        }
+        //Checked before the first byte, afterwards the status can no longer change
+        checkAccess(accountNo, principal);
+
+        response.setContentType(StatementExporter.CSV.equals(statementFormat) ? "text/csv" : "application/x-ndjson");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"statement-" + accountNo + "." + statementFormat + "\"");
+
+        statementExporter.export(accountNo,
+                from == null ? EARLIEST : from,
+                to == null ? TransactionCursor.FIRST_PAGE.timeStamp() : to,
+                statementFormat,
+                response.getOutputStream());
+    }
+
+    //Users only see their own accounts, admins any; someone else's account looks the same as a missing one
+    private void checkAccess(Long accountNo, JwtPrincipal principal){
+        boolean visible = "ADMIN".equals(principal.role())
+                ? accountRepository.existsByAccountNo(accountNo)
+                : accountRepository.existsByAccountNoAndBankUserUserId(accountNo, principal.userId());
+        if(!visible){
+            throw new AccountNotFoundException("Account not found with Account Number :" + accountNo);
+        }
+    }
 }
@@ -0,0 +1,33 @@
+package com.example.banking;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+//Opaque keyset cursor for transaction pages, the (timeStamp, transactionID) of the last row returned
+public record TransactionCursor(LocalDateTime timeStamp, Long transactionID) {
+
+    //Sentinel used for the first page, later than any real row
+    public static final TransactionCursor FIRST_PAGE =
+            new TransactionCursor(LocalDateTime.of(9999, 12, 31, 23, 59, 59), Long.MAX_VALUE);
+
+    public String encode(){
+        String raw = timeStamp + "|" + transactionID;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static TransactionCursor decode(String cursor){
+        if(cursor == null || cursor.isBlank()){
+            return FIRST_PAGE;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf('|');
+            return new TransactionCursor(LocalDateTime.parse(raw.substring(0, separator)),
+                    Long.parseLong(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException ex){
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
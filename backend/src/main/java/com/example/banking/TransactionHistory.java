@@ -5,20 +5,28 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.persistence.TableGenerator;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
 
+//Index serves keyset pages, the latest-N window query for the dashboard and statement exports
 @Entity
+@Table(indexes = @Index(name = "idx_txn_account_time", columnList = "accountNo, timeStamp, transactionID"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class TransactionHistory {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = IdBlockAllocator.TRANSACTION_HISTORY)
+    @TableGenerator(name = IdBlockAllocator.TRANSACTION_HISTORY, table = IdBlockAllocator.TABLE,
+            pkColumnName = IdBlockAllocator.PK_COLUMN, valueColumnName = IdBlockAllocator.VALUE_COLUMN,
+            pkColumnValue = IdBlockAllocator.TRANSACTION_HISTORY, allocationSize = IdBlockAllocator.ALLOCATION_SIZE)
     private Long transactionID;
 
     private Long accountNo;
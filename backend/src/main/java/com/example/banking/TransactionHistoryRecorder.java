@@ -0,0 +1,317 @@
+package com.example.banking;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+//Where AccountService writes its TransactionHistory rows
+//By default a save in the request transaction; in write-behind mode the rows go to a local memory-mapped journal just before
+//the request transaction commits, the commit waits for the fsync, and a drainer moves them into MySQL in large JDBC batches
+//A journal that cannot make the rows durable aborts the transaction, the money operation then did not happen either
+//The ledger postings still commit with the balance, the journal only defers the history rows shown in statements
+//Rows are journaled before the commit, so the drainer stops short of every transaction still in flight; one that rolls
+//back appends a tombstone for its rows and the drainer skips them. A crash between the journal write and the commit,
+//or before a tombstone is forced, still leaves rows of a rolled back transaction to be drained after the restart
+@Component
+public class TransactionHistoryRecorder implements MeterBinder {
+
+    private static final String CHECKPOINT_SQL =
+            "update history_journal_checkpoints set position = ?, updated_at = ? where journal_id = ?";
+
+    private final TransactionHistoryRepository transactionHistoryRepository;
+    private final TransactionHistoryWriter transactionHistoryWriter;
+    private final HistoryJournalCheckpointRepository checkpointRepository;
+    private final RecentTransactionsCache recentTransactionsCache;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate drainTransaction;
+
+    private final boolean writeBehind;
+    private final String journalId;
+    private final Path journalDirectory;
+    private final int segmentSize;
+    private final long fsyncTimeoutMillis;
+    private final int drainBatchSize;
+
+    private volatile HistoryJournal journal;
+    //Journal position up to which rows are in transaction_history, only moved by the drainer
+    private volatile long drainedPosition;
+    //Transaction -> journal position before its rows, the drainer never reads past the lowest
+    private final ConcurrentHashMap<Object, Long> inFlight = new ConcurrentHashMap<>();
+    //Start -> end of the rows of rolled back transactions not yet drained past
+    private final ConcurrentSkipListMap<Long, Long> rolledBack = new ConcurrentSkipListMap<>();
+    private final LongAdder journaled = new LongAdder();
+    private final LongAdder drained = new LongAdder();
+    private final LongAdder direct = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private static final Logger logger = LoggerFactory.getLogger(TransactionHistoryRecorder.class);
+
+    public TransactionHistoryRecorder(TransactionHistoryRepository transactionHistoryRepository,
+                                      TransactionHistoryWriter transactionHistoryWriter,
+                                      HistoryJournalCheckpointRepository checkpointRepository,
+                                      RecentTransactionsCache recentTransactionsCache,
+                                      JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                      @Value("${banking.history.write-behind:false}") boolean writeBehind,
+                                      @Value("${banking.history.journal-id:default}") String journalId,
+                                      @Value("${banking.history.journal-dir:data/history-journal}") String journalDirectory,
+                                      @Value("${banking.history.segment-mb:64}") int segmentMb,
+                                      @Value("${banking.history.fsync-timeout-ms:1000}") long fsyncTimeoutMillis,
+                                      @Value("${banking.history.drain-batch-size:5000}") int drainBatchSize){
+        this.transactionHistoryRepository=transactionHistoryRepository;
+        this.transactionHistoryWriter=transactionHistoryWriter;
+        this.checkpointRepository=checkpointRepository;
+        this.recentTransactionsCache=recentTransactionsCache;
+        this.jdbcTemplate=jdbcTemplate;
+        this.drainTransaction = new TransactionTemplate(transactionManager);
+        this.writeBehind=writeBehind;
+        this.journalId=journalId;
+        this.journalDirectory=Path.of(journalDirectory);
+        this.segmentSize = segmentMb * 1024 * 1024;
+        this.fsyncTimeoutMillis=fsyncTimeoutMillis;
+        this.drainBatchSize=drainBatchSize;
+    }
+
+    //Opens the journal before the web server takes traffic, rows left from the last run are drained by the first drain()
+    @PostConstruct
+    public void open() throws IOException {
+        if(!writeBehind){
+            return;
+        }
+        HistoryJournalCheckpoint checkpoint = checkpointRepository.findById(journalId)
+                .orElseGet(() -> checkpointRepository.save(new HistoryJournalCheckpoint(journalId, 0L, LocalDateTime.now())));
+        drainedPosition = checkpoint.getPosition();
+        journal = new HistoryJournal(journalDirectory, segmentSize, drainedPosition);
+        //A tombstone sits after the rows it cancels, the whole backlog is scanned before the first drain
+        for(long position = drainedPosition; ; ){
+            MappedJournal.Batch<HistoryJournal.Entry> batch = journal.read(position, drainBatchSize);
+            if(batch.endPosition() == position){
+                break;
+            }
+            batch.records().stream().filter(HistoryJournal.Entry::tombstone)
+                    .forEach(tombstone -> rolledBack.put(tombstone.start(), tombstone.end()));
+            position = batch.endPosition();
+        }
+        long backlog = journal.writePosition() - drainedPosition;
+        logger.info("History journal {} opened at {}, {} bytes to replay", journalId, journalDirectory.toAbsolutePath(), backlog);
+    }
+
+    public TransactionHistory record(TransactionHistory row){
+        recordAll(List.of(row));
+        return row;
+    }
+
+    //Rows of one money operation, journaled together so they share a single fsync
+    public void recordAll(List<TransactionHistory> rows){
+        HistoryJournal current = journal;
+        //A failed journal refuses appends outright, nothing of these rows reached it and they can be saved with the transaction
+        if(current == null || current.failed()){
+            if(current != null){
+                direct.add(rows.size());
+            }
+            transactionHistoryRepository.saveAll(rows).forEach(recentTransactionsCache::appendAfterCommit);
+            return;
+        }
+        //Ids are assigned when the drainer inserts the rows, until then they are cached without one
+        rows.forEach(recentTransactionsCache::appendAfterCommit);
+        if(!TransactionSynchronizationManager.isSynchronizationActive()){
+            journal(current, rows);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            private MappedJournal.Range range;
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                inFlight.put(this, current.writePosition());
+                range = current.appendRange(entries(rows));
+                awaitDurable(current, range, rows.size());
+            }
+
+            //Runs before the drainer may pass the rows, so a rolled back transaction's rows are never inserted
+            @Override
+            public void afterCompletion(int status) {
+                try {
+                    if(range != null && status == STATUS_ROLLED_BACK){
+                        cancel(current, range, rows.size());
+                    }
+                } finally {
+                    inFlight.remove(this);
+                }
+            }
+        });
+    }
+
+    //Throws when the rows are not known to be durable, so the transaction they belong to rolls back
+    //They are never written another way: a force still in flight may land them, a second copy would show twice
+    private void journal(HistoryJournal current, List<TransactionHistory> rows){
+        awaitDurable(current, current.appendRange(entries(rows)), rows.size());
+    }
+
+    private void awaitDurable(HistoryJournal current, MappedJournal.Range range, int rows){
+        long started = System.nanoTime();
+        boolean durable;
+        try {
+            durable = current.awaitDurable(range.end(), fsyncTimeoutMillis, TimeUnit.MILLISECONDS);
+        } finally {
+            RequestTimings.record("journal", System.nanoTime() - started);
+        }
+        if(!durable){
+            throw new ServiceBusyException("Transaction history could not be saved, please retry shortly", 1);
+        }
+        journaled.add(rows);
+    }
+
+    //Skipped in memory at once, the tombstone covers a restart once it is forced
+    //A failed journal takes no tombstone, its rows are then skipped only until this node restarts
+    private void cancel(HistoryJournal current, MappedJournal.Range range, int rows){
+        rolledBack.put(range.start(), range.end());
+        cancelled.add(rows);
+        try {
+            long position = current.append(List.of(HistoryJournal.Entry.tombstone(range)));
+            if(!current.awaitDurable(position, fsyncTimeoutMillis, TimeUnit.MILLISECONDS)){
+                logger.error("Tombstone for {} history rows of a rolled back transaction is not durable", rows);
+            }
+        } catch (RuntimeException ex){
+            logger.error("Tombstone for {} history rows of a rolled back transaction could not be journaled", rows, ex);
+        }
+    }
+
+    private static List<HistoryJournal.Entry> entries(List<TransactionHistory> rows){
+        return rows.stream().map(HistoryJournal.Entry::of).toList();
+    }
+
+    //Rows and checkpoint commit together, so a crash between batches neither loses nor duplicates rows
+    //Synchronized, the shutdown drain may overlap a scheduled one
+    @Scheduled(fixedDelayString = "${banking.history.drain-interval-ms:200}")
+    public synchronized void drain(){
+        HistoryJournal current = journal;
+        if(current == null){
+            return;
+        }
+        while(true){
+            //Read before the in-flight floors: an append registered after the scan starts past this position
+            long limit = current.writePosition();
+            for(Long floor : inFlight.values()){
+                limit = Math.min(limit, floor);
+            }
+            MappedJournal.Batch<HistoryJournal.Entry> batch = current.read(drainedPosition, drainBatchSize, limit);
+            List<TransactionHistory> rows = new ArrayList<>(batch.records().size());
+            for(int i = 0; i < batch.records().size(); i++){
+                HistoryJournal.Entry entry = batch.records().get(i);
+                if(!entry.tombstone() && !cancelled(batch.positions()[i])){
+                    rows.add(entry.row());
+                }
+            }
+            if(rows.isEmpty()){
+                if(batch.endPosition() != drainedPosition){
+                    checkpoint(batch.endPosition());
+                }
+            } else {
+                long started = System.nanoTime();
+                drainTransaction.executeWithoutResult(status -> {
+                    transactionHistoryWriter.insertBatch(rows);
+                    jdbcTemplate.update(CHECKPOINT_SQL,
+                            batch.endPosition(), LocalDateTime.now(), journalId);
+                    //Rings filled from the table while these rows were only in the journal are missing them
+                    Set<Long> accountNos = new HashSet<>();
+                    rows.forEach(row -> accountNos.add(row.getAccountNo()));
+                    recentTransactionsCache.evictAfterCommit(accountNos);
+                });
+                drainedPosition = batch.endPosition();
+                drained.add(rows.size());
+                current.release(drainedPosition);
+                logger.debug("Drained {} history rows in {} ms", rows.size(), (System.nanoTime() - started) / 1_000_000);
+            }
+            rolledBack.headMap(drainedPosition).values().removeIf(end -> end <= drainedPosition);
+            if(batch.records().size() < drainBatchSize){
+                break;
+            }
+        }
+    }
+
+    //True when the row at the position belongs to a rolled back transaction
+    private boolean cancelled(long position){
+        Map.Entry<Long, Long> range = rolledBack.floorEntry(position);
+        return range != null && position < range.getValue();
+    }
+
+    @PreDestroy
+    public void close(){
+        HistoryJournal current = journal;
+        if(current == null){
+            return;
+        }
+        current.close();
+        try {
+            drain();
+        } catch (RuntimeException ex){
+            logger.warn("Final history drain failed, the journal is replayed on the next start", ex);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if(!writeBehind){
+            return;
+        }
+        Gauge.builder("banking.history.journal.lag", this, recorder -> {
+                    HistoryJournal current = recorder.journal;
+                    return current == null ? 0 : current.writePosition() - recorder.drainedPosition;
+                })
+                .description("Journal bytes not yet drained into transaction_history")
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder("banking.history.journal.rows", journaled, LongAdder::sum)
+                .tag("stage", "journaled")
+                .register(registry);
+        FunctionCounter.builder("banking.history.journal.rows", drained, LongAdder::sum)
+                .tag("stage", "drained")
+                .register(registry);
+        FunctionCounter.builder("banking.history.journal.rows", direct, LongAdder::sum)
+                .tag("stage", "direct")
+                .description("Rows saved with their transaction because the journal had failed")
+                .register(registry);
+        FunctionCounter.builder("banking.history.journal.rows", cancelled, LongAdder::sum)
+                .tag("stage", "cancelled")
+                .description("Journaled rows whose transaction rolled back, skipped by the drainer")
+                .register(registry);
+        FunctionCounter.builder("banking.history.journal.fsyncs", this, recorder -> {
+                    HistoryJournal current = recorder.journal;
+                    return current == null ? 0 : current.forces();
+                })
+                .description("Journal forces, each one covers every record appended since the previous")
+                .register(registry);
+    }
+
+    //Only end-of-segment markers were read, the position still moves so drained segments can be deleted
+    private void checkpoint(long position){
+        jdbcTemplate.update(CHECKPOINT_SQL, position, LocalDateTime.now(), journalId);
+        drainedPosition = position;
+        journal.release(position);
+    }
+}
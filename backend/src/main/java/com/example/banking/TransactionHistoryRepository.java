@@ -1,8 +1,13 @@
 package com.example.banking;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -10,4 +15,28 @@ public interface TransactionHistoryRepository extends JpaRepository<TransactionH
     List<TransactionHistory> findByAccountNo(Long accountNo);
     List<TransactionHistory> findTop5ByAccountNoOrderByTimeStampDesc(Long accountNo);
 
+    //Keyset page, newest first, starting strictly after the cursor row
+    //Served by the (accountNo, timeStamp, transactionID) index, so the cost depends on the page size only
+    @Query("select t from TransactionHistory t where t.accountNo = :accountNo"
+            + " and t.timeStamp >= :from and t.timeStamp < :to"
+            + " and (:type is null or upper(trim(t.transactionType)) = :type)"
+            + " and (t.timeStamp < :cursorTime or (t.timeStamp = :cursorTime and t.transactionID < :cursorId))"
+            + " order by t.timeStamp desc, t.transactionID desc")
+    List<TransactionHistory> findPage(@Param("accountNo") Long accountNo,
+                                      @Param("from") LocalDateTime from,
+                                      @Param("to") LocalDateTime to,
+                                      @Param("type") String type,
+                                      @Param("cursorTime") LocalDateTime cursorTime,
+                                      @Param("cursorId") Long cursorId,
+                                      Pageable pageable);
+
+    //Latest :limit transactions of every given account in one statement, newest first within each account
+    //ROW_NUMBER() walks the (accountNo, timeStamp, transactionID) index per account, so no filesort is needed
+    @Query(value = "select transactionid, account_no, transaction_type, amount, description, time_stamp from ("
+            + " select t.*, row_number() over (partition by t.account_no order by t.time_stamp desc, t.transactionid desc) as rn"
+            + " from transaction_history t where t.account_no in (:accountNos)) ranked"
+            + " where rn <= :limit order by account_no, time_stamp desc, transactionid desc", nativeQuery = true)
+    List<TransactionHistory> findLatestForAccounts(@Param("accountNos") Collection<Long> accountNos,
+                                                   @Param("limit") int limit);
+
 }
@@ -0,0 +1,44 @@
+package com.example.banking;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+//Writes many TransactionHistory rows through JDBC batch inserts instead of one save per row
+@Component
+public class TransactionHistoryWriter {
+
+    private static final String INSERT_SQL =
+            "insert into transaction_history (transactionid, account_no, transaction_type, amount, description, time_stamp) values (?, ?, ?, ?, ?, ?)";
+    private static final int BATCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final IdBlockAllocator idBlockAllocator;
+
+    public TransactionHistoryWriter(JdbcTemplate jdbcTemplate, IdBlockAllocator idBlockAllocator){
+        this.jdbcTemplate=jdbcTemplate;
+        this.idBlockAllocator=idBlockAllocator;
+    }
+
+    //Joins the caller's transaction, so the rows commit or roll back with the postings
+    public void insertBatch(List<TransactionHistory> rows){
+        if(rows.isEmpty()){
+            return;
+        }
+        //One reservation for the whole batch, from the same sequence Hibernate draws from
+        long firstId = idBlockAllocator.reserve(IdBlockAllocator.TRANSACTION_HISTORY, rows.size());
+        for(int i = 0; i < rows.size(); i++){
+            rows.get(i).setTransactionID(firstId + i);
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, rows, BATCH_SIZE, (ps, row) -> {
+            ps.setLong(1, row.getTransactionID());
+            ps.setLong(2, row.getAccountNo());
+            ps.setString(3, row.getTransactionType());
+            ps.setLong(4, row.getAmount());
+            ps.setString(5, row.getDescription());
+            ps.setTimestamp(6, Timestamp.valueOf(row.getTimeStamp()));
+        });
+    }
+}
@@ -2,6 +2,7 @@ package com.example.banking;
 
 import jakarta.validation.Valid;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Map;
@@ -14,11 +15,13 @@ public class UserController {
 
     private final UserService userService;
     private final UserRepository userRepository;
+    private final TokenRevocationService tokenRevocationService;
 
 
-    public UserController(UserService userService, UserRepository userRepository) {
+    public UserController(UserService userService, UserRepository userRepository, TokenRevocationService tokenRevocationService) {
         this.userService = userService;
         this.userRepository = userRepository;
+        this.tokenRevocationService = tokenRevocationService;
 
     }
 
@@ -51,6 +54,9 @@ public class UserController {
         try{
             LoginResponse loginResponse = userService.login(loginRequest.getEmail(),loginRequest.getPassword());
             return ResponseEntity.ok(loginResponse);
+        } catch(ServiceBusyException E){
+            //Overload is not a bad request, the handler turns it into 503 with Retry-After
+            throw E;
         } catch(RuntimeException E){
             return ResponseEntity.badRequest().body(E.getMessage());
         }
@@ -58,12 +64,9 @@ public class UserController {
 
     // Returns the current authenticated user's profile
     @GetMapping("/me")
-    public ResponseEntity<UserResponse> getCurrentUser() {
-        String email = org.springframework.security.core.context.SecurityContextHolder.getContext()
-                .getAuthentication()
-                .getName();
-
-        BankUser user = userRepository.findByEmail(email)
+    public ResponseEntity<UserResponse> getCurrentUser(@AuthenticationPrincipal JwtPrincipal principal) {
+        //Profile fields are not in the token, one lookup by primary key
+        BankUser user = userRepository.findById(principal.userId())
                 .orElseThrow(() -> new RuntimeException("User not found"));
 
         UserResponse userResponse = new UserResponse(
@@ -78,19 +81,21 @@ public class UserController {
         return ResponseEntity.ok(userResponse);
     }
 
-    // Simple token verification endpoint for frontend
+    // Simple token verification endpoint for frontend, answered from the token alone
     @GetMapping("/verify")
-    public ResponseEntity<Map<String, Object>> verifyToken() {
-        String email = org.springframework.security.core.context.SecurityContextHolder.getContext()
-                .getAuthentication()
-                .getName();
-        BankUser user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+    public ResponseEntity<Map<String, Object>> verifyToken(@AuthenticationPrincipal JwtPrincipal principal) {
         return ResponseEntity.ok(Map.of(
                 "valid", true,
-                "email", email,
-                "userId", user.getUserId()
+                "email", principal.email(),
+                "userId", principal.userId()
         ));
     }
 
+    // Revokes the token used for this request
+    @PostMapping("/logout")
+    public ResponseEntity<Void> logout(@AuthenticationPrincipal JwtPrincipal principal) {
+        tokenRevocationService.revoke(principal);
+        return ResponseEntity.noContent().build();
+    }
+
 }
@@ -1,6 +1,10 @@
 package com.example.banking;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
@@ -9,6 +13,18 @@ import java.util.Optional;
 public interface UserRepository extends JpaRepository<BankUser,Long> {
     Optional<BankUser> findByEmail(String email);
 
-
+    //One page of users with their account count and balance total, grouped in a single query
+    //The total includes the sub-balance slots of sharded accounts
+    //search is a lower-case LIKE pattern or null
+    @Query(value = "select new com.example.banking.AdminUserSummary(u.userId, u.name, u.email, u.mobileNo, u.address, u.role,"
+            + " count(a), coalesce(sum(a.balance), 0L)"
+            + " + coalesce((select sum(s.balance) from AccountBalanceSlot s, BankAccount sa"
+            + " where s.accountNo = sa.accountNo and sa.bankUser.userId = u.userId), 0L))"
+            + " from BankUser u left join u.accounts a"
+            + " where (:search is null or lower(u.name) like :search or lower(u.email) like :search)"
+            + " group by u.userId, u.name, u.email, u.mobileNo, u.address, u.role",
+            countQuery = "select count(u) from BankUser u"
+                    + " where (:search is null or lower(u.name) like :search or lower(u.email) like :search)")
+    Page<AdminUserSummary> findSummaries(@Param("search") String search, Pageable pageable);
 
 }
@@ -1,8 +1,7 @@
 package com.example.banking;
 
 
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
 // import java.util.List;
@@ -16,14 +15,24 @@ public class UserService {
 
     private final UserRepository userRepository;
     private final AccountRepository accountRepository;
-    private final PasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+    private final PasswordHashingService passwordHashingService;
     private final JwtUtil jwtUtil;
+    private final TokenRevocationService tokenRevocationService;
+    private final BankStatsService bankStatsService;
+    private final AccountNumberAllocator accountNumberAllocator;
     private static final Logger logger = LoggerFactory.getLogger(UserService.class);
+    private static final int MAX_ACCOUNT_NO_ATTEMPTS = 3;
 
-    public UserService(UserRepository userRepository, AccountRepository accountRepository, JwtUtil jwtUtil, TransactionHistoryRepository transactionHistoryRepository1){
+    public UserService(UserRepository userRepository, AccountRepository accountRepository, JwtUtil jwtUtil, TokenRevocationService tokenRevocationService,
+                       PasswordHashingService passwordHashingService, BankStatsService bankStatsService,
+                       AccountNumberAllocator accountNumberAllocator){
         this.userRepository=userRepository;
+        this.passwordHashingService=passwordHashingService;
         this.accountRepository=accountRepository;
         this.jwtUtil=jwtUtil;
+        this.tokenRevocationService=tokenRevocationService;
+        this.bankStatsService=bankStatsService;
+        this.accountNumberAllocator=accountNumberAllocator;
     }
 
     //Registering New User
@@ -37,18 +46,15 @@ public class UserService {
             throw new RuntimeException("User Already Exists !");
         }
 
-        //Hashing Password Before Saving
-        bankUser.setPassword(passwordEncoder.encode(bankUser.getPassword()));
+        //Hashing Password Before Saving, on the bounded BCrypt pool
+        bankUser.setPassword(passwordHashingService.encode(bankUser.getPassword()));
 
         BankUser savedBankUser = userRepository.save(bankUser);
 
         //Creating Account in Database
-        BankAccount bankAccount = new BankAccount();
-        bankAccount.setBankUser(savedBankUser);
-        bankAccount.setAccountNo(generateAccountNo());
-        bankAccount.setBalance(0L);
-        bankAccount.setAccountType(accountType);
-        accountRepository.save(bankAccount);
+        BankAccount bankAccount = openAccount(savedBankUser, accountType);
+        bankStatsService.recordUserRegistered(savedBankUser.getRole());
+        bankStatsService.recordAccountOpened(bankAccount.getAccountType(), bankAccount.getBalance());
 
 
 
@@ -85,12 +91,20 @@ public class UserService {
         BankUser bankUser = userRepository.findByEmail(email)
                 .orElseThrow(()->new RuntimeException("User Not Found"));
 
-        if(!passwordEncoder.matches(password, bankUser.getPassword())){
+        if(!passwordHashingService.matches(password, bankUser.getPassword())){
             throw new RuntimeException("Incorrect Password !");
         }
 
+        //Transparent upgrade when the configured BCrypt cost has changed since this hash was made
+        if(passwordHashingService.needsRehash(bankUser.getPassword())){
+            bankUser.setPassword(passwordHashingService.encode(password));
+            userRepository.save(bankUser);
+            passwordHashingService.recordRehash();
+            logger.info("Password rehashed with the current cost for User ID : {}" ,bankUser.getUserId());
+        }
+
         //Generate JWT(JSON Web Token)
-        String token = jwtUtil.generateToken(bankUser.getEmail());
+        String token = jwtUtil.generateToken(bankUser);
 
         // Accounts are fetched separately where needed
 
@@ -143,21 +157,40 @@ public class UserService {
     public void changePassword(String email, String oldPassword, String newPassword){
         BankUser bankUser = userRepository.findByEmail(email)
                 .orElseThrow(() -> new RuntimeException("User Not Found"));
-        if(!passwordEncoder.matches(oldPassword, bankUser.getPassword())){
+        if(!passwordHashingService.matches(oldPassword, bankUser.getPassword())){
             throw new RuntimeException("Incorrect Password !");
         }
-        bankUser.setPassword(passwordEncoder.encode(newPassword));
+        bankUser.setPassword(passwordHashingService.encode(newPassword));
         userRepository.save(bankUser);
+
+        //Tokens issued with the old password stop working, including the one used for this request
+        tokenRevocationService.revokeAllForUser(bankUser.getUserId());
     }
 
 
-    //Generating Random Account Number
+    //Generating Account Number, unique by construction so nothing is looked up
     public Long generateAccountNo(){
-        Long accountNo;
-        do{
-            accountNo = 1000000000L + (long)(Math.random()*9000000000L);
-        }while(accountRepository.existsByAccountNo(accountNo));
-        return accountNo;
+        return accountNumberAllocator.next();
+    }
+
+    //Allocated numbers never repeat each other, the unique key only trips on a number drawn randomly
+    //before the allocator existed; that insert fails and the next number is tried
+    private BankAccount openAccount(BankUser bankUser, String accountType){
+        for(int attempt = 1; ; attempt++){
+            BankAccount bankAccount = new BankAccount();
+            bankAccount.setBankUser(bankUser);
+            bankAccount.setAccountNo(generateAccountNo());
+            bankAccount.setBalance(0L);
+            bankAccount.setAccountType(accountType);
+            try {
+                return accountRepository.save(bankAccount);
+            } catch (DataIntegrityViolationException ex){
+                if(attempt >= MAX_ACCOUNT_NO_ATTEMPTS){
+                    throw ex;
+                }
+                accountNumberAllocator.recordCollision(bankAccount.getAccountNo());
+            }
+        }
     }
 
 
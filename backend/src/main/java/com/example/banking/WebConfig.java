@@ -1,9 +1,17 @@
 package com.example.banking;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import java.io.IOException;
+import java.lang.reflect.Type;
+
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
 
@@ -13,6 +21,23 @@ public class WebConfig implements WebMvcConfigurer {
                 .allowedOrigins("http://localhost:8081","http://192.168.1.3:8081") // My frontend // For network connected Devices
                 .allowedMethods("GET", "POST", "PUT", "PATCH", "DELETE", "OPTIONS")
                 .allowedHeaders("*")
+                .exposedHeaders(TransactionController.NEXT_CURSOR_HEADER, IdempotencyService.REPLAYED_HEADER) // Next page cursor, absorbed retries
                 .allowCredentials(true);
     }
+
+    //Replaces Boot's default JSON converter with one that reports serialization time as the "json" span
+    @Bean
+    public MappingJackson2HttpMessageConverter mappingJackson2HttpMessageConverter(ObjectMapper objectMapper){
+        return new MappingJackson2HttpMessageConverter(objectMapper) {
+            @Override
+            protected void writeInternal(@NotNull Object object, Type type, @NotNull HttpOutputMessage outputMessage) throws IOException {
+                long start = System.nanoTime();
+                try {
+                    super.writeInternal(object, type, outputMessage);
+                } finally {
+                    RequestTimings.record("json", System.nanoTime() - start);
+                }
+            }
+        };
+    }
 }
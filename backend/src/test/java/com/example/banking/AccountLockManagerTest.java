@@ -0,0 +1,95 @@
+package com.example.banking;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//Requests queued on a busy account's stripe must not hold connections, a small pool keeps serving other accounts
+@SpringBootTest(properties = {
+        "banking.concurrency.mode=ATOMIC",
+        "spring.datasource.hikari.maximum-pool-size=3",
+        "spring.datasource.hikari.connection-timeout=1000"})
+@ActiveProfiles("test")
+class AccountLockManagerTest {
+
+    private static final int WAITERS = 6;
+
+    @Autowired
+    private AccountLockManager accountLockManager;
+    @Autowired
+    private AccountService accountService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Test
+    void waitersOnAStripeHoldNoConnection() throws Exception {
+        long hot = TestAccounts.open(userRepository, accountRepository, "CURRENT", 1_000);
+        long other = TestAccounts.open(userRepository, accountRepository, "CURRENT", 1_000);
+
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(WAITERS + 1);
+        try {
+            Future<?> holder = pool.submit(() -> accountLockManager.callLocked(() -> {
+                held.countDown();
+                await(release);
+                return null;
+            }, hot));
+            held.await();
+
+            long contendedBefore = contended();
+            List<Future<AccountInfo>> waiters = new ArrayList<>();
+            for(int i = 0; i < WAITERS; i++){
+                waiters.add(pool.submit(() -> accountService.Withdraw(withdraw(hot, 10))));
+            }
+            while(contended() < contendedBefore + WAITERS){
+                Thread.sleep(5);
+            }
+
+            //More waiters than connections, yet another account still gets one
+            assertEquals(990L, accountService.Withdraw(withdraw(other, 10)).getBalance());
+
+            release.countDown();
+            holder.get();
+            for(Future<AccountInfo> waiter : waiters){
+                waiter.get();
+            }
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+        assertEquals(1_000L - WAITERS * 10, accountRepository.findByAccountNo(hot).orElseThrow().getBalance());
+    }
+
+    private long contended(){
+        return (Long) accountLockManager.stats().get("contendedAcquisitions");
+    }
+
+    private static WithdrawRequest withdraw(long accountNo, long amount){
+        WithdrawRequest request = new WithdrawRequest();
+        request.setAccountNo(accountNo);
+        request.setAmount(amount);
+        return request;
+    }
+
+    private static void await(CountDownLatch latch){
+        try {
+            latch.await();
+        } catch (InterruptedException ex){
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.banking;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//Every account number handed out must be unique, so the permutation has to be a bijection of its whole domain
+class AccountNumberPermutationTest {
+
+    private static final byte[] KEY = "test-key".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void mapsTheDomainOntoItselfWithoutCollisions(){
+        //Neither a power of two nor an even bit width, so cycle walking is exercised
+        assertBijection(100_003);
+        assertBijection(1 << 16);
+        assertBijection(2);
+    }
+
+    @Test
+    void sameKeyGivesTheSameOrderAndAnotherKeyADifferentOne(){
+        AccountNumberPermutation first = new AccountNumberPermutation(KEY, 100_003);
+        AccountNumberPermutation again = new AccountNumberPermutation(KEY, 100_003);
+        AccountNumberPermutation other = new AccountNumberPermutation("other-key".getBytes(StandardCharsets.UTF_8), 100_003);
+        int differing = 0;
+        for(long value = 0; value < 1_000; value++){
+            assertEquals(first.permute(value), again.permute(value));
+            if(first.permute(value) != other.permute(value)){
+                differing++;
+            }
+        }
+        assertTrue(differing > 990, differing + " of 1000 differ");
+    }
+
+    @Test
+    void sequentialInputsDoNotComeOutSequential(){
+        AccountNumberPermutation permutation = new AccountNumberPermutation(KEY, 100_003);
+        int adjacent = 0;
+        for(long value = 0; value < 1_000; value++){
+            if(Math.abs(permutation.permute(value + 1) - permutation.permute(value)) == 1){
+                adjacent++;
+            }
+        }
+        assertTrue(adjacent < 10, adjacent + " adjacent outputs");
+    }
+
+    @Test
+    void rejectsValuesOutsideTheDomain(){
+        AccountNumberPermutation permutation = new AccountNumberPermutation(KEY, 1_000);
+        assertThrows(IllegalArgumentException.class, () -> permutation.permute(1_000));
+        assertThrows(IllegalArgumentException.class, () -> permutation.permute(-1));
+    }
+
+    private static void assertBijection(int domain){
+        AccountNumberPermutation permutation = new AccountNumberPermutation(KEY, domain);
+        BitSet seen = new BitSet(domain);
+        for(long value = 0; value < domain; value++){
+            long permuted = permutation.permute(value);
+            assertTrue(permuted >= 0 && permuted < domain, "value " + value + " left the domain");
+            assertFalse(seen.get((int) permuted), "value " + value + " collided");
+            seen.set((int) permuted);
+        }
+        assertEquals(domain, seen.cardinality());
+    }
+}
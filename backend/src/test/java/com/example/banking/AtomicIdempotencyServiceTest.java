@@ -0,0 +1,15 @@
+package com.example.banking;
+
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+//In the database modes the postings commit in the work's own transaction, between the pending row and its response
+@SpringBootTest(properties = "banking.concurrency.mode=ATOMIC")
+@ActiveProfiles("test")
+class AtomicIdempotencyServiceTest extends IdempotencyRaceTest {
+
+    @Override
+    long balance(long accountNo){
+        return accountRepository.findByAccountNo(accountNo).orElseThrow().getBalance();
+    }
+}
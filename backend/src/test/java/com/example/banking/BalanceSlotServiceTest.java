@@ -0,0 +1,105 @@
+package com.example.banking;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+//Credits to a sharded account land in its slots; a debit the row cannot cover sweeps them in first
+@SpringBootTest(properties = "banking.concurrency.mode=ATOMIC")
+@ActiveProfiles("test")
+class BalanceSlotServiceTest {
+
+    private static final int SLOTS = 4;
+    private static final int CREDITS = 40;
+
+    @Autowired
+    private BalanceSlotService balanceSlotService;
+    @Autowired
+    private AccountService accountService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Test
+    void debitSweepsTheSlotsWhenTheRowIsShort() throws Exception {
+        long accountNo = TestAccounts.open(userRepository, accountRepository, "CURRENT", 100);
+        balanceSlotService.reshard(accountNo, SLOTS);
+
+        ExecutorService pool = Executors.newFixedThreadPool(SLOTS);
+        try {
+            List<Future<AccountInfo>> credits = new ArrayList<>();
+            for(int i = 0; i < CREDITS; i++){
+                credits.add(pool.submit(() -> accountService.Deposit(deposit(accountNo, 10))));
+            }
+            for(Future<AccountInfo> credit : credits){
+                credit.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(100, rowBalance(accountNo));
+        assertEquals(CREDITS * 10, balanceSlotService.slotTotal(accountNo));
+
+        //More than the row holds, less than row plus slots
+        accountService.Withdraw(withdraw(accountNo, 450));
+        assertEquals(100 + CREDITS * 10 - 450, rowBalance(accountNo));
+        assertEquals(0, balanceSlotService.slotTotal(accountNo));
+    }
+
+    @Test
+    void debitBeyondRowAndSlotsChangesNothing(){
+        long accountNo = TestAccounts.open(userRepository, accountRepository, "CURRENT", 100);
+        balanceSlotService.reshard(accountNo, SLOTS);
+        accountService.Deposit(deposit(accountNo, 50));
+
+        assertThrows(InsufficientBalanceException.class, () -> accountService.Withdraw(withdraw(accountNo, 151)));
+        assertEquals(100, rowBalance(accountNo));
+        assertEquals(50, balanceSlotService.slotTotal(accountNo));
+
+        accountService.Withdraw(withdraw(accountNo, 150));
+        assertEquals(0, rowBalance(accountNo));
+        assertEquals(0, balanceSlotService.slotTotal(accountNo));
+    }
+
+    @Test
+    void reshardingBackToZeroFoldsTheSlotsIntoTheRow(){
+        long accountNo = TestAccounts.open(userRepository, accountRepository, "CURRENT", 100);
+        balanceSlotService.reshard(accountNo, SLOTS);
+        accountService.Deposit(deposit(accountNo, 70));
+
+        balanceSlotService.reshard(accountNo, 0);
+        assertEquals(170, rowBalance(accountNo));
+        assertEquals(0, balanceSlotService.slotTotal(accountNo));
+        assertFalse(balanceSlotService.isSharded(accountNo));
+    }
+
+    private long rowBalance(long accountNo){
+        return accountRepository.findByAccountNo(accountNo).orElseThrow().getBalance();
+    }
+
+    private static DepositRequest deposit(long accountNo, long amount){
+        DepositRequest request = new DepositRequest();
+        request.setAccountNo(accountNo);
+        request.setAmount(amount);
+        return request;
+    }
+
+    private static WithdrawRequest withdraw(long accountNo, long amount){
+        WithdrawRequest request = new WithdrawRequest();
+        request.setAccountNo(accountNo);
+        request.setAmount(amount);
+        return request;
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.banking;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//Database batch transfers: items apply in request order against running balances, with one net update per account
+@SpringBootTest(properties = "banking.concurrency.mode=ATOMIC")
+@ActiveProfiles("test")
+class BatchTransferServiceTest {
+
+    private static final int SLOTS = 4;
+
+    @Autowired
+    private BatchTransferService batchTransferService;
+    @Autowired
+    private AccountService accountService;
+    @Autowired
+    private BalanceSlotService balanceSlotService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private AccountRepository accountRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    //A later item may spend what an earlier one credited, and fails once earlier items used the funds up
+    @Test
+    void balancesAreCheckedInRequestOrder(){
+        long a = TestAccounts.open(userRepository, accountRepository, "CURRENT", 100);
+        long b = TestAccounts.open(userRepository, accountRepository, "CURRENT", 0);
+        long c = TestAccounts.open(userRepository, accountRepository, "CURRENT", 0);
+
+        BatchTransferResponse response = batchTransferService.transfer(List.of(
+                transfer(a, b, 80),
+                transfer(a, c, 50),
+                transfer(b, c, 60),
+                transfer(a, c, 20)));
+
+        assertEquals(List.of("SUCCESS", "FAILED", "SUCCESS", "SUCCESS"), statuses(response));
+        assertEquals("Insufficient Balance for Transfer", response.getResults().get(1).getMessage());
+        assertEquals(3, response.getSucceeded());
+        assertEquals(1, response.getFailed());
+        assertEquals(0, rowBalance(a));
+        assertEquals(20, rowBalance(b));
+        assertEquals(80, rowBalance(c));
+
+        //Two ledger legs and two history rows per successful item, none for the failed one
+        assertEquals(6, count("ledger_postings", a, b, c));
+        assertEquals(6, count("transaction_history", a, b, c));
+    }
+
+    @Test
+    void eachAccountGetsOneNetUpdate(){
+        long a = TestAccounts.open(userRepository, accountRepository, "CURRENT", 1_000);
+        long b = TestAccounts.open(userRepository, accountRepository, "CURRENT", 1_000);
+        long versionA = version(a);
+        long versionB = version(b);
+
+        List<TransferRequest> transfers = new ArrayList<>();
+        for(int i = 0; i < 10; i++){
+            transfers.add(transfer(a, b, 30));
+            transfers.add(transfer(b, a, 10));
+        }
+        BatchTransferResponse response = batchTransferService.transfer(transfers);
+
+        assertEquals(20, response.getSucceeded());
+        assertEquals(1_000 - 200, rowBalance(a));
+        assertEquals(1_000 + 200, rowBalance(b));
+        assertEquals(versionA + 1, version(a));
+        assertEquals(versionB + 1, version(b));
+    }
+
+    //Transfers that balance out leave the rows untouched
+    @Test
+    void zeroNetChangeSkipsTheUpdate(){
+        long a = TestAccounts.open(userRepository, accountRepository, "CURRENT", 50);
+        long b = TestAccounts.open(userRepository, accountRepository, "CURRENT", 50);
+        long versionA = version(a);
+
+        BatchTransferResponse response = batchTransferService.transfer(List.of(transfer(a, b, 40), transfer(b, a, 40)));
+
+        assertEquals(2, response.getSucceeded());
+        assertEquals(50, rowBalance(a));
+        assertEquals(versionA, version(a));
+        assertEquals(4, count("ledger_postings", a, b));
+    }
+
+    @Test
+    void invalidItemsAreSkippedAndReported(){
+        long a = TestAccounts.open(userRepository, accountRepository, "CURRENT", 100);
+        long b = TestAccounts.open(userRepository, accountRepository, "CURRENT", 0);
+        long missing = 1L;
+
+        List<TransferRequest> transfers = new ArrayList<>();
+        transfers.add(null);
+        transfers.add(transfer(null, b, 10));
+        transfers.add(transfer(a, null, 10));
+        transfers.add(transfer(a, b, 0));
+        transfers.add(transfer(a, a, 10));
+        transfers.add(transfer(missing, b, 10));
+        transfers.add(transfer(a, missing, 10));
+        transfers.add(transfer(a, b, 25));
+        BatchTransferResponse response = batchTransferService.transfer(transfers);
+
+        assertEquals(8, response.getTotal());
+        assertEquals(1, response.getSucceeded());
+        assertEquals(7, response.getFailed());
+        assertEquals(List.of(
+                "Transfer is required",
+                "Source account number is required",
+                "Destination account number is required",
+                "Transfer Amount must be Greater than 0",
+                "Cannot Transfer to the same Account",
+                "Account not found with Account Number :" + missing,
+                "Account not found with Account Number :" + missing),
+                response.getResults().subList(0, 7).stream().map(BatchTransferResult::getMessage).toList());
+        assertEquals("SUCCESS", response.getResults().get(7).getStatus());
+        assertEquals(7, response.getResults().get(7).getIndex());
+        assertEquals(75, rowBalance(a));
+        assertEquals(25, rowBalance(b));
+        assertEquals(2, count("ledger_postings", a, b));
+        assertEquals(2, count("transaction_history", a, b));
+    }
+
+    //A sharded source can spend its slots, they are folded into the row's net update
+    @Test
+    void shardedSourceSweepsItsSlots(){
+        long a = TestAccounts.open(userRepository, accountRepository, "CURRENT", 100);
+        long b = TestAccounts.open(userRepository, accountRepository, "CURRENT", 0);
+        balanceSlotService.reshard(a, SLOTS);
+        for(int i = 0; i < 5; i++){
+            accountService.Deposit(deposit(a, 10));
+        }
+        assertEquals(50, balanceSlotService.slotTotal(a));
+
+        BatchTransferResponse response = batchTransferService.transfer(List.of(transfer(a, b, 130), transfer(a, b, 30)));
+
+        assertEquals(List.of("SUCCESS", "FAILED"), statuses(response));
+        assertEquals(20, rowBalance(a));
+        assertEquals(0, balanceSlotService.slotTotal(a));
+        assertEquals(130, rowBalance(b));
+    }
+
+    private static List<String> statuses(BatchTransferResponse response){
+        return response.getResults().stream().map(BatchTransferResult::getStatus).toList();
+    }
+
+    private long rowBalance(long accountNo){
+        return accountRepository.findByAccountNo(accountNo).orElseThrow().getBalance();
+    }
+
+    private long version(long accountNo){
+        return jdbcTemplate.queryForObject("select version from bank_account where account_no = ?", Long.class, accountNo);
+    }
+
+    private int count(String table, long... accountNos){
+        int total = 0;
+        for(long accountNo : accountNos){
+            total += jdbcTemplate.queryForObject("select count(*) from " + table + " where account_no = ?", Integer.class, accountNo);
+        }
+        return total;
+    }
+
+    private static TransferRequest transfer(Long from, Long to, long amount){
+        TransferRequest request = new TransferRequest();
+        request.setFromAccountNo(from);
+        request.setToAccountNo(to);
+        request.setAmount(amount);
+        return request;
+    }
+
+    private static DepositRequest deposit(long accountNo, long amount){
+        DepositRequest request = new DepositRequest();
+        request.setAccountNo(accountNo);
+        request.setAmount(amount);
+        return request;
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.banking;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//A revoked token must never be reported as unknown, whatever else the filter gets wrong
+class BloomFilterTest {
+
+    private static final int TOKENS = 50_000;
+
+    @Test
+    void everyInsertedValueIsFound(){
+        BloomFilter filter = new BloomFilter(TOKENS, 0.01);
+        List<String> tokenIds = tokenIds(TOKENS);
+        tokenIds.forEach(filter::put);
+        for(String tokenId : tokenIds){
+            assertTrue(filter.mightContain(tokenId), tokenId);
+        }
+    }
+
+    @Test
+    void valuesPutConcurrentlyAreAllFound() throws Exception {
+        BloomFilter filter = new BloomFilter(TOKENS, 0.01);
+        List<String> tokenIds = tokenIds(TOKENS);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> puts = new ArrayList<>();
+            for(int thread = 0; thread < 4; thread++){
+                List<String> share = tokenIds.subList(thread * TOKENS / 4, (thread + 1) * TOKENS / 4);
+                puts.add(pool.submit(() -> share.forEach(filter::put)));
+            }
+            for(Future<?> put : puts){
+                put.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        for(String tokenId : tokenIds){
+            assertTrue(filter.mightContain(tokenId), tokenId);
+        }
+    }
+
+    @Test
+    void falsePositivesStayNearTheConfiguredRate(){
+        BloomFilter filter = new BloomFilter(TOKENS, 0.01);
+        tokenIds(TOKENS).forEach(filter::put);
+        int falsePositives = 0;
+        for(String tokenId : tokenIds(TOKENS)){
+            if(filter.mightContain(tokenId)){
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < TOKENS * 0.02, falsePositives + " false positives");
+    }
+
+    private static List<String> tokenIds(int count){
+        List<String> tokenIds = new ArrayList<>(count);
+        for(int i = 0; i < count; i++){
+            tokenIds.add(UUID.randomUUID().toString());
+        }
+        return tokenIds;
+    }
+}
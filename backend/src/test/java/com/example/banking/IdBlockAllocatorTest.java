@@ -0,0 +1,121 @@
+package com.example.banking;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = "banking.concurrency.mode=ATOMIC")
+@ActiveProfiles("test")
+class IdBlockAllocatorTest {
+
+    private static final int THREADS = 4;
+    private static final int ROUNDS = 30;
+    private static final int BATCH = 7;
+
+    @Autowired
+    private IdBlockAllocator idBlockAllocator;
+    @Autowired
+    private TransactionHistoryWriter transactionHistoryWriter;
+    @Autowired
+    private TransactionHistoryRepository transactionHistoryRepository;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    //Hibernate's pooled-lo blocks and JDBC reservations interleaved on several threads, each writer in its own
+    //transaction as in production; a shared id would fail the primary key, a lock cycle would hang the futures
+    @Test
+    void jdbcAndHibernateIdsNeverOverlap() throws Exception {
+        long accountNo = 990_000_000L;
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<List<Long>>> futures = new ArrayList<>();
+        //Ranges reserved and never inserted, Hibernate must not write into them either
+        Set<Long> bare = ConcurrentHashMap.newKeySet();
+        Set<Long> seen = new HashSet<>();
+        try {
+            for(int t = 0; t < THREADS; t++){
+                futures.add(executor.submit(() -> {
+                    List<Long> ids = new ArrayList<>();
+                    for(int round = 0; round < ROUNDS; round++){
+                        ids.add(transactionHistoryRepository.save(row(accountNo)).getTransactionID());
+                        List<TransactionHistory> batch = new ArrayList<>();
+                        for(int i = 0; i < BATCH; i++){
+                            batch.add(row(accountNo));
+                        }
+                        transactionTemplate.executeWithoutResult(status -> {
+                            transactionHistoryRepository.save(row(accountNo));
+                            transactionHistoryWriter.insertBatch(batch);
+                        });
+                        batch.forEach(written -> ids.add(written.getTransactionID()));
+                        long first = idBlockAllocator.reserve(IdBlockAllocator.TRANSACTION_HISTORY, 3);
+                        for(long id = first; id < first + 3; id++){
+                            ids.add(id);
+                            bare.add(id);
+                        }
+                    }
+                    return ids;
+                }));
+            }
+            for(Future<List<Long>> future : futures){
+                for(Long id : future.get()){
+                    assertTrue(seen.add(id), "id " + id + " handed out twice");
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        //Ids written by Hibernate inside the JDBC transactions were not captured above, the table holds them all
+        List<Long> stored = jdbcTemplate.queryForList("select transactionid from transaction_history where account_no = ?", Long.class, accountNo);
+        assertEquals(THREADS * ROUNDS * (2 + BATCH), stored.size());
+        assertEquals(stored.size(), new HashSet<>(stored).size());
+        for(Long id : stored){
+            assertTrue(!bare.contains(id), "row written with reserved id " + id);
+        }
+    }
+
+    //A row bulk loaded with an explicit id moves the sequence past it, and a second run changes nothing
+    @Test
+    void migrateRaisesTheSequencePastExistingIdsOnce(){
+        long loadedId = nextVal(IdBlockAllocator.TRANSACTION_HISTORY) + 1_000_000;
+        jdbcTemplate.update("insert into transaction_history (transactionid, account_no, transaction_type, amount, description, time_stamp)"
+                + " values (?, ?, 'Deposit', 1, 'bulk load', ?)", loadedId, 990_000_001L, LocalDateTime.now());
+
+        idBlockAllocator.migrate();
+        assertEquals(loadedId + 1, nextVal(IdBlockAllocator.TRANSACTION_HISTORY));
+        long reserved = idBlockAllocator.reserve(IdBlockAllocator.TRANSACTION_HISTORY, 10);
+        assertEquals(loadedId + 1, reserved);
+
+        idBlockAllocator.migrate();
+        assertEquals(loadedId + 11, nextVal(IdBlockAllocator.TRANSACTION_HISTORY));
+        //Hibernate may still be using a block it took earlier, but never one overlapping these ids
+        long saved = transactionHistoryRepository.save(row(990_000_001L)).getTransactionID();
+        assertTrue(saved < loadedId || saved > loadedId + 10, "Hibernate reused id " + saved);
+    }
+
+    private static TransactionHistory row(long accountNo){
+        return new TransactionHistory(null, accountNo, "Deposit", 1L, "id test", LocalDateTime.now());
+    }
+
+    private long nextVal(String sequence){
+        return jdbcTemplate.queryForObject("select " + IdBlockAllocator.VALUE_COLUMN + " from " + IdBlockAllocator.TABLE
+                + " where " + IdBlockAllocator.PK_COLUMN + " = ?", Long.class, sequence);
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.banking;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//Requests sharing one Idempotency-Key must move the money at most once, whatever the concurrency mode
+//Subclasses pick the mode and where the balances are read from
+abstract class IdempotencyRaceTest {
+
+    private static final int ROUNDS = 20;
+    private static final int RACERS = 4;
+
+    @Autowired
+    IdempotencyService idempotencyService;
+    @Autowired
+    AccountService accountService;
+    @Autowired
+    UserRepository userRepository;
+    @Autowired
+    AccountRepository accountRepository;
+    @Autowired
+    IdempotencyRecordRepository idempotencyRecordRepository;
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Test
+    void concurrentRequestsWithOneKeyDebitOnce() throws Exception {
+        long from = TestAccounts.open(userRepository, accountRepository, "SAVINGS", 1_000);
+        long to = TestAccounts.open(userRepository, accountRepository, "SAVINGS", 0);
+        ExecutorService pool = Executors.newFixedThreadPool(RACERS);
+        try {
+            for(int round = 0; round < ROUNDS; round++){
+                TransferRequest request = new TransferRequest();
+                request.setFromAccountNo(from);
+                request.setToAccountNo(to);
+                request.setAmount(10L);
+                String key = "transfer-" + round;
+
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<IdempotencyService.Result<String>>> results = new ArrayList<>();
+                for(int racer = 0; racer < RACERS; racer++){
+                    results.add(pool.submit(() -> {
+                        start.await();
+                        return idempotencyService.execute(BankingMetrics.ADMIN_TRANSFER, 1L, key, request,
+                                String.class, () -> accountService.MoneyTransfer(request));
+                    }));
+                }
+                start.countDown();
+
+                int executed = 0;
+                for(Future<IdempotencyService.Result<String>> result : results){
+                    if(!result.get().replayed()){
+                        executed++;
+                    }
+                }
+                assertEquals(1, executed, "round " + round);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(1_000 - ROUNDS * 10, balance(from));
+        assertEquals(ROUNDS * 10, balance(to));
+    }
+
+    //A failure that may have happened after the money moved must not let a retry run again
+    @Test
+    void unknownOutcomeKeepsTheKeyPending(){
+        AtomicInteger runs = new AtomicInteger();
+        assertThrows(IllegalStateException.class, () -> idempotencyService.execute(BankingMetrics.ADMIN_TRANSFER, 1L,
+                "unknown-outcome", "body", String.class, () -> {
+                    runs.incrementAndGet();
+                    throw new IllegalStateException("connection lost");
+                }));
+        assertThrows(IdempotencyKeyPendingException.class, () -> idempotencyService.execute(BankingMetrics.ADMIN_TRANSFER, 1L,
+                "unknown-outcome", "body", String.class, () -> "applied again " + runs.incrementAndGet()));
+        assertEquals(1, runs.get());
+    }
+
+    //A rejected request applied nothing, the same key may run again
+    @Test
+    void rejectedRequestReleasesTheKey(){
+        assertThrows(InsufficientBalanceException.class, () -> idempotencyService.execute(BankingMetrics.ADMIN_TRANSFER, 1L,
+                "rejected", "body", String.class, () -> {
+                    throw new InsufficientBalanceException("Insufficient balance");
+                }));
+        IdempotencyService.Result<String> retry = idempotencyService.execute(BankingMetrics.ADMIN_TRANSFER, 1L,
+                "rejected", "body", String.class, () -> "done");
+        assertEquals("done", retry.body());
+        assertFalse(retry.replayed());
+        assertTrue(idempotencyService.execute(BankingMetrics.ADMIN_TRANSFER, 1L,
+                "rejected", "body", String.class, () -> "not run").replayed());
+    }
+
+    //A second instance shares the table but not the in-memory claims, as another node would
+    @Test
+    void keyRunningOnAnotherNodeIsRefused() throws Exception {
+        IdempotencyService otherNode = new IdempotencyService(idempotencyRecordRepository, jdbcTemplate, objectMapper,
+                ConcurrencyMode.ATOMIC, 24, 100);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<IdempotencyService.Result<String>> first = pool.submit(() -> idempotencyService.execute(
+                    BankingMetrics.ADMIN_TRANSFER, 1L, "other-node", "body", String.class, () -> {
+                        started.countDown();
+                        await(release);
+                        return "first";
+                    }));
+            started.await();
+            assertThrows(IdempotencyKeyPendingException.class, () -> otherNode.execute(BankingMetrics.ADMIN_TRANSFER, 1L,
+                    "other-node", "body", String.class, () -> "second"));
+            release.countDown();
+            assertEquals("first", first.get().body());
+
+            IdempotencyService.Result<String> replay = otherNode.execute(BankingMetrics.ADMIN_TRANSFER, 1L,
+                    "other-node", "body", String.class, () -> "second");
+            assertEquals("first", replay.body());
+            assertTrue(replay.replayed());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void await(CountDownLatch latch){
+        try {
+            latch.await();
+        } catch (InterruptedException ex){
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    abstract long balance(long accountNo);
+}
@@ -0,0 +1,109 @@
+package com.example.banking;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.YearMonth;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//Small chunks so a handful of accounts spans several checkpoints
+@SpringBootTest(properties = {
+        "banking.concurrency.mode=ATOMIC",
+        "banking.interest.chunk-size=2",
+        "banking.interest.annual-rate-bps=" + InterestAccrualServiceTest.RATE_BPS})
+@ActiveProfiles("test")
+class InterestAccrualServiceTest {
+
+    static final int RATE_BPS = 350;
+
+    @Autowired
+    private InterestAccrualService interestAccrualService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private AccountRepository accountRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void rerunOfAPeriodDoesNotCreditTwice(){
+        Map<Long, Long> savings = new LinkedHashMap<>();
+        for(long balance : List.of(1_000_000L, 500_000L, 0L, 120_000L, 7L)){
+            savings.put(TestAccounts.open(userRepository, accountRepository, InterestAccrualService.SAVINGS, balance), balance);
+        }
+        long current = TestAccounts.open(userRepository, accountRepository, "CURRENT", 1_000_000);
+
+        YearMonth period = YearMonth.of(2025, 1);
+        interestAccrualService.accrue(period);
+        Map<Long, Long> credited = balances(savings.keySet());
+        savings.forEach((accountNo, before) ->
+                assertEquals(before + InterestAccrualService.interestOn(before, RATE_BPS), credited.get(accountNo), "account " + accountNo));
+        assertEquals(1_000_000L, balance(current));
+
+        //A completed period is not touched again
+        interestAccrualService.accrue(period);
+        assertEquals(credited, balances(savings.keySet()));
+
+        //As if the run died after its last chunk committed but before it was marked complete
+        jdbcTemplate.update("update interest_accrual_runs set completed_at = null where period = ?", period.toString());
+        interestAccrualService.accrue(period);
+        assertEquals(credited, balances(savings.keySet()));
+        savings.forEach((accountNo, before) ->
+                assertEquals(InterestAccrualService.interestOn(before, RATE_BPS) > 0 ? 1 : 0, interestRows(accountNo), "account " + accountNo));
+    }
+
+    @Test
+    void rerunCreditsOnlyTheChunksWithoutACheckpoint(){
+        long first = TestAccounts.open(userRepository, accountRepository, InterestAccrualService.SAVINGS, 240_000);
+        long second = TestAccounts.open(userRepository, accountRepository, InterestAccrualService.SAVINGS, 240_000);
+        YearMonth period = YearMonth.of(2025, 2);
+        interestAccrualService.accrue(period);
+        long interest = InterestAccrualService.interestOn(240_000, RATE_BPS);
+        assertEquals(240_000 + interest, balance(first));
+
+        //Dropping a checkpoint together with what its chunk wrote stands in for a chunk that rolled back
+        //Chunks are cut from account id 1 in steps of the chunk size
+        Long accountId = accountRepository.findByAccountNo(second).orElseThrow().getAccountId();
+        long chunkStart = (accountId - 1) / 2 * 2 + 1;
+        jdbcTemplate.update("delete from interest_accrual_chunks where period = ? and first_account_id = ?", period.toString(), chunkStart);
+        jdbcTemplate.update("update interest_accrual_runs set completed_at = null where period = ?", period.toString());
+        String description = "INTEREST FOR " + period;
+        List<Long> chunkAccounts = jdbcTemplate.queryForList(
+                "select account_no from bank_account where account_id between ? and ?", Long.class, chunkStart, chunkStart + 1);
+        for(Long accountNo : chunkAccounts){
+            Long amount = jdbcTemplate.queryForObject("select coalesce(sum(amount), 0) from transaction_history"
+                    + " where account_no = ? and description = ?", Long.class, accountNo, description);
+            jdbcTemplate.update("update bank_account set balance = balance - ? where account_no = ?", amount, accountNo);
+            jdbcTemplate.update("delete from transaction_history where account_no = ? and description = ?", accountNo, description);
+        }
+
+        interestAccrualService.accrue(period);
+        for(Long accountNo : List.of(first, second)){
+            assertEquals(240_000 + interest, balance(accountNo), "account " + accountNo);
+            assertEquals(1, interestRows(accountNo), "account " + accountNo);
+        }
+    }
+
+    private Map<Long, Long> balances(Iterable<Long> accountNos){
+        Map<Long, Long> balances = new LinkedHashMap<>();
+        accountNos.forEach(accountNo -> balances.put(accountNo, balance(accountNo)));
+        return balances;
+    }
+
+    private long balance(long accountNo){
+        return accountRepository.findByAccountNo(accountNo).orElseThrow().getBalance();
+    }
+
+    private int interestRows(long accountNo){
+        Integer rows = jdbcTemplate.queryForObject("select count(*) from transaction_history where account_no = ? and transaction_type = ?",
+                Integer.class, accountNo, InterestAccrualService.INTEREST);
+        return rows == null ? 0 : rows;
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.banking;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//The ledger is the source of truth: entries always balance, and cached balances that drift are found and rebuilt
+@SpringBootTest(properties = "banking.concurrency.mode=ATOMIC")
+@ActiveProfiles("test")
+class LedgerServiceTest {
+
+    private static final int SLOTS = 4;
+
+    @Autowired
+    private LedgerService ledgerService;
+    @Autowired
+    private AccountService accountService;
+    @Autowired
+    private BalanceSlotService balanceSlotService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private AccountRepository accountRepository;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void postedEntriesSumToZero(){
+        long from = TestAccounts.open(userRepository, accountRepository, "CURRENT", 0);
+        long to = TestAccounts.open(userRepository, accountRepository, "CURRENT", 0);
+        transactionTemplate.executeWithoutResult(status -> {
+            ledgerService.post(LedgerService.deposit(from, 500));
+            ledgerService.postAll(List.of(
+                    LedgerService.transfer(from, to, 200),
+                    LedgerService.withdraw(to, 50),
+                    LedgerService.interest(from, 7)));
+        });
+
+        assertEquals(300 + 7, ledgerBalance(from));
+        assertEquals(200 - 50, ledgerBalance(to));
+        List<Long> entrySums = jdbcTemplate.queryForList("select sum(amount) from ledger_postings where entry_id in"
+                + " (select entry_id from ledger_postings where account_no in (?, ?)) group by entry_id", Long.class, from, to);
+        assertEquals(4, entrySums.size());
+        entrySums.forEach(sum -> assertEquals(0L, sum));
+    }
+
+    //A bad entry in a batch rejects the whole batch before anything is written
+    @Test
+    void unbalancedEntryIsRejected(){
+        long accountNo = TestAccounts.open(userRepository, accountRepository, "CURRENT", 0);
+        LedgerService.Entry unbalanced = new LedgerService.Entry(LedgerPosting.DEPOSIT, List.of(
+                new LedgerService.Leg(LedgerPosting.CASH_ACCOUNT_NO, -100L), new LedgerService.Leg(accountNo, 90L)));
+
+        assertThrows(IllegalStateException.class, () -> transactionTemplate.executeWithoutResult(status ->
+                ledgerService.postAll(List.of(LedgerService.deposit(accountNo, 10), unbalanced))));
+        assertEquals(0, postings(accountNo));
+    }
+
+    @Test
+    void openingBackfillRunsOnce(){
+        long accountNo = TestAccounts.open(userRepository, accountRepository, "SAVINGS", 1_250);
+        assertEquals(0, postings(accountNo));
+
+        ledgerService.backfillOpeningBalances();
+        assertEquals(1, postings(accountNo));
+        assertEquals(1_250, ledgerBalance(accountNo));
+        assertEquals(-1_250L, jdbcTemplate.queryForObject("select sum(amount) from ledger_postings where entry_id = ? and account_no = ?",
+                Long.class, "opening-" + accountNo, LedgerPosting.CASH_ACCOUNT_NO));
+
+        ledgerService.backfillOpeningBalances();
+        assertEquals(1, postings(accountNo));
+        assertEquals(1_250, ledgerBalance(accountNo));
+    }
+
+    @Test
+    void driftIsReportedAndRebuilt(){
+        long accountNo = TestAccounts.open(userRepository, accountRepository, "CURRENT", 0);
+        accountService.Deposit(deposit(accountNo, 100));
+        //Accounts other tests opened with a balance and no postings would crowd the report
+        ledgerService.backfillOpeningBalances();
+        assertFalse(mismatched(accountNo));
+
+        jdbcTemplate.update("update bank_account set balance = balance + 7 where account_no = ?", accountNo);
+        assertTrue(mismatched(accountNo));
+
+        Map<String, Object> rebuilt = ledgerService.rebuildBalance(accountNo);
+        assertEquals(107L, rebuilt.get("previousBalance"));
+        assertEquals(100L, rebuilt.get("balance"));
+        assertEquals(true, rebuilt.get("changed"));
+        assertEquals(100, rowBalance(accountNo));
+        assertFalse(mismatched(accountNo));
+
+        assertEquals(false, ledgerService.rebuildBalance(accountNo).get("changed"));
+    }
+
+    //A sharded account's balance is its row plus its slots, the rebuild folds the slots into the row
+    @Test
+    void shardedDriftIsReportedAndRebuilt(){
+        long accountNo = TestAccounts.open(userRepository, accountRepository, "CURRENT", 0);
+        balanceSlotService.reshard(accountNo, SLOTS);
+        for(int i = 0; i < 5; i++){
+            accountService.Deposit(deposit(accountNo, 10));
+        }
+        ledgerService.backfillOpeningBalances();
+        assertEquals(0, rowBalance(accountNo));
+        assertEquals(50, balanceSlotService.slotTotal(accountNo));
+        assertFalse(mismatched(accountNo));
+
+        jdbcTemplate.update("update bank_account set balance = balance + 3 where account_no = ?", accountNo);
+        assertTrue(mismatched(accountNo));
+
+        Map<String, Object> rebuilt = ledgerService.rebuildBalance(accountNo);
+        assertEquals(53L, rebuilt.get("previousBalance"));
+        assertEquals(50L, rebuilt.get("balance"));
+        assertEquals(50, rowBalance(accountNo));
+        assertEquals(0, balanceSlotService.slotTotal(accountNo));
+        assertFalse(mismatched(accountNo));
+    }
+
+    @Test
+    void rebuildingAMissingAccountFails(){
+        assertThrows(AccountNotFoundException.class, () -> ledgerService.rebuildBalance(1L));
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean mismatched(long accountNo){
+        List<Map<String, Object>> rows = (List<Map<String, Object>>) ledgerService.verify().get("mismatchedBalances");
+        return rows.stream().anyMatch(row -> row.get("accountNo").equals(accountNo));
+    }
+
+    private long ledgerBalance(long accountNo){
+        return jdbcTemplate.queryForObject("select coalesce(sum(amount), 0) from ledger_postings where account_no = ?", Long.class, accountNo);
+    }
+
+    private int postings(long accountNo){
+        return jdbcTemplate.queryForObject("select count(*) from ledger_postings where account_no = ?", Integer.class, accountNo);
+    }
+
+    private long rowBalance(long accountNo){
+        return accountRepository.findByAccountNo(accountNo).orElseThrow().getBalance();
+    }
+
+    private static DepositRequest deposit(long accountNo, long amount){
+        DepositRequest request = new DepositRequest();
+        request.setAccountNo(accountNo);
+        request.setAmount(amount);
+        return request;
+    }
+}
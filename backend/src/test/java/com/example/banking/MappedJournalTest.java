@@ -0,0 +1,127 @@
+package com.example.banking;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//Recovery after a crash: everything durable before the damaged record comes back, nothing after it
+class MappedJournalTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+    private static final int RECORDS = 1000;
+
+    private static final MappedJournal.Codec<String> CODEC = new MappedJournal.Codec<>() {
+        @Override
+        public byte[] encode(String record) {
+            return record.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String decode(byte[] payload) {
+            return new String(payload, StandardCharsets.UTF_8);
+        }
+    };
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void truncatedSegmentRecoversUpToTheTornRecord() throws IOException {
+        long end = writeRecords();
+        //A record header whose payload never made it, then the file cut off in the middle of it
+        try (FileChannel channel = FileChannel.open(segmentFile(end), StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(12).putInt(50).putInt(12345).putInt(7);
+            channel.write(header.flip(), end % SEGMENT_SIZE);
+            channel.truncate(end % SEGMENT_SIZE + 10);
+        }
+
+        try (MappedJournal<String> journal = new MappedJournal<>(directory, "test", SEGMENT_SIZE, 0, CODEC)) {
+            assertEquals(end, journal.writePosition());
+            MappedJournal.Batch<String> batch = journal.read(0, RECORDS * 2);
+            assertEquals(expected(), batch.records());
+            assertEquals(end, batch.endPosition());
+
+            //The journal keeps going from the recovered end
+            assertTrue(journal.awaitDurable(journal.append(List.of("after")), 5, TimeUnit.SECONDS));
+            assertEquals(List.of("after"), journal.read(end, 10).records());
+        }
+    }
+
+    @Test
+    void recordFailingItsChecksumEndsRecovery() throws IOException {
+        long end = writeRecords();
+        String last = "record-" + (RECORDS - 1);
+        long lastPosition = end - 8 - last.length();
+        //One flipped payload byte of the last record
+        try (FileChannel channel = FileChannel.open(segmentFile(lastPosition), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long offset = lastPosition % SEGMENT_SIZE + 8;
+            ByteBuffer payload = ByteBuffer.allocate(1);
+            channel.read(payload, offset);
+            payload.put(0, (byte) (payload.get(0) ^ 1));
+            channel.write(payload.flip(), offset);
+        }
+
+        try (MappedJournal<String> journal = new MappedJournal<>(directory, "test", SEGMENT_SIZE, 0, CODEC)) {
+            assertEquals(lastPosition, journal.writePosition());
+            assertEquals(expected().subList(0, RECORDS - 1), journal.read(0, RECORDS * 2).records());
+        }
+    }
+
+    //Positions of a batch line up with its records, and a limit stops the read at a record boundary
+    @Test
+    void readStopsAtTheLimit() throws IOException {
+        try (MappedJournal<String> journal = new MappedJournal<>(directory, "test", SEGMENT_SIZE, 0, CODEC)) {
+            MappedJournal.Range first = journal.appendRange(List.of("a", "bb"));
+            MappedJournal.Range second = journal.appendRange(List.of("ccc"));
+            assertEquals(0, first.start());
+            assertEquals(first.end(), second.start());
+            assertTrue(journal.awaitDurable(second.end(), 5, TimeUnit.SECONDS));
+
+            MappedJournal.Batch<String> limited = journal.read(0, 10, second.start());
+            assertEquals(List.of("a", "bb"), limited.records());
+            assertEquals(second.start(), limited.endPosition());
+            assertEquals(0, limited.positions()[0]);
+            assertEquals(9, limited.positions()[1]);
+
+            MappedJournal.Batch<String> rest = journal.read(limited.endPosition(), 10);
+            assertEquals(List.of("ccc"), rest.records());
+            assertEquals(second.start(), rest.positions()[0]);
+            assertEquals(second.end(), rest.endPosition());
+        }
+    }
+
+    //Enough records to roll over several segments, each one durable before the next
+    private long writeRecords() throws IOException {
+        try (MappedJournal<String> journal = new MappedJournal<>(directory, "test", SEGMENT_SIZE, 0, CODEC)) {
+            for(String record : expected()){
+                assertTrue(journal.awaitDurable(journal.append(List.of(record)), 5, TimeUnit.SECONDS));
+            }
+            assertTrue(journal.writePosition() > 2 * SEGMENT_SIZE);
+            return journal.writePosition();
+        }
+    }
+
+    private static List<String> expected(){
+        List<String> records = new ArrayList<>(RECORDS);
+        for(int i = 0; i < RECORDS; i++){
+            records.add("record-" + i);
+        }
+        return records;
+    }
+
+    private Path segmentFile(long position){
+        return directory.resolve(String.format("test-%016d.journal", position / SEGMENT_SIZE));
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.banking;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.OptimisticLockException;
+import org.junit.jupiter.api.Test;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.TransactionSystemException;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+//Retries come from OPTIMISTIC mode's @Version checks, whether Spring reports them at flush or wrapped at commit
+class OptimisticRetryTest {
+
+    private static final int MAX_ATTEMPTS = 4;
+
+    @Test
+    void conflictsAreRetriedUntilTheWorkSucceeds(){
+        OptimisticRetry retry = retry(ConcurrencyMode.OPTIMISTIC);
+        AtomicInteger calls = new AtomicInteger();
+        String result = retry.run(BankingMetrics.DEPOSIT, () -> {
+            if(calls.incrementAndGet() < 3){
+                throw new ObjectOptimisticLockingFailureException(BankAccount.class, 1L);
+            }
+            return "done";
+        });
+        assertEquals("done", result);
+        assertEquals(3, calls.get());
+        assertEquals(2L, retry.stats().get("conflicts"));
+    }
+
+    @Test
+    void conflictWrappedAtCommitIsRetried(){
+        OptimisticRetry retry = retry(ConcurrencyMode.OPTIMISTIC);
+        AtomicInteger calls = new AtomicInteger();
+        retry.run(BankingMetrics.DEPOSIT, () -> {
+            if(calls.incrementAndGet() == 1){
+                throw new TransactionSystemException("Commit failed",
+                        new OptimisticLockException("Row was updated by another transaction"));
+            }
+            return null;
+        });
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void givesUpAfterTheLastAttempt(){
+        OptimisticRetry retry = retry(ConcurrencyMode.OPTIMISTIC);
+        AtomicInteger calls = new AtomicInteger();
+        assertThrows(ServiceBusyException.class, () -> retry.run(BankingMetrics.DEPOSIT, () -> {
+            calls.incrementAndGet();
+            throw new ObjectOptimisticLockingFailureException(BankAccount.class, 1L);
+        }));
+        assertEquals(MAX_ATTEMPTS, calls.get());
+        assertEquals(1L, retry.stats().get("retriesExhausted"));
+    }
+
+    @Test
+    void otherFailuresAreNotRetried(){
+        OptimisticRetry retry = retry(ConcurrencyMode.OPTIMISTIC);
+        AtomicInteger calls = new AtomicInteger();
+        assertThrows(InsufficientBalanceException.class, () -> retry.run(BankingMetrics.WITHDRAW, () -> {
+            calls.incrementAndGet();
+            throw new InsufficientBalanceException("Insufficient Balance for Withdraw");
+        }));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void otherModesRunTheWorkOnce(){
+        OptimisticRetry retry = retry(ConcurrencyMode.ATOMIC);
+        AtomicInteger calls = new AtomicInteger();
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> retry.run(BankingMetrics.DEPOSIT, () -> {
+            calls.incrementAndGet();
+            throw new ObjectOptimisticLockingFailureException(BankAccount.class, 1L);
+        }));
+        assertEquals(1, calls.get());
+    }
+
+    private static OptimisticRetry retry(ConcurrencyMode mode){
+        return new OptimisticRetry(mode, MAX_ATTEMPTS, 1, 2, new SimpleMeterRegistry());
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.banking;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+//SEQUENCED is the mode where the engine applies a command outside any transaction, the pending row must cover it
+@SpringBootTest(properties = "banking.concurrency.mode=SEQUENCED")
+@ActiveProfiles("test")
+class SequencedIdempotencyServiceTest extends IdempotencyRaceTest {
+
+    @Autowired
+    private SequencedLedgerEngine sequencedLedgerEngine;
+
+    @Override
+    long balance(long accountNo){
+        return sequencedLedgerEngine.balance(accountNo).orElseThrow();
+    }
+}
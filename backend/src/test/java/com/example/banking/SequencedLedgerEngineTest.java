@@ -0,0 +1,109 @@
+package com.example.banking;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//The context runs in ATOMIC mode, each test builds its own engines on a private directory and journal id
+@SpringBootTest(properties = "banking.concurrency.mode=ATOMIC")
+@ActiveProfiles("test")
+class SequencedLedgerEngineTest {
+
+    private static final String SNAPSHOT_FILE = "engine.snapshot";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private LedgerService ledgerService;
+    @Autowired
+    private TransactionHistoryWriter transactionHistoryWriter;
+    @Autowired
+    private HistoryJournalCheckpointRepository checkpointRepository;
+    @Autowired
+    private RecentTransactionsCache recentTransactionsCache;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void restartReplaysTheJournalTailOnTopOfTheSnapshot() throws IOException {
+        long a = TestAccounts.open(userRepository, accountRepository, "SAVINGS", 10_000);
+        long b = TestAccounts.open(userRepository, accountRepository, "SAVINGS", 5_000);
+        long c = TestAccounts.open(userRepository, accountRepository, "CURRENT", 0);
+
+        SequencedLedgerEngine first = engine("replay-test");
+        first.open();
+        first.transfer(a, b, 1_000);
+        first.deposit(c, 300);
+        first.withdraw(b, 200);
+        first.snapshot();
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        Path earlySnapshot = directory.resolve(SNAPSHOT_FILE + ".early");
+        Files.copy(snapshot, earlySnapshot);
+
+        //The tail after the snapshot: an account the engine brings in from MySQL, an accepted and a rejected command
+        long d = TestAccounts.open(userRepository, accountRepository, "CURRENT", 40);
+        first.transfer(b, c, 2_500);
+        assertEquals(SequencedLedgerEngine.Status.INSUFFICIENT, first.transfer(a, c, 20_000).status());
+        first.withdraw(a, 500);
+        first.deposit(d, 60);
+        Map<Long, Long> expected = balances(first, List.of(a, b, c, d));
+        assertEquals(Map.of(a, 8_500L, b, 3_300L, c, 2_800L, d, 100L), expected);
+
+        //Close projects everything into MySQL and snapshots the end state; putting the early snapshot back leaves
+        //what a crash would have: the snapshot, then the journal commands written after it
+        first.close();
+        assertEquals(expected, mysqlBalances(expected.keySet()));
+        Files.move(earlySnapshot, snapshot, StandardCopyOption.REPLACE_EXISTING);
+        //With a snapshot on disk MySQL is not read, wrong rows there must not matter
+        expected.keySet().forEach(accountNo ->
+                jdbcTemplate.update("update bank_account set balance = -1 where account_no = ?", accountNo));
+
+        SequencedLedgerEngine second = engine("replay-test");
+        second.open();
+        try {
+            assertEquals(expected, balances(second, expected.keySet()));
+        } finally {
+            second.close();
+        }
+    }
+
+    private SequencedLedgerEngine engine(String journalId){
+        return new SequencedLedgerEngine(jdbcTemplate, ledgerService, transactionHistoryWriter, checkpointRepository,
+                recentTransactionsCache, transactionManager, ConcurrencyMode.SEQUENCED, journalId, directory.toString(),
+                1, 1024, 1000, 5000);
+    }
+
+    private static Map<Long, Long> balances(SequencedLedgerEngine engine, Iterable<Long> accountNos){
+        Map<Long, Long> balances = new LinkedHashMap<>();
+        accountNos.forEach(accountNo -> balances.put(accountNo, engine.balance(accountNo).orElseThrow()));
+        return balances;
+    }
+
+    private Map<Long, Long> mysqlBalances(Iterable<Long> accountNos){
+        Map<Long, Long> balances = new LinkedHashMap<>();
+        accountNos.forEach(accountNo -> balances.put(accountNo,
+                jdbcTemplate.queryForObject("select balance from bank_account where account_no = ?", Long.class, accountNo)));
+        return balances;
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.banking;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+//Opens users and accounts through the repositories, with account numbers no other test uses
+final class TestAccounts {
+
+    private static final AtomicLong NEXT_ACCOUNT_NO = new AtomicLong(2_000_000_000L);
+
+    private TestAccounts(){
+    }
+
+    static long open(UserRepository userRepository, AccountRepository accountRepository, String accountType, long balance){
+        long accountNo = NEXT_ACCOUNT_NO.incrementAndGet();
+        BankUser user = new BankUser();
+        user.setName("Test " + accountNo);
+        user.setEmail("test" + accountNo + "@test.local");
+        user.setPassword("not-a-hash");
+        user.setMobileNo("9000000000");
+        user.setAddress("Test Street");
+        userRepository.save(user);
+
+        BankAccount account = new BankAccount();
+        account.setBankUser(user);
+        account.setAccountNo(accountNo);
+        account.setAccountType(accountType);
+        account.setBalance(balance);
+        accountRepository.save(account);
+        return accountNo;
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.banking;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//Revoking all of a user's tokens must catch every token issued up to the revocation, even within the same second
+@SpringBootTest
+@ActiveProfiles("test")
+class TokenRevocationServiceTest {
+
+    @Autowired
+    private TokenRevocationService tokenRevocationService;
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Test
+    void tokensIssuedUpToTheRevocationAreRevoked() throws InterruptedException {
+        BankUser user = user(7_000_001L);
+        JwtPrincipal before = jwtUtil.parse(jwtUtil.generateToken(user));
+        //A token from before the millisecond claim existed, its iat is cut to the second
+        JwtPrincipal legacy = new JwtPrincipal(user.getUserId(), user.getEmail(), user.getRole(), "legacy-token",
+                Instant.now().truncatedTo(ChronoUnit.SECONDS), Instant.now().plusSeconds(3600));
+        assertFalse(tokenRevocationService.isRevoked(before));
+
+        tokenRevocationService.revokeAllForUser(user.getUserId());
+        assertTrue(tokenRevocationService.isRevoked(before));
+        assertTrue(tokenRevocationService.isRevoked(legacy));
+
+        //The next login, typically well inside the same second
+        Thread.sleep(2);
+        JwtPrincipal after = jwtUtil.parse(jwtUtil.generateToken(user));
+        assertFalse(tokenRevocationService.isRevoked(after));
+        assertTrue(tokenRevocationService.isRevoked(before));
+    }
+
+    @Test
+    void otherUsersAreNotAffected(){
+        BankUser revoked = user(7_000_002L);
+        BankUser other = user(7_000_003L);
+        JwtPrincipal otherToken = jwtUtil.parse(jwtUtil.generateToken(other));
+
+        tokenRevocationService.revokeAllForUser(revoked.getUserId());
+        assertFalse(tokenRevocationService.isRevoked(otherToken));
+    }
+
+    private static BankUser user(long userId){
+        BankUser user = new BankUser();
+        user.setUserId(userId);
+        user.setEmail("revocation" + userId + "@test.local");
+        return user;
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.banking;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+//Write-behind history: rows of a transaction that rolls back after the journal write never reach transaction_history
+//Each test opens its own recorders on a temporary journal, the application's recorder stays in direct mode
+@SpringBootTest(properties = "banking.concurrency.mode=ATOMIC")
+@ActiveProfiles("test")
+class TransactionHistoryRecorderTest {
+
+    private static final AtomicLong NEXT_ACCOUNT_NO = new AtomicLong(980_000_000L);
+
+    @Autowired
+    private TransactionHistoryRepository transactionHistoryRepository;
+    @Autowired
+    private TransactionHistoryWriter transactionHistoryWriter;
+    @Autowired
+    private HistoryJournalCheckpointRepository checkpointRepository;
+    @Autowired
+    private RecentTransactionsCache recentTransactionsCache;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void rollbackAfterTheJournalWriteIsNotDrained() throws IOException {
+        TransactionHistoryRecorder recorder = recorder("rollback");
+        long rolledBack = NEXT_ACCOUNT_NO.incrementAndGet();
+        long committed = NEXT_ACCOUNT_NO.incrementAndGet();
+        try {
+            assertThrows(IllegalStateException.class, () -> recordThenFailCommit(recorder, rolledBack));
+            record(recorder, committed);
+            recorder.drain();
+            assertEquals(0, stored(rolledBack));
+            assertEquals(2, stored(committed));
+        } finally {
+            recorder.close();
+        }
+    }
+
+    //As if the node died after the rollback: a recorder opened on the same journal finds the tombstone
+    @Test
+    void tombstoneSurvivesARestart() throws IOException {
+        TransactionHistoryRecorder crashed = recorder("restart");
+        long rolledBack = NEXT_ACCOUNT_NO.incrementAndGet();
+        long committed = NEXT_ACCOUNT_NO.incrementAndGet();
+        assertThrows(IllegalStateException.class, () -> recordThenFailCommit(crashed, rolledBack));
+        record(crashed, committed);
+
+        TransactionHistoryRecorder restarted = recorder("restart");
+        try {
+            restarted.drain();
+            assertEquals(0, stored(rolledBack));
+            assertEquals(2, stored(committed));
+        } finally {
+            restarted.close();
+        }
+    }
+
+    //Rows of a transaction still committing stay in the journal, and so does everything journaled after them
+    @Test
+    void drainStopsShortOfTransactionsInFlight() throws Exception {
+        TransactionHistoryRecorder recorder = recorder("in-flight");
+        long pending = NEXT_ACCOUNT_NO.incrementAndGet();
+        long later = NEXT_ACCOUNT_NO.incrementAndGet();
+        CountDownLatch journaled = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> slow = pool.submit(() -> new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                recorder.recordAll(rows(pending));
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void beforeCommit(boolean readOnly) {
+                        journaled.countDown();
+                        await(release);
+                    }
+                });
+            }));
+            journaled.await();
+            record(recorder, later);
+            recorder.drain();
+            assertEquals(0, stored(pending));
+            assertEquals(0, stored(later));
+
+            release.countDown();
+            slow.get();
+            recorder.drain();
+            assertEquals(2, stored(pending));
+            assertEquals(2, stored(later));
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+            recorder.close();
+        }
+    }
+
+    private TransactionHistoryRecorder recorder(String journalId) throws IOException {
+        TransactionHistoryRecorder recorder = new TransactionHistoryRecorder(transactionHistoryRepository, transactionHistoryWriter,
+                checkpointRepository, recentTransactionsCache, jdbcTemplate, transactionManager,
+                true, journalId, directory.resolve(journalId).toString(), 1, 1000, 100);
+        recorder.open();
+        return recorder;
+    }
+
+    private void record(TransactionHistoryRecorder recorder, long accountNo){
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> recorder.recordAll(rows(accountNo)));
+    }
+
+    //Registered after the recorder, so it runs once the rows are journaled and turns the commit into a rollback
+    private void recordThenFailCommit(TransactionHistoryRecorder recorder, long accountNo){
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            recorder.recordAll(rows(accountNo));
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    throw new IllegalStateException("commit refused");
+                }
+            });
+        });
+    }
+
+    private static List<TransactionHistory> rows(long accountNo){
+        return List.of(
+                new TransactionHistory(null, accountNo, "DEPOSIT", 10L, "first", LocalDateTime.now()),
+                new TransactionHistory(null, accountNo, "DEPOSIT", 20L, "second", LocalDateTime.now()));
+    }
+
+    private int stored(long accountNo){
+        return jdbcTemplate.queryForObject("select count(*) from transaction_history where account_no = ?", Integer.class, accountNo);
+    }
+
+    private static void await(CountDownLatch latch){
+        try {
+            latch.await();
+        } catch (InterruptedException ex){
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -9,6 +9,8 @@ import { CreditCard, RefreshCw } from 'lucide-react';
 import { useToast } from '@/hooks/use-toast';
 import { Select, SelectContent, SelectItem, SelectTrigger, SelectValue } from '@/components/ui/select';
 
+const PAGE_SIZE = 20;
+
 export default function AdminAccounts() {
   const { toast } = useToast();
   const [accounts, setAccounts] = useState<Account[]>([]);
@@ -17,11 +19,17 @@ export default function AdminAccounts() {
   const [editAccount, setEditAccount] = useState<Account | null>(null);
   const [editType, setEditType] = useState<Account['accountType']>('SAVINGS');
 
+  const [page, setPage] = useState(0);
+  const [totalPages, setTotalPages] = useState(0);
+  const [totalAccounts, setTotalAccounts] = useState(0);
+
   const load = async () => {
     setLoading(true);
     try {
-      const data = await accountService.getAllAccounts();
-      setAccounts(data);
+      const data = await accountService.getAccountsPage({ page, size: PAGE_SIZE });
+      setAccounts(data.content);
+      setTotalPages(data.totalPages);
+      setTotalAccounts(data.totalElements);
     } finally {
       setLoading(false);
     }
@@ -29,7 +37,7 @@ export default function AdminAccounts() {
 
   useEffect(() => {
     load();
-  }, []);
+  }, [page]);
 
   const formatCurrency = (amount: number) => new Intl.NumberFormat('en-IN', { style: 'currency', currency: 'INR', maximumFractionDigits: 2 }).format(amount);
 
@@ -69,6 +77,13 @@ export default function AdminAccounts() {
               </TableBody>
             </Table>
           </div>
+          <div className="flex items-center justify-between mt-4 text-sm text-muted-foreground">
+            <span>{totalAccounts} accounts • page {totalPages === 0 ? 0 : page + 1} of {totalPages}</span>
+            <div className="space-x-2">
+              <Button size="sm" variant="outline" disabled={page === 0 || loading} onClick={() => setPage(p => p - 1)}>Previous</Button>
+              <Button size="sm" variant="outline" disabled={page + 1 >= totalPages || loading} onClick={() => setPage(p => p + 1)}>Next</Button>
+            </div>
+          </div>
         </CardContent>
       </Card>
 
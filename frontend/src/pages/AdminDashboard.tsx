@@ -1,7 +1,7 @@
 import { useState, useEffect } from 'react';
 import { userService } from '@/services/userService';
 import { accountService } from '@/services/accountService';
-import { User, Account, Transaction } from '@/types/banking';
+import { User, Account, Transaction, BankStats } from '@/types/banking';
 import { Card, CardContent, CardHeader, CardTitle } from '@/components/ui/card';
 import { Button } from '@/components/ui/button';
 import { Input } from '@/components/ui/input';
@@ -30,16 +30,23 @@ import {
   TableRow,
 } from "@/components/ui/table";
 
+const USERS_PAGE_SIZE = 20;
+const ACCOUNTS_PAGE_SIZE = 10;
+
 export default function AdminDashboard() {
   const { toast } = useToast();
   
   const [users, setUsers] = useState<User[]>([]);
   const [accounts, setAccounts] = useState<Account[]>([]);
+  const [stats, setStats] = useState<BankStats | null>(null);
   const [selectedAccount, setSelectedAccount] = useState<Account | null>(null);
   const [transactions, setTransactions] = useState<Transaction[]>([]);
   const [isTxLoading, setIsTxLoading] = useState(false);
-  const [showAllAccounts, setShowAllAccounts] = useState(false);
   const [searchTerm, setSearchTerm] = useState('');
+  const [usersPage, setUsersPage] = useState(0);
+  const [usersTotalPages, setUsersTotalPages] = useState(0);
+  const [accountsPage, setAccountsPage] = useState(0);
+  const [accountsTotalPages, setAccountsTotalPages] = useState(0);
   const [isLoading, setIsLoading] = useState(true);
   const [error, setError] = useState('');
   const [selectedUser, setSelectedUser] = useState<User | null>(null);
@@ -52,40 +59,55 @@ export default function AdminDashboard() {
     fetchAdminData();
   }, []);
 
-  const fetchAdminData = async () => {
-    setIsLoading(true);
-    setError('');
-    let usersOk = true;
-    let accountsOk = true;
+  // Search and paging happen on the server, only the current page of each list is held here
+  useEffect(() => {
+    const timer = setTimeout(loadUsers, 300);
+    return () => clearTimeout(timer);
+  }, [usersPage, searchTerm]);
+
+  useEffect(() => {
+    loadAccounts();
+  }, [accountsPage]);
+
+  const loadUsers = async () => {
     try {
-      const usersData = await userService.getAllUsers();
-      setUsers(usersData);
+      const data = await userService.getUsersPage({ page: usersPage, size: USERS_PAGE_SIZE, search: searchTerm });
+      setUsers(data.content);
+      setUsersTotalPages(data.totalPages);
     } catch (err: any) {
-      usersOk = false;
       setUsers([]);
+      setError('Some admin data failed to load.');
       toast({ title: "Users fetch failed", description: err.message || 'Unable to load users', variant: 'destructive' });
     }
+  };
+
+  const loadAccounts = async () => {
     try {
-      const accountsData = await accountService.getAllAccounts();
-      setAccounts(accountsData);
+      const data = await accountService.getAccountsPage({ page: accountsPage, size: ACCOUNTS_PAGE_SIZE });
+      setAccounts(data.content);
+      setAccountsTotalPages(data.totalPages);
     } catch (err: any) {
-      accountsOk = false;
       setAccounts([]);
+      setError('Some admin data failed to load.');
       toast({ title: "Accounts fetch failed", description: err.message || 'Unable to load accounts', variant: 'destructive' });
     }
-    if (!usersOk || !accountsOk) {
-      setError('Some admin data failed to load.');
+  };
+
+  const fetchAdminData = async () => {
+    setIsLoading(true);
+    try {
+      setStats(await accountService.getBankStats());
+    } catch (err: any) {
+      setStats(null);
     }
     setIsLoading(false);
   };
 
-  const filteredUsers = users.filter(user =>
-    user.name.toLowerCase().includes(searchTerm.toLowerCase()) ||
-    user.email.toLowerCase().includes(searchTerm.toLowerCase())
-  );
-
-  const totalBalance = accounts.reduce((sum, account) => sum + account.balance, 0);
-  const activeUsers = users.filter(user => user.role === 'USER').length;
+  // Totals come from the server-side counters, the lists only hold one page
+  const totalBalance = stats?.totalBalance ?? 0;
+  const totalUsers = stats?.totalUsers ?? 0;
+  const totalAccounts = stats?.totalAccounts ?? 0;
+  const activeUsers = stats?.usersByRole?.USER ?? 0;
 
   const formatCurrency = (amount: number) => {
     return new Intl.NumberFormat('en-IN', {
@@ -183,7 +205,7 @@ export default function AdminDashboard() {
             <Users className="h-4 w-4 text-primary" />
           </CardHeader>
           <CardContent>
-            <div className="text-2xl font-bold">{users.length}</div>
+            <div className="text-2xl font-bold">{totalUsers}</div>
             <p className="text-xs text-muted-foreground mt-1">
               {activeUsers} active users
             </p>
@@ -198,7 +220,7 @@ export default function AdminDashboard() {
             <CreditCard className="h-4 w-4 text-primary" />
           </CardHeader>
           <CardContent>
-            <div className="text-2xl font-bold">{accounts.length}</div>
+            <div className="text-2xl font-bold">{totalAccounts}</div>
             <p className="text-xs text-muted-foreground mt-1">
               All account types
             </p>
@@ -259,14 +281,14 @@ export default function AdminDashboard() {
               <Input
                 placeholder="Search users..."
                 value={searchTerm}
-                onChange={(e) => setSearchTerm(e.target.value)}
+                onChange={(e) => { setSearchTerm(e.target.value); setUsersPage(0); }}
                 className="banking-input pl-10"
               />
             </div>
           </CardHeader>
           <CardContent className="flex-1 overflow-y-auto max-h-[800px]">
             <div className="space-y-4 ">
-              {filteredUsers.map((user) => (
+              {users.map((user) => (
                 <div
                   key={user.id}
                   className="flex items-center justify-between p-4 bg-muted/30 rounded-lg hover:bg-muted/50 transition-colors"
@@ -302,7 +324,7 @@ export default function AdminDashboard() {
                       try {
                         await userService.deleteUser(user.id);
                         toast({ title: 'Deleted', description: 'User removed' });
-                        setUsers(prev => prev.filter(u => u.id !== user.id));
+                        loadUsers();
                       } catch {
                         toast({ title: 'Error', description: 'Failed to delete user', variant: 'destructive' });
                       }
@@ -313,6 +335,13 @@ export default function AdminDashboard() {
                 </div>
               ))}
             </div>
+            <div className="flex items-center justify-between mt-4 text-sm text-muted-foreground">
+              <span>page {usersTotalPages === 0 ? 0 : usersPage + 1} of {usersTotalPages}</span>
+              <div className="space-x-2">
+                <Button size="sm" variant="outline" disabled={usersPage === 0} onClick={() => setUsersPage(p => p - 1)}>Previous</Button>
+                <Button size="sm" variant="outline" disabled={usersPage + 1 >= usersTotalPages} onClick={() => setUsersPage(p => p + 1)}>Next</Button>
+              </div>
+            </div>
           </CardContent>
         </Card>
 
@@ -336,7 +365,7 @@ export default function AdminDashboard() {
                   </TableRow>
                 </TableHeader>
                 <TableBody>
-                  {(showAllAccounts ? accounts : accounts.slice(0, 10)).map((account) => (
+                  {accounts.map((account) => (
                     <TableRow key={account.id}>
                      { <TableCell className="font-mono">
                         {account.accountNumber}
@@ -364,11 +393,13 @@ export default function AdminDashboard() {
                 </TableBody>
               </Table>
             </div>
-            {accounts.length > 10 && (
-              <div className="mt-4 text-center">
-                <Button variant="outline" size="sm" onClick={() => setShowAllAccounts(v => !v)} ></Button>
+            <div className="flex items-center justify-between mt-4 text-sm text-muted-foreground">
+              <span>page {accountsTotalPages === 0 ? 0 : accountsPage + 1} of {accountsTotalPages}</span>
+              <div className="space-x-2">
+                <Button size="sm" variant="outline" disabled={accountsPage === 0} onClick={() => setAccountsPage(p => p - 1)}>Previous</Button>
+                <Button size="sm" variant="outline" disabled={accountsPage + 1 >= accountsTotalPages} onClick={() => setAccountsPage(p => p + 1)}>Next</Button>
               </div>
-            )}
+            </div>
           </CardContent>
         </Card>
       </div>
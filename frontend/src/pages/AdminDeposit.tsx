@@ -1,5 +1,6 @@
-import { useState } from 'react';
+import { useState, useRef } from 'react';
 import { accountService } from '@/services/accountService';
+import { newIdempotencyKey } from '@/services/api';
 import { useEffect } from 'react';
 import { Account } from '@/types/banking';
 import { Select, SelectContent, SelectItem, SelectTrigger, SelectValue } from '@/components/ui/select';
@@ -8,16 +9,25 @@ import { Input } from '@/components/ui/input';
 import { Label } from '@/components/ui/label';
 import { Button } from '@/components/ui/button';
 import { Alert, AlertDescription } from '@/components/ui/alert';
-import { DollarSign, CreditCard, Loader2 } from 'lucide-react';
+import { DollarSign, CreditCard, Loader2, Search } from 'lucide-react';
 import { useToast } from '@/hooks/use-toast';
 
+const MATCHES_SIZE = 20;
+
 export default function AdminDeposit() {
   const { toast } = useToast();
   const [accountNo, setAccountNo] = useState('');
   const [accounts, setAccounts] = useState<Account[]>([]);
+  const [accountSearch, setAccountSearch] = useState('');
   const [amount, setAmount] = useState<number | ''>('');
   const [error, setError] = useState('');
   const [loading, setLoading] = useState(false);
+  // Kept across resubmits of the same deposit, replaced when the account or amount changes or after success
+  const idempotencyKey = useRef(newIdempotencyKey());
+
+  useEffect(() => {
+    idempotencyKey.current = newIdempotencyKey();
+  }, [accountNo, amount]);
 
   const submit = async (e: React.FormEvent) => {
     e.preventDefault();
@@ -32,7 +42,7 @@ export default function AdminDeposit() {
     }
     try {
       setLoading(true);
-      const t = await accountService.adminDeposit(accountNo, Number(amount), 'Admin deposit');
+      const t = await accountService.adminDeposit(accountNo, Number(amount), 'Admin deposit', idempotencyKey.current);
       toast({ title: 'Success', description: `Deposited ${new Intl.NumberFormat('en-IN',{style:'currency',currency:'INR'}).format(Number(amount))}` });
       setAmount('');
       setAccountNo('');
@@ -43,14 +53,16 @@ export default function AdminDeposit() {
     }
   };
 
+  // Matches come from the server, by owner name or email or an exact account number
   useEffect(() => {
-    (async () => {
+    const timer = setTimeout(async () => {
       try {
-        const data = await accountService.getAllAccounts();
-        setAccounts(data);
+        const data = await accountService.getAccountsPage({ size: MATCHES_SIZE, search: accountSearch });
+        setAccounts(data.content);
       } catch {}
-    })();
-  }, []);
+    }, 300);
+    return () => clearTimeout(timer);
+  }, [accountSearch]);
 
   return (
     <div className="container mx-auto p-6 max-w-xl">
@@ -70,6 +82,20 @@ export default function AdminDeposit() {
               </Alert>
             )}
 
+            <div className="space-y-2">
+              <Label htmlFor="accountSearch">Find Account</Label>
+              <div className="relative">
+                <Search className="absolute left-3 top-3 h-4 w-4 text-muted-foreground" />
+                <Input
+                  id="accountSearch"
+                  placeholder="Owner name, email or account number"
+                  value={accountSearch}
+                  onChange={(e) => setAccountSearch(e.target.value)}
+                  className="banking-input pl-10"
+                />
+              </div>
+            </div>
+
             <div className="space-y-2">
               <Label htmlFor="accountNo">Account Number</Label>
               <div className="grid grid-cols-1 md:grid-cols-2 gap-2">
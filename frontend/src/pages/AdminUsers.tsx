@@ -10,6 +10,8 @@ import { Table, TableHeader, TableRow, TableHead, TableBody, TableCell } from '@
 import { Users, Search, Trash, Eye, Edit } from 'lucide-react';
 import { useToast } from '@/hooks/use-toast';
 
+const PAGE_SIZE = 20;
+
 export default function AdminUsers() {
   const { toast } = useToast();
   const [users, setUsers] = useState<User[]>([]);
@@ -22,14 +24,22 @@ export default function AdminUsers() {
   const [editAccountNo, setEditAccountNo] = useState<string>('');
   const [editAccountType, setEditAccountType] = useState<Account['accountType']>('SAVINGS');
 
+  const [page, setPage] = useState(0);
+  const [totalPages, setTotalPages] = useState(0);
+  const [totalUsers, setTotalUsers] = useState(0);
+
+  // Search and paging happen on the server, only the current page is held here
   const load = async () => {
-    const data = await userService.getAllUsers();
-    setUsers(data);
+    const data = await userService.getUsersPage({ page, size: PAGE_SIZE, search });
+    setUsers(data.content);
+    setTotalPages(data.totalPages);
+    setTotalUsers(data.totalElements);
   };
 
   useEffect(() => {
-    load();
-  }, []);
+    const timer = setTimeout(load, 300);
+    return () => clearTimeout(timer);
+  }, [page, search]);
 
   const onViewAccounts = async (user: User) => {
     setSelected(user);
@@ -98,8 +108,6 @@ export default function AdminUsers() {
     }
   };
 
-  const filtered = users.filter(u => u.name.toLowerCase().includes(search.toLowerCase()) || u.email.toLowerCase().includes(search.toLowerCase()));
-
   const formatCurrency = (amount: number) => new Intl.NumberFormat('en-IN', { style: 'currency', currency: 'INR', maximumFractionDigits: 2 }).format(amount);
 
   return (
@@ -112,7 +120,7 @@ export default function AdminUsers() {
           </CardTitle>
           <div className="relative mt-4">
             <Search className="absolute left-3 top-3 h-4 w-4 text-muted-foreground" />
-            <Input value={search} onChange={e => setSearch(e.target.value)} placeholder="Search users..." className="banking-input pl-10" />
+            <Input value={search} onChange={e => { setSearch(e.target.value); setPage(0); }} placeholder="Search users..." className="banking-input pl-10" />
           </div>
         </CardHeader>
         <CardContent>
@@ -123,15 +131,19 @@ export default function AdminUsers() {
                   <TableHead>Name</TableHead>
                   <TableHead>Email</TableHead>
                   <TableHead>Role</TableHead>
+                  <TableHead className="text-right">Accounts</TableHead>
+                  <TableHead className="text-right">Total Balance</TableHead>
                   <TableHead></TableHead>
                 </TableRow>
               </TableHeader>
               <TableBody>
-                {filtered.map(u => (
+                {users.map(u => (
                   <TableRow key={u.id}>
                     <TableCell>{u.name}</TableCell>
                     <TableCell className="text-muted-foreground">{u.email}</TableCell>
                     <TableCell><Badge>{u.role}</Badge></TableCell>
+                    <TableCell className="text-right">{u.accountCount ?? 0}</TableCell>
+                    <TableCell className="text-right">{formatCurrency(u.totalBalance ?? 0)}</TableCell>
                     <TableCell className="text-right">
                       <Button size="sm" variant="outline" onClick={() => onViewAccounts(u)}><Eye className="h-4 w-4 mr-1" /> Accounts</Button>
                       <Button size="sm" variant="outline" className="ml-2" onClick={() => onEdit(u)}><Edit className="h-4 w-4 mr-1" /> Edit</Button>
@@ -142,6 +154,13 @@ export default function AdminUsers() {
               </TableBody>
             </Table>
           </div>
+          <div className="flex items-center justify-between mt-4 text-sm text-muted-foreground">
+            <span>{totalUsers} users • page {totalPages === 0 ? 0 : page + 1} of {totalPages}</span>
+            <div className="space-x-2">
+              <Button size="sm" variant="outline" disabled={page === 0} onClick={() => setPage(p => p - 1)}>Previous</Button>
+              <Button size="sm" variant="outline" disabled={page + 1 >= totalPages} onClick={() => setPage(p => p + 1)}>Next</Button>
+            </div>
+          </div>
         </CardContent>
       </Card>
       <Card className="banking-card">
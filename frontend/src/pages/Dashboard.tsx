@@ -19,11 +19,15 @@ import {
 import { Link } from 'react-router-dom';
 import { useToast } from '@/hooks/use-toast';
 
+// Admins see the first accounts of the bank, its totals come from the server-side counters
+const ADMIN_ACCOUNTS_SIZE = 10;
+
 export default function Dashboard() {
   const { state } = useAuth();
   const { toast } = useToast();
   
   const [accounts, setAccounts] = useState<Account[]>([]);
+  const [bankTotals, setBankTotals] = useState<{ balance: number; accounts: number } | null>(null);
   const [recentTransactions, setRecentTransactions] = useState<Transaction[]>([]);
   const [allTransactions, setAllTransactions] = useState<Transaction[]>([]);
   const [showAllTx, setShowAllTx] = useState(false);
@@ -39,9 +43,18 @@ export default function Dashboard() {
     setError('');
     
     try {
-      const accountsData = state.user?.role === 'ADMIN'
-        ? await accountService.getAllAccounts()
-        : await accountService.getAccounts();
+      let accountsData: Account[];
+      if (state.user?.role === 'ADMIN') {
+        const [page, stats] = await Promise.all([
+          accountService.getAccountsPage({ size: ADMIN_ACCOUNTS_SIZE }),
+          accountService.getBankStats(),
+        ]);
+        accountsData = page.content;
+        setBankTotals({ balance: stats.totalBalance, accounts: stats.totalAccounts });
+      } else {
+        accountsData = await accountService.getAccounts();
+        setBankTotals(null);
+      }
 
       setAccounts(accountsData);
       if (accountsData.length > 0) {
@@ -64,9 +77,11 @@ export default function Dashboard() {
   };
 
   const calculateTotalBalance = () => {
-    return accounts.reduce((total, account) => total + account.balance, 0);
+    return bankTotals?.balance ?? accounts.reduce((total, account) => total + account.balance, 0);
   };
 
+  const accountCount = bankTotals?.accounts ?? accounts.length;
+
   const formatCurrency = (amount: number) => {
     return new Intl.NumberFormat('en-IN', {
       style: 'currency',
@@ -132,7 +147,7 @@ export default function Dashboard() {
               {formatCurrency(calculateTotalBalance())}
             </div>
             <p className="text-xs text-muted-foreground mt-1">
-              Across {accounts.length} account{accounts.length !== 1 ? 's' : ''}
+              Across {accountCount} account{accountCount !== 1 ? 's' : ''}
             </p>
           </CardContent>
         </Card>
@@ -145,7 +160,7 @@ export default function Dashboard() {
             <CreditCard className="h-4 w-4 text-primary" />
           </CardHeader>
           <CardContent>
-            <div className="text-2xl font-bold">{accounts.length}</div>
+            <div className="text-2xl font-bold">{accountCount}</div>
             <p className="text-xs text-muted-foreground mt-1">
               All accounts active
             </p>
@@ -1,7 +1,8 @@
-import { useState, useEffect } from 'react';
+import { useState, useEffect, useRef } from 'react';
 import { useAuth } from '@/contexts/AuthContext';
 import { useSearchParams, useNavigate } from 'react-router-dom';
 import { accountService } from '@/services/accountService';
+import { newIdempotencyKey } from '@/services/api';
 import { Account, TransferRequest } from '@/types/banking';
 import { Button } from '@/components/ui/button';
 import { Input } from '@/components/ui/input';
@@ -36,11 +37,17 @@ export default function Transfer() {
   const [isLoading, setIsLoading] = useState(false);
   const [isLoadingAccounts, setIsLoadingAccounts] = useState(true);
   const [errors, setErrors] = useState<Record<string, string>>({});
+  // Resubmitting the same transfer reuses the key, so a response lost on the way back never pays twice
+  const idempotencyKey = useRef(newIdempotencyKey());
 
   useEffect(() => {
     fetchAccounts();
   }, []);
 
+  useEffect(() => {
+    idempotencyKey.current = newIdempotencyKey();
+  }, [formData.fromAccountId, formData.toAccountNumber, formData.amount]);
+
   const fetchAccounts = async () => {
     setIsLoadingAccounts(true);
     try {
@@ -105,7 +112,7 @@ export default function Transfer() {
       await accountService.transfer({
         ...formData,
         toAccountNumber: cleanAccountNumber,
-      });
+      }, idempotencyKey.current);
 
       toast({
         title: "Transfer Successful",
@@ -1,5 +1,6 @@
-import { api } from './api';
-import { Account, Transaction, TransferRequest, DepositRequest } from '@/types/banking';
+import { api, newIdempotencyKey, postIdempotent } from './api';
+import { Account, Transaction, TransferRequest, DepositRequest, Page, PageQuery, BankStats } from '@/types/banking';
+import { toQueryString } from './userService';
 
 export const accountService = {
   async getAccounts(): Promise<Account[]> {
@@ -20,33 +21,38 @@ export const accountService = {
     return accountService.getAccountTransactionsByAccountNumber(accountId, limit);
   },
 
-  async transfer(transferData: TransferRequest): Promise<Transaction> {
+  // Money operations take the key of the user action; callers keep it across resubmits of the same form
+  async transfer(transferData: TransferRequest, idempotencyKey: string = newIdempotencyKey()): Promise<Transaction> {
     // Map frontend payload to backend
     const payload = {
       toAccountNo: Number(transferData.toAccountNumber),
       amount: Math.floor(transferData.amount),
     };
     // Backend returns string message; normalize to a Transaction-like object
-    const message = await api.post<string>('/accounts/transfer', payload);
+    const message = await postIdempotent<string>('/accounts/transfer', payload, idempotencyKey);
     return { id: '', amount: payload.amount, type: 'TRANSFER', description: message, createdAt: new Date().toISOString(), status: 'COMPLETED' } as unknown as Transaction;
   },
 
-  async deposit(depositData: DepositRequest): Promise<Transaction> {
+  async deposit(depositData: DepositRequest, idempotencyKey: string = newIdempotencyKey()): Promise<Transaction> {
     const payload = { accountNo: Number(depositData.accountId), amount: Math.floor(depositData.amount) };
-    const info = await api.post<any>('/admin/deposit', payload);
+    const info = await postIdempotent<any>('/admin/deposit', payload, idempotencyKey);
     return mapDepositOrWithdraw(info, 'DEPOSIT');
   },
 
-  async withdraw(accountId: string, amount: number, description: string): Promise<Transaction> {
+  async withdraw(accountId: string, amount: number, description: string, idempotencyKey: string = newIdempotencyKey()): Promise<Transaction> {
     const payload = { accountNo: Number(accountId), amount: Math.floor(amount) };
-    const info = await api.post<any>('/accounts/withdraw', payload);
+    const info = await postIdempotent<any>('/accounts/withdraw', payload, idempotencyKey);
     return mapDepositOrWithdraw(info, 'WITHDRAWAL', description);
   },
 
-  // Admin only endpoints
-  async getAllAccounts(): Promise<Account[]> {
-    const raw = await api.get<any[]>('/admin/accounts');
-    return raw.map(mapAccountFromInfo);
+  // Admin only endpoints; search matches the owner's name or email, or an exact account number
+  async getAccountsPage(query: PageQuery & { accountType?: string } = {}): Promise<Page<Account>> {
+    const raw = await api.get<Page<any>>(`/admin/accounts?${toQueryString(query)}`);
+    return { ...raw, content: raw.content.map(mapAccountFromInfo) };
+  },
+
+  async getBankStats(): Promise<BankStats> {
+    return api.get<BankStats>('/admin/stats');
   },
 
   async adminUpdateAccountType(accountNumber: string, accountType: Account['accountType']): Promise<Account> {
@@ -58,18 +64,19 @@ export const accountService = {
     await api.delete<void>(`/admin/accounts/${accountNumber}`);
   },
 
-  async adminTransfer(fromAccountId: string, toAccountNumber: string, amount: number, description: string): Promise<Transaction> {
-    return api.post<Transaction>('/admin/transfer', {
+  async adminTransfer(fromAccountId: string, toAccountNumber: string, amount: number, description: string,
+                      idempotencyKey: string = newIdempotencyKey()): Promise<Transaction> {
+    return postIdempotent<Transaction>('/admin/transfer', {
       fromAccountId,
       toAccountNumber,
       amount,
       description,
-    });
+    }, idempotencyKey);
   },
 
-  async adminDeposit(accountId: string, amount: number, _description: string): Promise<Transaction> {
+  async adminDeposit(accountId: string, amount: number, _description: string, idempotencyKey: string = newIdempotencyKey()): Promise<Transaction> {
     const payload = { accountNo: Number(accountId), amount: Math.floor(amount) };
-    await api.post<any>('/admin/deposit', payload);
+    await postIdempotent<any>('/admin/deposit', payload, idempotencyKey);
     return { id: '', amount: payload.amount, type: 'DEPOSIT', description: 'Admin deposit', createdAt: new Date().toISOString(), status: 'COMPLETED' } as Transaction;
   },
   
@@ -88,7 +95,7 @@ function mapAccountFromInfo(info: any): Account {
     accountNumber,
     accountType: normalizeAccountType(info.accountType),
     balance: Number(info.balance ?? 0),
-    userId: '',
+    userId: info.userId != null ? String(info.userId) : '',
     user: undefined,
     createdAt: '',
     updatedAt: '',
@@ -141,6 +148,7 @@ function mapTransactionInfoWithContext(tx: any, accountNumber: string): Transact
 function normalizeTxType(t: string): Transaction['type'] {
   const up = (t || '').toUpperCase();
   if (up.includes('DEPOSIT')) return 'DEPOSIT';
+  if (up.includes('INTEREST')) return 'DEPOSIT';
   if (up.includes('WITHDRAW')) return 'WITHDRAWAL';
   return 'TRANSFER';
 }
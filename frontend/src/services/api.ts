@@ -24,12 +24,12 @@ export async function apiRequest<T>(
   const url = `${API_BASE_URL}${endpoint}`;
   
   const config: RequestInit = {
+    ...options,
     headers: {
       'Content-Type': 'application/json',
       ...getAuthHeaders(),
       ...options.headers,
     },
-    ...options,
   };
 
 
@@ -75,12 +75,49 @@ export async function apiRequest<T>(
 }
 
 
+// One key per user action (form submit); pass the same key to every attempt of that action so the backend
+// answers a resubmit or a retry with the first result instead of moving money again
+// crypto.randomUUID only exists in secure contexts (https or localhost), plain http falls back to getRandomValues
+export function newIdempotencyKey(): string {
+  if (typeof crypto.randomUUID === 'function') {
+    return crypto.randomUUID();
+  }
+  const bytes = crypto.getRandomValues(new Uint8Array(16));
+  bytes[6] = (bytes[6] & 0x0f) | 0x40;
+  bytes[8] = (bytes[8] & 0x3f) | 0x80;
+  const hex = Array.from(bytes, b => b.toString(16).padStart(2, '0')).join('');
+  return `${hex.slice(0, 8)}-${hex.slice(8, 12)}-${hex.slice(12, 16)}-${hex.slice(16, 20)}-${hex.slice(20)}`;
+}
+
+export function idempotencyHeaders(key: string): Record<string, string> {
+  return { 'Idempotency-Key': key };
+}
+
+const IDEMPOTENT_RETRIES = 2;
+
+// POST of a money operation: lost responses (network errors) and 503s are retried with the same key,
+// which is safe because the backend replays the first result for a key it has already seen
+export async function postIdempotent<T>(endpoint: string, data: any, key: string): Promise<T> {
+  for (let attempt = 0; ; attempt++) {
+    try {
+      return await api.post<T>(endpoint, data, idempotencyHeaders(key));
+    } catch (error) {
+      const retryable = error instanceof ApiError && (error.status === undefined || error.status === 503);
+      if (!retryable || attempt >= IDEMPOTENT_RETRIES) {
+        throw error;
+      }
+      await new Promise(resolve => setTimeout(resolve, 500 * (attempt + 1)));
+    }
+  }
+}
+
 export const api = {
   get: <T>(endpoint: string) => apiRequest<T>(endpoint),
-  post: <T>(endpoint: string, data?: any) => 
+  post: <T>(endpoint: string, data?: any, headers?: Record<string, string>) =>
     apiRequest<T>(endpoint, {
       method: 'POST',
       body: data ? JSON.stringify(data) : undefined,
+      headers,
     }),
   put: <T>(endpoint: string, data?: any) =>
     apiRequest<T>(endpoint, {
@@ -58,6 +58,10 @@ export const authService = {
   },
 
   logout(): void {
+    // Revoke the token server-side; the request captures the token before it is removed below
+    if (localStorage.getItem('banking_token')) {
+      api.post<void>('/users/logout', {}).catch(() => {});
+    }
     localStorage.removeItem('banking_token');
   },
 };
@@ -1,10 +1,10 @@
 import { api } from './api';
-import { User, Account } from '@/types/banking';
+import { User, Account, Page, PageQuery } from '@/types/banking';
 
 export const userService = {
-  async getAllUsers(): Promise<User[]> {
-    const raw = await api.get<any[]>('/admin/users');
-    return raw.map(mapUserFromBackend);
+  async getUsersPage(query: PageQuery = {}): Promise<Page<User>> {
+    const raw = await api.get<Page<any>>(`/admin/users?${toQueryString(query)}`);
+    return { ...raw, content: raw.content.map(mapUserFromBackend) };
   },
 
   async getUserById(id: string): Promise<User> {
@@ -53,5 +53,15 @@ function mapUserFromBackend(u: any): User {
     role: (u.role ?? 'USER') as User['role'],
     createdAt: u.createdAt ?? '',
     updatedAt: u.updatedAt ?? '',
+    accountCount: u.accountCount != null ? Number(u.accountCount) : undefined,
+    totalBalance: u.totalBalance != null ? Number(u.totalBalance) : undefined,
   };
+}
+
+export function toQueryString(query: PageQuery & { accountType?: string }): string {
+  const params = new URLSearchParams();
+  Object.entries(query).forEach(([key, value]) => {
+    if (value !== undefined && value !== null && value !== '') params.set(key, String(value));
+  });
+  return params.toString();
 }
\ No newline at end of file
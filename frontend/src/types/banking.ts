@@ -9,6 +9,9 @@ export interface User {
   role: 'USER' | 'ADMIN';
   createdAt: string;
   updatedAt: string;
+  // Present in the admin listing
+  accountCount?: number;
+  totalBalance?: number;
 }
 
 export interface Account {
@@ -72,6 +75,36 @@ export interface DepositRequest {
   description: string;
 }
 
+// Bank-wide figures from GET /admin/stats, maintained incrementally on the server
+export interface BankStats {
+  totalUsers: number;
+  usersByRole: Record<string, number>;
+  totalAccounts: number;
+  accountsByType: Record<string, number>;
+  totalBalance: number;
+  depositCount: number;
+  totalDeposits: number;
+  balanceHistogram: Record<string, number>;
+  reconciledAt: string | null;
+}
+
+// One page of a server-side paginated admin listing
+export interface Page<T> {
+  content: T[];
+  page: number;
+  size: number;
+  totalElements: number;
+  totalPages: number;
+}
+
+export interface PageQuery {
+  page?: number;
+  size?: number;
+  sort?: string;
+  direction?: 'asc' | 'desc';
+  search?: string;
+}
+
 export interface ApiResponse<T> {
   success: boolean;
   message: string;